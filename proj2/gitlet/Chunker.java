@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a stream into content-defined chunks with FastCDC, so that an
+ * edit to a large file changes only the chunks around the edit and every
+ * other chunk keeps its contents, and therefore its id. <br><br>
+ * <p>
+ * A gear rolling hash, {@code hash = (hash << 1) + GEAR[byte]}, is run over
+ * the bytes of each chunk, and the chunk is cut where the masked hash is
+ * zero. Its value depends only on the last 64 bytes, so cut points move
+ * with the content rather than staying at fixed offsets. No cut is made in
+ * the first {@code MIN_SIZE} bytes; up to {@code AVG_SIZE} a mask with more
+ * bits makes cuts rarer and after it a mask with fewer bits makes them
+ * more likely (normalized chunking), which keeps chunk sizes close to
+ * {@code AVG_SIZE}. Chunks never exceed {@code MAX_SIZE}.
+ *
+ * @author Rishabh Choudhury
+ */
+class Chunker {
+    /**
+     * Smallest chunk, except for the last chunk of a stream
+     */
+    static final int MIN_SIZE = 16 << 10;
+    /**
+     * Chunk size the masks aim for
+     */
+    static final int AVG_SIZE = 64 << 10;
+    /**
+     * Largest chunk
+     */
+    static final int MAX_SIZE = 256 << 10;
+    /**
+     * Mask used before AVG_SIZE: 18 bits, two more than log2(AVG_SIZE)
+     */
+    private static final long MASK_S = -1L << (64 - 18);
+    /**
+     * Mask used after AVG_SIZE: 14 bits, two fewer than log2(AVG_SIZE)
+     */
+    private static final long MASK_L = -1L << (64 - 14);
+    /**
+     * Number of bytes read ahead from the stream
+     */
+    private static final int BUFFER_SIZE = 16 * MAX_SIZE;
+    /**
+     * Random value of each byte added to the rolling hash
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < GEAR.length; i++) {
+            //SplitMix64, so that the table and the cut points never change
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * The stream being split
+     */
+    private final InputStream in;
+    /**
+     * Bytes read from the stream but not yet returned in a chunk
+     */
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    /**
+     * Start of the unreturned bytes in buf
+     */
+    private int pos;
+    /**
+     * End of the unreturned bytes in buf
+     */
+    private int end;
+    /**
+     * Whether the whole stream has been read
+     */
+    private boolean eof;
+
+    /**
+     * Creates a chunker reading the given stream
+     *
+     * @param in the stream to split
+     */
+    Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns the next chunk of the stream
+     *
+     * @return the chunk, or null at the end of the stream
+     */
+    byte[] next() throws IOException {
+        if (end - pos < MAX_SIZE && !eof) {
+            //Move the unreturned bytes to the front and read more behind them
+            System.arraycopy(buf, pos, buf, 0, end - pos);
+            end -= pos;
+            pos = 0;
+            while (end < buf.length) {
+                int n = in.read(buf, end, buf.length - end);
+                if (n < 0) {
+                    eof = true;
+                    break;
+                }
+                end += n;
+            }
+        }
+        if (pos == end) {
+            return null;
+        }
+        int length = cut(buf, pos, end);
+        byte[] chunk = Arrays.copyOfRange(buf, pos, pos + length);
+        pos += length;
+        return chunk;
+    }
+
+    /**
+     * Returns the length of the chunk starting at data[start]
+     *
+     * @param data  the bytes to split
+     * @param start start of the chunk
+     * @param end   end of the available bytes
+     * @return length of the chunk
+     */
+    static int cut(byte[] data, int start, int end) {
+        int n = Math.min(end - start, MAX_SIZE);
+        if (n <= MIN_SIZE) {
+            return n;
+        }
+        int normal = Math.min(n, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[start + i] & 0xFF];
+            if ((hash & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i++) {
+            hash = (hash << 1) + GEAR[data[start + i] & 0xFF];
+            if ((hash & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static gitlet.Utils.*;
+
+/**
+ * Tests of content-defined chunking
+ *
+ * @author Rishabh Choudhury
+ */
+public class ChunkerTest {
+
+    /**
+     * Returns the given number of random bytes
+     */
+    private static byte[] randomBytes(long seed, int length) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the chunks of the given stream
+     */
+    private static List<byte[]> chunks(InputStream in) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        Chunker chunker = new Chunker(in);
+        byte[] chunk;
+        while ((chunk = chunker.next()) != null) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the SHA-1 ids of the given chunks
+     */
+    private static Set<String> ids(List<byte[]> chunks) {
+        Set<String> ids = new HashSet<>();
+        for (byte[] chunk : chunks) {
+            ids.add(sha1(chunk));
+        }
+        return ids;
+    }
+
+    @Test
+    /* Checks that chunks join back into the stream and respect the size limits */
+    public void splitTest() throws IOException {
+        byte[] data = randomBytes(61, 5 << 20);
+        List<byte[]> chunks = chunks(new ByteArrayInputStream(data));
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            assertTrue(chunk.length <= Chunker.MAX_SIZE);
+            if (i < chunks.size() - 1) {
+                assertTrue(chunk.length >= Chunker.MIN_SIZE);
+            }
+            joined.write(chunk);
+        }
+        assertArrayEquals(data, joined.toByteArray());
+
+        //Normalized chunking keeps the average near AVG_SIZE
+        int average = data.length / chunks.size();
+        assertTrue(average > Chunker.AVG_SIZE / 2 && average < Chunker.AVG_SIZE * 2);
+        assertTrue(chunks(new ByteArrayInputStream(new byte[0])).isEmpty());
+    }
+
+    @Test
+    /* Checks that cut points depend on the contents, not on how the stream is read */
+    public void shortReadsTest() throws IOException {
+        byte[] data = randomBytes(7, 3 << 20);
+        InputStream trickle = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        List<byte[]> whole = chunks(new ByteArrayInputStream(data));
+        List<byte[]> trickled = chunks(trickle);
+        assertEquals(whole.size(), trickled.size());
+        for (int i = 0; i < whole.size(); i++) {
+            assertArrayEquals(whole.get(i), trickled.get(i));
+        }
+    }
+
+    @Test
+    /* Checks that an insertion only changes the chunks around it */
+    public void editTest() throws IOException {
+        byte[] data = randomBytes(3, 4 << 20);
+        byte[] edited = new byte[data.length + 100];
+        int at = data.length / 2;
+        System.arraycopy(data, 0, edited, 0, at);
+        System.arraycopy(randomBytes(4, 100), 0, edited, at, 100);
+        System.arraycopy(data, at, edited, at + 100, data.length - at);
+
+        Set<String> before = ids(chunks(new ByteArrayInputStream(data)));
+        Set<String> after = ids(chunks(new ByteArrayInputStream(edited)));
+        Set<String> changed = new HashSet<>(after);
+        changed.removeAll(before);
+        assertTrue(changed.size() <= 2);
+    }
+}
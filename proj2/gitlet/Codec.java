@@ -0,0 +1,268 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static gitlet.Utils.*;
+
+/**
+ * Compression codecs for stored objects. The codec of an object is
+ * recorded in its header, so objects written with different codecs
+ * (or with none, by earlier versions of gitlet) can be read side by side. <br><br>
+ * <p>
+ * Compressed data starts with the uncompressed length as a varint.
+ * The codec used for new objects is chosen with the system property
+ * {@code gitlet.compression} (none, deflate or fast) and defaults to deflate.
+ *
+ * @author Rishabh Choudhury
+ */
+enum Codec {
+    /**
+     * Contents are stored as they are
+     */
+    NONE(0) {
+        @Override
+        byte[] compress(byte[] contents) {
+            return contents;
+        }
+
+        @Override
+        byte[] decompress(ByteBuffer data) {
+            byte[] contents = new byte[data.remaining()];
+            data.get(contents);
+            return contents;
+        }
+    },
+
+    /**
+     * zlib compression from the JDK: slower, smallest output
+     */
+    DEFLATE(1) {
+        @Override
+        byte[] compress(byte[] contents) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(contents.length / 2 + 16);
+            Delta.writeVarint(out, contents.length);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            deflater.setInput(contents);
+            deflater.finish();
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            deflater.end();
+            return out.toByteArray();
+        }
+
+        @Override
+        byte[] decompress(ByteBuffer data) {
+            byte[] contents = new byte[(int) Delta.readVarint(data)];
+            Inflater inflater = new Inflater();
+            inflater.setInput(data);
+            try {
+                int pos = 0;
+                while (pos < contents.length && !inflater.finished()) {
+                    int n = inflater.inflate(contents, pos, contents.length - pos);
+                    if (n == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    pos += n;
+                }
+                if (pos != contents.length) {
+                    throw error("Corrupt compressed object");
+                }
+            } catch (DataFormatException excp) {
+                throw error("Corrupt compressed object: %s", excp.getMessage());
+            } finally {
+                inflater.end();
+            }
+            return contents;
+        }
+    },
+
+    /**
+     * A byte-oriented LZ77 codec in the style of LZ4: much faster
+     * than deflate, somewhat larger output. <br>
+     * Sequence = literal length (varint) | literals | offset (varint) | match length - 4 (varint)
+     * where the last sequence has literals only.
+     */
+    FAST(2) {
+        /**
+         * Shortest match worth encoding
+         */
+        private static final int MIN_MATCH = 4;
+        /**
+         * Number of bits of the match-finder hash table
+         */
+        private static final int HASH_BITS = 14;
+
+        @Override
+        byte[] compress(byte[] contents) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(contents.length / 2 + 16);
+            Delta.writeVarint(out, contents.length);
+            int[] table = new int[1 << HASH_BITS];
+            Arrays.fill(table, -1);
+
+            int literalStart = 0;
+            int pos = 0;
+            while (pos + MIN_MATCH <= contents.length) {
+                int h = hash(contents, pos);
+                int ref = table[h];
+                table[h] = pos;
+                if (ref >= 0 && equal4(contents, ref, pos)) {
+                    int length = MIN_MATCH;
+                    while (pos + length < contents.length
+                            && contents[ref + length] == contents[pos + length]) {
+                        length++;
+                    }
+                    Delta.writeVarint(out, pos - literalStart);
+                    out.write(contents, literalStart, pos - literalStart);
+                    Delta.writeVarint(out, pos - ref);
+                    Delta.writeVarint(out, length - MIN_MATCH);
+                    pos += length;
+                    literalStart = pos;
+                } else {
+                    pos++;
+                }
+            }
+            Delta.writeVarint(out, contents.length - literalStart);
+            out.write(contents, literalStart, contents.length - literalStart);
+            return out.toByteArray();
+        }
+
+        @Override
+        byte[] decompress(ByteBuffer data) {
+            try {
+                byte[] contents = new byte[readLength(data, Integer.MAX_VALUE)];
+                int pos = 0;
+                while (true) {
+                    int literals = readLength(data, Math.min(data.remaining(),
+                            contents.length - pos));
+                    data.get(contents, pos, literals);
+                    pos += literals;
+                    if (!data.hasRemaining()) {
+                        break;
+                    }
+                    int offset = readLength(data, pos);
+                    int length = readLength(data, contents.length - pos - MIN_MATCH) + MIN_MATCH;
+                    if (offset == 0) {
+                        throw error("Corrupt compressed object");
+                    }
+                    //Byte by byte, since a match may overlap its own output
+                    for (int i = 0; i < length; i++) {
+                        contents[pos + i] = contents[pos - offset + i];
+                    }
+                    pos += length;
+                }
+                if (pos != contents.length) {
+                    throw error("Corrupt compressed object");
+                }
+                return contents;
+            } catch (BufferUnderflowException excp) {
+                //A varint cut short
+                throw error("Corrupt compressed object");
+            }
+        }
+
+        /**
+         * Reads a length and checks that it lies between 0 and max
+         *
+         * @param data the compressed bytes, positioned at the length
+         * @param max  largest valid length
+         * @return the length
+         */
+        private int readLength(ByteBuffer data, int max) {
+            long length = Delta.readVarint(data);
+            if (length < 0 || length > max) {
+                throw error("Corrupt compressed object");
+            }
+            return (int) length;
+        }
+
+        /**
+         * Returns the hash table slot of the four bytes starting at pos
+         */
+        private int hash(byte[] bytes, int pos) {
+            int v = (bytes[pos] & 0xFF) | (bytes[pos + 1] & 0xFF) << 8
+                    | (bytes[pos + 2] & 0xFF) << 16 | (bytes[pos + 3] & 0xFF) << 24;
+            return (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+        }
+
+        /**
+         * Returns true if the four bytes at a and b are equal
+         */
+        private boolean equal4(byte[] bytes, int a, int b) {
+            return bytes[a] == bytes[b] && bytes[a + 1] == bytes[b + 1]
+                    && bytes[a + 2] == bytes[b + 2] && bytes[a + 3] == bytes[b + 3];
+        }
+    };
+
+    /**
+     * Id recorded in object headers; fixed per codec, so that constants
+     * can be reordered or added without changing how stored objects read
+     */
+    private final byte id;
+
+    Codec(int id) {
+        this.id = (byte) id;
+    }
+
+    /**
+     * Compresses the given contents
+     *
+     * @param contents uncompressed bytes
+     * @return compressed bytes
+     */
+    abstract byte[] compress(byte[] contents);
+
+    /**
+     * Decompresses the remaining bytes of the given buffer
+     *
+     * @param data compressed bytes
+     * @return uncompressed bytes
+     */
+    abstract byte[] decompress(ByteBuffer data);
+
+    /**
+     * Returns the id recorded in object headers for this codec
+     *
+     * @return codec id
+     */
+    byte id() {
+        return id;
+    }
+
+    /**
+     * Returns the codec with the given header id
+     *
+     * @param id codec id from an object header
+     * @return the codec
+     */
+    static Codec fromID(int id) {
+        return switch (id) {
+            case 0 -> NONE;
+            case 1 -> DEFLATE;
+            case 2 -> FAST;
+            default -> throw error("Unknown compression codec %d", id);
+        };
+    }
+
+    /**
+     * Returns the codec new objects should be written with
+     *
+     * @return the configured codec
+     */
+    static Codec configured() {
+        String name = System.getProperty("gitlet.compression", "deflate");
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException excp) {
+            throw error("Unknown compression codec %s", name);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static gitlet.Utils.*;
+
+/**
+ * Tests of the compression codecs of stored objects
+ *
+ * @author Rishabh Choudhury
+ */
+public class CodecTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Returns inputs of the kinds codecs must handle: empty, shorter than
+     * a match, incompressible, text, and long runs whose matches overlap
+     */
+    private static List<byte[]> samples() {
+        List<byte[]> samples = new ArrayList<>();
+        samples.add(new byte[0]);
+        samples.add(new byte[]{42});
+        samples.add("abc".getBytes(StandardCharsets.UTF_8));
+        byte[] random = new byte[100000];
+        new Random(61).nextBytes(random);
+        samples.add(random);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("line ").append(i % 97).append(" of some text\n");
+        }
+        samples.add(text.toString().getBytes(StandardCharsets.UTF_8));
+        samples.add(new byte[1 << 20]);
+        return samples;
+    }
+
+    @Test
+    /* Checks that every codec gives back exactly what it compressed */
+    public void roundTripTest() {
+        for (Codec codec : Codec.values()) {
+            for (byte[] sample : samples()) {
+                byte[] compressed = codec.compress(sample);
+                assertArrayEquals(codec.name(), sample,
+                        codec.decompress(ByteBuffer.wrap(compressed)));
+            }
+        }
+    }
+
+    @Test
+    /* Checks that compressing codecs shrink repetitive contents */
+    public void compressesTest() {
+        byte[] zeros = new byte[1 << 20];
+        assertTrue(Codec.DEFLATE.compress(zeros).length < zeros.length / 100);
+        assertTrue(Codec.FAST.compress(zeros).length < zeros.length / 100);
+    }
+
+    @Test
+    /* Checks that codec ids are fixed and that unknown ids are rejected */
+    public void idTest() {
+        assertEquals(0, Codec.NONE.id());
+        assertEquals(1, Codec.DEFLATE.id());
+        assertEquals(2, Codec.FAST.id());
+        for (Codec codec : Codec.values()) {
+            assertEquals(codec, Codec.fromID(codec.id()));
+        }
+        try {
+            Codec.fromID(7);
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("Unknown compression codec 7", excp.getMessage());
+        }
+    }
+
+    @Test
+    /* Checks that one store reads objects written with each of the codecs */
+    public void mixedCodecsTest() {
+        String configured = System.getProperty("gitlet.compression");
+        List<String> ids = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        try {
+            for (Codec codec : Codec.values()) {
+                System.setProperty("gitlet.compression", codec.name().toLowerCase());
+                ObjectStore store = new ObjectStore(tmp.getRoot());
+                byte[] text = ("written with " + codec + "\n").repeat(100)
+                        .getBytes(StandardCharsets.UTF_8);
+                ids.add(sha1(text));
+                contents.add(text);
+                store.writeBlob(sha1(text), text, null);
+                store.sync();
+            }
+        } finally {
+            if (configured == null) {
+                System.clearProperty("gitlet.compression");
+            } else {
+                System.setProperty("gitlet.compression", configured);
+            }
+        }
+
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        for (int i = 0; i < ids.size(); i++) {
+            assertArrayEquals(contents.get(i), store.read(ObjectStore.BLOB, ids.get(i)));
+        }
+        store.repack();
+        store = new ObjectStore(tmp.getRoot());
+        for (int i = 0; i < ids.size(); i++) {
+            assertArrayEquals(contents.get(i), store.read(ObjectStore.BLOB, ids.get(i)));
+        }
+    }
+
+    /**
+     * Returns true if decompressing the given bytes with the given codec
+     * either succeeds or fails with the corrupt object error
+     */
+    private static boolean failsCleanly(Codec codec, byte[] data) {
+        try {
+            codec.decompress(ByteBuffer.wrap(data));
+            return true;
+        } catch (GitletException excp) {
+            return excp.getMessage().equals("Corrupt compressed object");
+        }
+    }
+
+    @Test
+    /* Checks that truncated, damaged or forged fast codec input is reported as corrupt */
+    public void corruptTest() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("line ").append(i % 13).append(" of some text\n");
+        }
+        byte[] compressed = Codec.FAST.compress(text.toString().getBytes(StandardCharsets.UTF_8));
+        for (int length = 0; length < compressed.length; length++) {
+            assertTrue(failsCleanly(Codec.FAST, Arrays.copyOf(compressed, length)));
+        }
+        Random random = new Random(61);
+        for (int i = 0; i < 2000; i++) {
+            byte[] damaged = compressed.clone();
+            damaged[random.nextInt(damaged.length)] = (byte) random.nextInt(256);
+            assertTrue(failsCleanly(Codec.FAST, damaged));
+        }
+
+        byte[][] forged = {
+            //Negative contents length
+            {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01, 0},
+            //More literals than the contents hold, then than the input holds
+            {2, 5, 'a', 'b', 'c', 'd', 'e'},
+            {8, 5, 'a', 'b'},
+            //A match running past the end of the contents
+            {6, 1, 'a', 1, 2},
+            //A match starting before the contents
+            {6, 1, 'a', 2, 1},
+        };
+        for (byte[] data : forged) {
+            try {
+                Codec.FAST.decompress(ByteBuffer.wrap(data));
+                fail("Decompressed forged input " + Arrays.toString(data));
+            } catch (GitletException excp) {
+                assertEquals("Corrupt compressed object", excp.getMessage());
+            }
+        }
+    }
+}
@@ -3,12 +3,24 @@ package gitlet;
 import java.io.Serializable;
 import java.util.*;
 
+import static gitlet.Helper.OBJECTS;
+
 /**
  * Represents a gitlet commit object.
+ * <p>
+ * A commit names its snapshot by the id of its root {@link Tree}; the
+ * tracked files are only listed when they are first asked for.
+ * Commits made before trees existed carry the flat map of tracked files
+ * instead.
  *
  * @author Rishabh Choudhury
  */
 public class Commit implements Serializable, Dumpable {
+    /**
+     * Serialization version, fixed so that commits written by
+     * earlier versions of this class can still be read
+     */
+    private static final long serialVersionUID = 1528194486626720259L;
     /**
      * The message of this Commit.
      */
@@ -24,9 +36,19 @@ public class Commit implements Serializable, Dumpable {
     /**
      * Maps tracked file names to their SHA-1 id's <br><br>
      * Key - File Name <br>
-     * Value - SHA-1 ID <br>
+     * Value - SHA-1 ID <br><br>
+     * Only set in commits made before trees existed
      */
-    Map<String, String> trackedFiles;
+    private Map<String, String> trackedFiles;
+    /**
+     * The SHA-1 id of the root tree of this commit, or null
+     * if it tracks no files
+     */
+    private String treeID;
+    /**
+     * Tracked files listed from the root tree, loaded on first use
+     */
+    private transient Map<String, String> files;
     /**
      * The SHA-1 ids of parents
      */
@@ -41,47 +63,129 @@ public class Commit implements Serializable, Dumpable {
     public Commit(String message, Date d) {
         this.message = message;
         this.d = d;
-        trackedFiles = new HashMap<>();
         parentIDs = new LinkedList<>();
     }
 
     /**
-     * Track files being tracked by the parent and
-     * store a reference to the parent ID
+     * Create a commit object with the given snapshot and parents
+     *
+     * @param message   the message associated with this commit
+     * @param d         date of commit
+     * @param treeID    id of the root tree, or null if no files are tracked
+     * @param parentIDs the SHA-1 ids of the parents, first parent first
+     */
+    Commit(String message, Date d, String treeID, List<String> parentIDs) {
+        this.message = message;
+        this.d = d;
+        this.treeID = treeID;
+        this.parentIDs = new LinkedList<>(parentIDs);
+    }
+
+    /**
+     * Returns this commit with its tracked files stored as a tree.
+     * Commits made before trees existed get their tree built and saved;
+     * the id of the commit is kept.
+     *
+     * @return a commit with a root tree id
+     */
+    Commit withTree() {
+        if (trackedFiles == null) {
+            return this;
+        }
+        String tree = Tree.update(OBJECTS, null, new TreeMap<>(trackedFiles));
+        Commit commit = new Commit(message, d, tree, parentIDs);
+        commit.setID(id);
+        return commit;
+    }
+
+    /**
+     * Track files being tracked by the first parent and
+     * store a reference to the parent IDs. Any changes merged in
+     * from other parents are expected to be in the staging area.
      *
      * @param parentCommits the commits that should be parents of this commit
      */
     public void trackParent(LinkedList<Commit> parentCommits) {
+        Commit firstParent = parentCommits.getFirst();
+        if (firstParent.trackedFiles != null) {
+            //Build the first tree on top of a commit made before trees existed
+            treeID = Tree.update(OBJECTS, null, new TreeMap<>(firstParent.trackedFiles));
+        } else {
+            treeID = firstParent.treeID;
+        }
+        files = null;
+
+        //Set ParentIDs
         for (Commit commit : parentCommits) {
-            //Copy all map contents
-            for (String file : commit.trackedFiles.keySet()) {
-                trackedFiles.put(file, commit.trackedFiles.get(file));
-            }
-            //Set ParentID
             parentIDs.addLast(commit.getID());
         }
     }
 
     /**
-     * Tracks the files added in the staging area
+     * Tracks the files added in the staging area and untracks the files
+     * deleted by gitlet.Main rm command, saving the trees that changed
      *
      * @param filesStagedForAddition Map representing files staged for addition
+     * @param filesStagedForRemoval  List representing files staged for removal
      */
-    public void trackStagedFiles(Map<String, String> filesStagedForAddition) {
-        for (String fileName : filesStagedForAddition.keySet()) {
-            trackedFiles.put(fileName, filesStagedForAddition.get(fileName));
+    public void trackStagedFiles(Map<String, String> filesStagedForAddition,
+                                 List<String> filesStagedForRemoval) {
+        SortedMap<String, String> changes = new TreeMap<>(filesStagedForAddition);
+        for (String fileName : filesStagedForRemoval) {
+            changes.put(fileName, null);
         }
+        treeID = Tree.update(OBJECTS, treeID, changes);
+        files = null;
     }
 
     /**
-     * Untracks the files deleted by gitlet.Main rm command
+     * Returns all files tracked by this commit
      *
-     * @param filesStagedForRemoval List representing files staged for removal
+     * @return unmodifiable map of file names to their SHA-1 ids
      */
-    public void untrackRemovedFiles(List<String> filesStagedForRemoval) {
-        for (String fileName : filesStagedForRemoval) {
-            trackedFiles.remove(fileName);
+    public Map<String, String> getTrackedFiles() {
+        if (files == null) {
+            files = Collections.unmodifiableMap(trackedFiles != null
+                    ? trackedFiles : Tree.flatten(OBJECTS, treeID));
+        }
+        return files;
+    }
+
+    /**
+     * Returns the files that differ between this commit and the given one,
+     * comparing trees so that unchanged directories are skipped
+     *
+     * @param other the commit to compare with
+     * @return map of file names to their SHA-1 ids in the other commit,
+     * where a null id means the other commit does not track the file
+     */
+    public SortedMap<String, String> changesTo(Commit other) {
+        if (trackedFiles == null && other.trackedFiles == null) {
+            return Tree.diff(OBJECTS, treeID, other.treeID);
+        }
+        //Commits made before trees existed are compared file by file
+        SortedMap<String, String> changes = new TreeMap<>();
+        Map<String, String> otherFiles = other.getTrackedFiles();
+        for (String fileName : getTrackedFiles().keySet()) {
+            if (!otherFiles.containsKey(fileName)) {
+                changes.put(fileName, null);
+            }
         }
+        for (Map.Entry<String, String> file : otherFiles.entrySet()) {
+            if (!file.getValue().equals(getTrackedFiles().get(file.getKey()))) {
+                changes.put(file.getKey(), file.getValue());
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Returns the SHA-1 id of the root tree of this commit
+     *
+     * @return root tree id, or null for a commit without a tree
+     */
+    public String getTreeID() {
+        return treeID;
     }
 
     /**
@@ -118,7 +222,7 @@ public class Commit implements Serializable, Dumpable {
      * @return SHA id of given file
      */
     public String getFileID(String fileName) {
-        return trackedFiles.get(fileName);
+        return getTrackedFiles().get(fileName);
     }
 
     /**
@@ -143,27 +247,9 @@ public class Commit implements Serializable, Dumpable {
      * Prints all relevant information about this commit
      */
     public void printCommitInfo() {
-        System.out.println("===");
-        System.out.println("commit " + id);
-
-        //Merge commit
-        if (parentIDs.size() > 1) {
-            System.out.print("Merge: ");
-            for (String parentID : parentIDs) {
-                System.out.print(parentID.substring(0, 7) + " ");
-            }
-            System.out.println();
-        }
-
-        //Format Date
-        Calendar c = Calendar.getInstance();
-        c.setTime(d);
-        String formattedDate = String.format("%1$ta %1$tb %1$te %1$TT %1$TY %1$tz", c);
-        //Print formatted date
-        System.out.println("Date: " + formattedDate);
-
-        System.out.println(message);
-        System.out.println();
+        LogPrinter printer = new LogPrinter();
+        printer.print(this);
+        printer.flush();
     }
 
     @Override
@@ -172,8 +258,9 @@ public class Commit implements Serializable, Dumpable {
         System.out.println("date : " + d);
         System.out.println("firstParentID : " + parentIDs);
 
-        for (String key : trackedFiles.keySet()) {
-            System.out.println(key + " : " + trackedFiles.get(key));
+        System.out.println("tree : " + treeID);
+        for (String key : getTrackedFiles().keySet()) {
+            System.out.println(key + " : " + getTrackedFiles().get(key));
         }
     }
 }
@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/**
+ * Encodes and decodes commits in gitlet's binary commit format. <br><br>
+ * <p>
+ * Commit layout: <br>
+ * "GC" | version (byte) | date (varint, ms since the epoch) |
+ * parent count (varint) | parent ids (20 bytes each) |
+ * tree flag (byte) | tree id (20 bytes, if the flag is 1) |
+ * message length (varint) | message (UTF-8) <br><br>
+ * <p>
+ * The id of a commit is the SHA-1 of its encoding. Commits saved with Java
+ * serialization by earlier versions of gitlet start with the serialization
+ * stream magic, never with "GC", and are still decoded; the migrate
+ * command rewrites them in this format.
+ *
+ * @author Rishabh Choudhury
+ */
+class CommitCodec {
+    /**
+     * Magic bytes at the start of every encoded commit
+     */
+    private static final byte[] MAGIC = {'G', 'C'};
+    /**
+     * Current commit format version
+     */
+    private static final int VERSION = 1;
+    /**
+     * Length of a raw SHA-1 id in bytes
+     */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /**
+     * Encodes the given commit. Its id is not part of the encoding.
+     *
+     * @param commit a commit whose files are stored as a tree
+     * @return encoded commit
+     */
+    static byte[] encode(Commit commit) {
+        byte[] message = commit.getMessage().getBytes(StandardCharsets.UTF_8);
+        List<String> parentIDs = commit.getParentIDs();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                16 + parentIDs.size() * ID_BYTES + ID_BYTES + message.length);
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(VERSION);
+        Delta.writeVarint(out, commit.getDate().getTime());
+        Delta.writeVarint(out, parentIDs.size());
+        for (String parentID : parentIDs) {
+            out.write(fromHex(parentID), 0, ID_BYTES);
+        }
+        String treeID = commit.getTreeID();
+        out.write(treeID != null ? 1 : 0);
+        if (treeID != null) {
+            out.write(fromHex(treeID), 0, ID_BYTES);
+        }
+        Delta.writeVarint(out, message.length);
+        out.write(message, 0, message.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a stored commit, in this format or Java serialized
+     *
+     * @param commitID the full id of the commit
+     * @param contents the stored commit
+     * @return the commit with its id set
+     */
+    static Commit decode(String commitID, byte[] contents) {
+        Commit commit;
+        if (!isEncoded(contents)) {
+            commit = deserialize(contents, Commit.class);
+            commit.setID(commitID);
+            return commit;
+        }
+        ByteBuffer in = ByteBuffer.wrap(contents, MAGIC.length, contents.length - MAGIC.length);
+        try {
+            int version = in.get();
+            if (version != VERSION) {
+                throw error("Commit %s has unknown format version %d", commitID, version);
+            }
+            Date date = new Date(Delta.readVarint(in));
+            int parentCount = (int) Delta.readVarint(in);
+            List<String> parentIDs = new ArrayList<>(parentCount);
+            byte[] id = new byte[ID_BYTES];
+            for (int i = 0; i < parentCount; i++) {
+                in.get(id);
+                parentIDs.add(toHex(id));
+            }
+            String treeID = null;
+            if (in.get() == 1) {
+                in.get(id);
+                treeID = toHex(id);
+            }
+            byte[] message = new byte[(int) Delta.readVarint(in)];
+            in.get(message);
+            commit = new Commit(new String(message, StandardCharsets.UTF_8), date,
+                    treeID, parentIDs);
+        } catch (BufferUnderflowException excp) {
+            throw error("Corrupt commit %s", commitID);
+        }
+        commit.setID(commitID);
+        return commit;
+    }
+
+    /**
+     * Returns true if the given stored commit is in this format
+     *
+     * @param contents the stored commit
+     * @return whether the commit is binary encoded
+     */
+    static boolean isEncoded(byte[] contents) {
+        return contents.length > MAGIC.length
+                && contents[0] == MAGIC[0] && contents[1] == MAGIC[1];
+    }
+}
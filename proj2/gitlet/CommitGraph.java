@@ -0,0 +1,651 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Repository.GRAPH_FILE;
+import static gitlet.Repository.GRAPH_TAIL_FILE;
+import static gitlet.Utils.*;
+
+/**
+ * The commit graph: the parents, generation number and date of every
+ * commit, stored apart from the commit objects so that history can be
+ * walked without deserializing a single commit. <br><br>
+ * <p>
+ * The generation number of a commit is one more than the largest
+ * generation of its parents (1 for a root commit), so a commit can only
+ * be an ancestor of commits with a greater generation. <br><br>
+ * <p>
+ * Every commit in the graph has a position. Commits written by gc are in
+ * the memory-mapped graph file, sorted by id; commits made since then are
+ * appended to a tail file as they are saved, parents before children. <br><br>
+ * <p>
+ * Graph file layout: <br>
+ * "GGRF" | version (int) | count (int) | fan-out (256 ints) | record* <br>
+ * record = id (20 bytes) | parent 1 (int) | parent 2 (int) | generation (int) | date (long) <br>
+ * where parents are positions in the file, or -1 <br><br>
+ * <p>
+ * Tail file layout: <br>
+ * "GGRT" | version (int) | record* <br>
+ * record = id (20 bytes) | parent count (byte) | parent ids (20 bytes each) | date (long) <br><br>
+ * <p>
+ * Commits made before the graph existed are added the first time they
+ * are looked up. Shallow commits (see {@link Shallow}) are added without
+ * parents, as roots.
+ *
+ * @author Rishabh Choudhury
+ */
+class CommitGraph {
+    /**
+     * Magic bytes at the start of the graph file
+     */
+    private static final byte[] GRAPH_MAGIC = {'G', 'G', 'R', 'F'};
+    /**
+     * Magic bytes at the start of the tail file
+     */
+    private static final byte[] TAIL_MAGIC = {'G', 'G', 'R', 'T'};
+    /**
+     * Current format version of both files
+     */
+    private static final int VERSION = 1;
+    /**
+     * Size of the graph file header (magic, version, count)
+     */
+    private static final int HEADER_SIZE = 12;
+    /**
+     * Size of the fan-out table
+     */
+    private static final int FANOUT_SIZE = 256 * 4;
+    /**
+     * Size of a single graph file record
+     */
+    private static final int RECORD_SIZE = 40;
+    /**
+     * Length of a raw SHA-1 id in bytes
+     */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /**
+     * The memory-mapped graph file, or null if there is none
+     */
+    private static ByteBuffer graph;
+    /**
+     * Number of commits in the graph file
+     */
+    private static int graphCount;
+    /**
+     * Ids of the commits after the graph file
+     */
+    private static List<String> tailIDs;
+    /**
+     * Positions of the commits after the graph file keyed by id
+     */
+    private static Map<String, Integer> tailPositions;
+    /**
+     * Parent positions of the commits after the graph file
+     */
+    private static List<int[]> tailParents;
+    /**
+     * Generation numbers of the commits after the graph file
+     */
+    private static List<Integer> tailGenerations;
+    /**
+     * Dates of the commits after the graph file
+     */
+    private static List<Long> tailDates;
+    /**
+     * Tail records not yet written to the tail file
+     */
+    private static ByteArrayOutputStream pending;
+    /**
+     * Identity of the tail and graph files of this repository when
+     * tailEnd was found, or null if it is unknown
+     */
+    private static List<Object> tailKey;
+    /**
+     * Length of this repository's tail file up to the end of a complete
+     * record, so that appends only check the records written after it
+     */
+    private static long tailEnd;
+
+    /**
+     * Returns the number of commits in the graph
+     *
+     * @return commit count
+     */
+    static int size() {
+        load();
+        return graphCount + tailIDs.size();
+    }
+
+    /**
+     * Returns the position of the given commit, adding it and any of its
+     * ancestors that are missing from the graph
+     *
+     * @param commitID full SHA-1 id of the commit
+     * @return position of the commit
+     */
+    static int lookup(String commitID) {
+        int position = find(commitID);
+        if (position >= 0) {
+            return position;
+        }
+
+        //Add missing commits parents first, loading each one once
+        Deque<String> stack = new ArrayDeque<>();
+        Map<String, Commit> loaded = new HashMap<>();
+        stack.push(commitID);
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (find(id) >= 0) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = loaded.computeIfAbsent(id, Helper::loadCommitWithID);
+            boolean parentsKnown = true;
+            for (String parentID : Shallow.parentIDs(commit)) {
+                if (find(parentID) < 0) {
+                    stack.push(parentID);
+                    parentsKnown = false;
+                }
+            }
+            if (parentsKnown) {
+                stack.pop();
+                append(commit);
+            }
+        }
+        flush();
+        return find(commitID);
+    }
+
+    /**
+     * Adds a newly saved commit to the graph
+     *
+     * @param commit the commit, with its id set
+     */
+    static void add(Commit commit) {
+        if (find(commit.getID()) >= 0) {
+            return;
+        }
+        for (String parentID : Shallow.parentIDs(commit)) {
+            lookup(parentID);
+        }
+        append(commit);
+        flush();
+    }
+
+    /**
+     * Adds commits copied into a repository to the tail of that
+     * repository's graph. The in-memory graph is not changed; invalidate
+     * it when the repository is this one.
+     *
+     * @param gitletDir the .gitlet directory of the repository
+     * @param commits   the copied commits, parents before children
+     */
+    static void addTo(File gitletDir, List<Commit> commits) {
+        //Shallow commits of that repository are recorded as roots
+        Set<String> shallow = Shallow.read(gitletDir);
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (Commit commit : commits) {
+            writeRecord(records, commit, shallow.contains(commit.getID())
+                    ? Collections.emptyList() : commit.getParentIDs());
+        }
+        appendTail(gitletDir, records);
+    }
+
+    /**
+     * Returns the id of the commit at the given position
+     *
+     * @param position position of the commit
+     * @return full SHA-1 id
+     */
+    static String idAt(int position) {
+        if (position >= graphCount) {
+            return tailIDs.get(position - graphCount);
+        }
+        byte[] id = new byte[ID_BYTES];
+        graph.get(recordOffset(position), id);
+        return toHex(id);
+    }
+
+    /**
+     * Returns the positions of the parents of the commit at the given position
+     *
+     * @param position position of the commit
+     * @return parent positions, first parent first
+     */
+    static int[] parentsOf(int position) {
+        if (position >= graphCount) {
+            return tailParents.get(position - graphCount);
+        }
+        int offset = recordOffset(position) + ID_BYTES;
+        int first = graph.getInt(offset);
+        int second = graph.getInt(offset + 4);
+        if (first < 0) {
+            return new int[0];
+        }
+        return second < 0 ? new int[]{first} : new int[]{first, second};
+    }
+
+    /**
+     * Returns the generation number of the commit at the given position
+     *
+     * @param position position of the commit
+     * @return generation number, 1 for root commits
+     */
+    static int generationOf(int position) {
+        if (position >= graphCount) {
+            return tailGenerations.get(position - graphCount);
+        }
+        return graph.getInt(recordOffset(position) + ID_BYTES + 8);
+    }
+
+    /**
+     * Returns the date of the commit at the given position
+     *
+     * @param position position of the commit
+     * @return commit date in milliseconds since the epoch
+     */
+    static long dateOf(int position) {
+        if (position >= graphCount) {
+            return tailDates.get(position - graphCount);
+        }
+        return graph.getLong(recordOffset(position) + ID_BYTES + 12);
+    }
+
+    /**
+     * Rewrites the graph file so that it holds every commit in the graph
+     * and removes the tail file
+     */
+    static void write() {
+        RepoLock lock = RepoLock.acquire(RepoLock.COMMIT_GRAPH);
+        try {
+            //Read the files again, so that records other processes appended are kept
+            invalidate();
+            rewrite();
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Writes the graph file and removes the tail file while the commit
+     * graph lock is held
+     */
+    private static void rewrite() {
+        int count = size();
+        if (count == graphCount && !GRAPH_TAIL_FILE.exists()) {
+            return;
+        }
+
+        //Sort positions by id and map old positions to new ones
+        String[] ids = new String[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = idAt(i);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> ids[a].compareTo(ids[b]));
+        int[] newPosition = new int[count];
+        for (int i = 0; i < count; i++) {
+            newPosition[order[i]] = i;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + FANOUT_SIZE
+                + count * RECORD_SIZE);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(GRAPH_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            int[] fanout = new int[256];
+            for (String id : ids) {
+                fanout[Integer.parseInt(id.substring(0, 2), 16)]++;
+            }
+            int total = 0;
+            for (int b = 0; b < 256; b++) {
+                total += fanout[b];
+                out.writeInt(total);
+            }
+            for (int i = 0; i < count; i++) {
+                int position = order[i];
+                int[] parents = parentsOf(position);
+                if (parents.length > 2) {
+                    throw error("Commit %s has more than two parents", ids[position]);
+                }
+                out.write(fromHex(ids[position]));
+                out.writeInt(parents.length > 0 ? newPosition[parents[0]] : -1);
+                out.writeInt(parents.length > 1 ? newPosition[parents[1]] : -1);
+                out.writeInt(generationOf(position));
+                out.writeLong(dateOf(position));
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write commit graph: %s", excp.getMessage());
+        }
+        //The new graph must be on disk before the tail holding its commits goes
+        DurableFiles.write(GRAPH_FILE, bytes.toByteArray());
+        GRAPH_TAIL_FILE.delete();
+        graph = null;
+        tailIDs = null;
+        tailKey = null;
+    }
+
+    /**
+     * Forgets the loaded graph, so that the graph files are read again
+     * when next used
+     */
+    static void invalidate() {
+        graph = null;
+        tailIDs = null;
+        tailKey = null;
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Returns the position of the given commit, or -1 if it is not in the graph
+     */
+    private static int find(String commitID) {
+        load();
+        Integer tailPosition = tailPositions.get(commitID);
+        if (tailPosition != null) {
+            return tailPosition;
+        }
+        if (graph == null || commitID.length() != UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = fromHex(commitID);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : graph.getInt(HEADER_SIZE + (first - 1) * 4);
+        int hi = graph.getInt(HEADER_SIZE + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareAt(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the id of the graph file record at the given position with the key
+     */
+    private static int compareAt(int position, byte[] key) {
+        int offset = recordOffset(position);
+        for (int i = 0; i < ID_BYTES; i++) {
+            int cmp = Integer.compare(graph.get(offset + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the offset of the graph file record at the given position
+     */
+    private static int recordOffset(int position) {
+        return HEADER_SIZE + FANOUT_SIZE + position * RECORD_SIZE;
+    }
+
+    /**
+     * Maps the graph file and reads the tail file on first use
+     */
+    private static void load() {
+        if (tailIDs != null) {
+            return;
+        }
+        graph = null;
+        graphCount = 0;
+        tailIDs = new ArrayList<>();
+        tailPositions = new HashMap<>();
+        tailParents = new ArrayList<>();
+        tailGenerations = new ArrayList<>();
+        tailDates = new ArrayList<>();
+        pending = new ByteArrayOutputStream();
+
+        if (GRAPH_FILE.isFile()) {
+            try (FileChannel channel = FileChannel.open(GRAPH_FILE.toPath(),
+                    StandardOpenOption.READ)) {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                byte[] magic = new byte[GRAPH_MAGIC.length];
+                mapped.get(0, magic);
+                //The graph is only a cache of the commit objects; ignore a bad one
+                if (Arrays.equals(magic, GRAPH_MAGIC) && mapped.getInt(4) == VERSION) {
+                    graph = mapped;
+                    graphCount = mapped.getInt(8);
+                }
+            } catch (IOException excp) {
+                graph = null;
+            }
+        }
+
+        tailKey = null;
+        if (!GRAPH_TAIL_FILE.isFile()) {
+            return;
+        }
+        //Taken before reading: a gc after this changes the key, not the records read
+        List<Object> key = tailKey(GITLET_DIR);
+        long end = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(GRAPH_TAIL_FILE.toPath())))) {
+            byte[] magic = new byte[TAIL_MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, TAIL_MAGIC) || in.readInt() != VERSION) {
+                return;
+            }
+            end = TAIL_MAGIC.length + 4;
+            byte[] id = new byte[ID_BYTES];
+            while (true) {
+                in.readFully(id);
+                String commitID = toHex(id);
+                int[] parents = new int[in.readUnsignedByte()];
+                boolean parentsKnown = true;
+                for (int i = 0; i < parents.length; i++) {
+                    in.readFully(id);
+                    parents[i] = find(toHex(id));
+                    parentsKnown &= parents[i] >= 0;
+                }
+                long date = in.readLong();
+                if (parentsKnown && find(commitID) < 0) {
+                    addPosition(commitID, parents, date);
+                }
+                end += ID_BYTES + 1 + parents.length * ID_BYTES + 8;
+            }
+        } catch (EOFException excp) {
+            //End of the tail, or a record cut short by a crash, which the next
+            //append cuts off (see appendTail)
+            tailKey = key;
+            tailEnd = end;
+        } catch (IOException excp) {
+            throw error("Cannot read commit graph: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Adds the given commit, whose parents must all be in the graph, after
+     * the last position and queues its tail record
+     */
+    private static void append(Commit commit) {
+        List<String> parentIDs = Shallow.parentIDs(commit);
+        int[] parents = new int[parentIDs.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = find(parentIDs.get(i));
+        }
+        addPosition(commit.getID(), parents, commit.getDate().getTime());
+        writeRecord(pending, commit, parentIDs);
+    }
+
+    /**
+     * Writes the tail record of the given commit, with the given parents,
+     * to records
+     */
+    private static void writeRecord(ByteArrayOutputStream records, Commit commit,
+                                    List<String> parentIDs) {
+        try (DataOutputStream out = new DataOutputStream(records)) {
+            out.write(fromHex(commit.getID()));
+            out.writeByte(parentIDs.size());
+            for (String parentID : parentIDs) {
+                out.write(fromHex(parentID));
+            }
+            out.writeLong(commit.getDate().getTime());
+        } catch (IOException excp) {
+            throw error("Cannot write commit graph: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Adds a commit to the in-memory tail, computing its generation number
+     */
+    private static void addPosition(String commitID, int[] parents, long date) {
+        int generation = 1;
+        for (int parent : parents) {
+            generation = Math.max(generation, generationOf(parent) + 1);
+        }
+        tailPositions.put(commitID, graphCount + tailIDs.size());
+        tailIDs.add(commitID);
+        tailParents.add(parents);
+        tailGenerations.add(generation);
+        tailDates.add(date);
+    }
+
+    /**
+     * Appends queued tail records to the tail file
+     */
+    private static void flush() {
+        appendTail(GITLET_DIR, pending);
+        pending.reset();
+    }
+
+    /**
+     * Appends tail records to the tail file of the given repository
+     */
+    private static void appendTail(File gitletDir, ByteArrayOutputStream records) {
+        if (records.size() == 0) {
+            return;
+        }
+        File tailFile = join(gitletDir, GRAPH_TAIL_FILE.getName());
+        //Locked so that the header is written once, gc does not drop the records,
+        //and a record being appended by another process is never taken for a torn one
+        RepoLock lock = RepoLock.acquire(gitletDir, RepoLock.COMMIT_GRAPH);
+        boolean here = gitletDir.getAbsoluteFile().equals(GITLET_DIR.getAbsoluteFile());
+        try (FileChannel channel = FileChannel.open(tailFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //Records go after the last complete record, over any torn one. Only
+            //the records after the last one known complete need checking, which
+            //are the ones other processes appended since this one read the tail
+            List<Object> key = tailKey(gitletDir);
+            long from = 0;
+            if (here && tailKey != null && tailKey.equals(key) && tailEnd <= channel.size()) {
+                from = tailEnd;
+            }
+            long end = completeLength(channel, from);
+            if (end < channel.size()) {
+                channel.truncate(end);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                if (end == 0) {
+                    out.write(TAIL_MAGIC);
+                    out.writeInt(VERSION);
+                }
+                records.writeTo(out);
+            }
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            while (buf.hasRemaining()) {
+                end += channel.write(buf, end);
+            }
+            if (here) {
+                tailKey = key;
+                tailEnd = end;
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write commit graph: %s", excp.getMessage());
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Returns what identifies the tail file of the given repository and the
+     * graph file it follows. gc writes a new graph file before it deletes the
+     * tail, so a tail created after a gc never has the key of one before it.
+     *
+     * @param gitletDir the .gitlet directory of the repository
+     * @return the key, or null if the file system does not identify files
+     */
+    private static List<Object> tailKey(File gitletDir) {
+        try {
+            BasicFileAttributes tail = Files.readAttributes(join(gitletDir,
+                    GRAPH_TAIL_FILE.getName()).toPath(), BasicFileAttributes.class);
+            File graphFile = join(gitletDir, GRAPH_FILE.getName());
+            if (tail.fileKey() == null) {
+                return null;
+            }
+            if (!graphFile.isFile()) {
+                return Arrays.asList(tail.fileKey());
+            }
+            BasicFileAttributes graphAttrs = Files.readAttributes(graphFile.toPath(),
+                    BasicFileAttributes.class);
+            return Arrays.asList(tail.fileKey(), graphAttrs.fileKey(), graphAttrs.size(),
+                    graphAttrs.lastModifiedTime());
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the length of the tail file up to the end of its last
+     * complete record, or 0 if not even its header is complete
+     *
+     * @param channel the tail file
+     * @param from    0, or the end of a record known to be complete
+     */
+    private static long completeLength(FileChannel channel, long from) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate((int) (channel.size() - from));
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, from + tail.position()) < 0) {
+                break;
+            }
+        }
+        int end = 0;
+        if (from == 0) {
+            end = TAIL_MAGIC.length + 4;
+            if (tail.position() < end) {
+                return 0;
+            }
+        }
+        while (end + ID_BYTES < tail.position()) {
+            int next = end + ID_BYTES + 1 + (tail.get(end + ID_BYTES) & 0xFF) * ID_BYTES + 8;
+            if (next > tail.position()) {
+                break;
+            }
+            end = next;
+        }
+        return from + end;
+    }
+}
@@ -0,0 +1,128 @@
+package gitlet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+import static gitlet.Utils.*;
+
+/**
+ * Tests of the commit graph files, run on repositories in temporary directories
+ *
+ * @author Rishabh Choudhury
+ */
+public class CommitGraphTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * The repository under test
+     */
+    private ScratchRepo repo;
+
+    /**
+     * Builds a history where master and side fork after the first commit
+     */
+    @Before
+    public void setUp() {
+        repo = new ScratchRepo(tmp.getRoot());
+        repo.run("init");
+        repo.write("a.txt", "a\n");
+        repo.run("add", "a.txt");
+        repo.run("commit", "one");
+        repo.run("branch", "side");
+        repo.write("a.txt", "a2\n");
+        repo.run("add", "a.txt");
+        repo.run("commit", "two");
+        repo.run("checkout", "side");
+        repo.write("b.txt", "b\n");
+        repo.run("add", "b.txt");
+        repo.run("commit", "three");
+    }
+
+    /**
+     * Cuts the given number of bytes off the end of the commit graph tail
+     */
+    private void tearTail(int bytes) throws IOException {
+        File tail = repo.file(".gitlet/commit-graph-tail");
+        try (RandomAccessFile file = new RandomAccessFile(tail, "rw")) {
+            file.setLength(file.length() - bytes);
+        }
+    }
+
+    /**
+     * Checks that merging master into side finds the first commit as the split point
+     */
+    private void checkMerge() {
+        assertEquals("", repo.run("merge", "master"));
+        assertEquals("a2\n", readContentsAsString(repo.file("a.txt")));
+        assertEquals("b\n", readContentsAsString(repo.file("b.txt")));
+        assertTrue(repo.run("log").contains("Merged master into side."));
+    }
+
+    @Test
+    /* Checks that a tail record cut short is ignored, then cut off by the next append */
+    public void tornTailTest() throws IOException {
+        long length = repo.file(".gitlet/commit-graph-tail").length();
+        tearTail(4);
+        //The commit whose record was torn is added again from its commit object
+        assertTrue(repo.run("log").contains("three"));
+        assertEquals(length, repo.file(".gitlet/commit-graph-tail").length());
+
+        checkMerge();
+        repo.write("c.txt", "c\n");
+        repo.run("add", "c.txt");
+        assertEquals("", repo.run("commit", "four"));
+        assertEquals("Given branch is ancestor of the current branch.\n",
+                repo.run("merge", "master"));
+    }
+
+    @Test
+    /* Checks that a tail whose header was cut short is rewritten by the next append */
+    public void tornHeaderTest() throws IOException {
+        tearTail((int) repo.file(".gitlet/commit-graph-tail").length() - 5);
+        checkMerge();
+    }
+
+    @Test
+    /* Checks merges after gc moves the tail into the graph file, and with commits in both */
+    public void graphFileTest() {
+        assertEquals("", repo.run("gc"));
+        assertFalse(repo.file(".gitlet/commit-graph-tail").exists());
+        checkMerge();
+        assertTrue(repo.file(".gitlet/commit-graph-tail").exists());
+        assertEquals("", repo.run("gc"));
+        assertEquals("Given branch is ancestor of the current branch.\n",
+                repo.run("merge", "master"));
+    }
+
+    @Test
+    /* Checks that appends after a gc and over a torn record leave a tail that reads back whole */
+    public void appendAfterGcTest() throws IOException {
+        assertEquals("", repo.run("gc"));
+        repo.write("c.txt", "c\n");
+        repo.run("add", "c.txt");
+        assertEquals("", repo.run("commit", "four"));
+        tearTail(3);
+        repo.write("d.txt", "d\n");
+        repo.run("add", "d.txt");
+        assertEquals("", repo.run("commit", "five"));
+
+        //Reading the graph finds every commit, so nothing is appended again
+        File tail = repo.file(".gitlet/commit-graph-tail");
+        long length = tail.length();
+        String log = repo.run("log");
+        for (String message : new String[]{"one", "three", "four", "five"}) {
+            assertTrue(log.contains("\n" + message + "\n"));
+        }
+        assertEquals(length, tail.length());
+        checkMerge();
+    }
+}
@@ -0,0 +1,158 @@
+package gitlet;
+
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Walks commit history on the {@link CommitGraph} without recursion. <br><br>
+ * <p>
+ * Commits waiting to be visited are kept in a priority queue ordered by
+ * decreasing generation number, then decreasing date, so every commit is
+ * returned before any of its ancestors, and a bitset of graph positions
+ * makes sure each commit is queued once however many paths lead to it.
+ * The walk can follow first parents only, and can be bounded below by a
+ * generation number. A walker is created for a single walk, or cleared
+ * with {@link #reset()} and reused.
+ *
+ * @author Rishabh Choudhury
+ */
+class CommitWalker implements Iterator<String> {
+
+    /**
+     * Graph positions waiting to be visited, newest first
+     */
+    private final PriorityQueue<Integer> queue = new PriorityQueue<>(newestFirst());
+    /**
+     * Graph positions that have been queued
+     */
+    private final BitSet seen = new BitSet();
+    /**
+     * Whether only first parents are followed
+     */
+    private final boolean firstParentOnly;
+    /**
+     * Commits with a lower generation number are not visited
+     */
+    private int minGeneration;
+
+    /**
+     * Creates a walker following all parents
+     */
+    CommitWalker() {
+        this(false);
+    }
+
+    /**
+     * Creates a walker
+     *
+     * @param firstParentOnly whether only first parents are followed
+     */
+    CommitWalker(boolean firstParentOnly) {
+        this.firstParentOnly = firstParentOnly;
+    }
+
+    /**
+     * Adds a commit to start walking from
+     *
+     * @param commitID full SHA-1 id of the commit
+     * @return this walker
+     */
+    CommitWalker push(String commitID) {
+        enqueue(CommitGraph.lookup(commitID));
+        return this;
+    }
+
+    /**
+     * Stops the walk at commits whose generation number is below the given one
+     *
+     * @param generation the lowest generation number to visit
+     * @return this walker
+     */
+    CommitWalker stopBelow(int generation) {
+        minGeneration = generation;
+        return this;
+    }
+
+    /**
+     * Clears the walk so that the walker can be used again
+     */
+    void reset() {
+        queue.clear();
+        seen.clear();
+        minGeneration = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !queue.isEmpty();
+    }
+
+    @Override
+    public String next() {
+        return CommitGraph.idAt(nextPosition());
+    }
+
+    /**
+     * Returns the graph position of the next commit and queues its parents
+     *
+     * @return graph position of the next commit
+     */
+    int nextPosition() {
+        if (queue.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        int position = queue.poll();
+        int[] parents = CommitGraph.parentsOf(position);
+        int followed = firstParentOnly ? Math.min(parents.length, 1) : parents.length;
+        for (int i = 0; i < followed; i++) {
+            enqueue(parents[i]);
+        }
+        return position;
+    }
+
+    /**
+     * Returns true if the commit at the first graph position is reachable
+     * from the commit at the second. Commits older than the ancestor's
+     * generation are not walked.
+     *
+     * @param ancestor   graph position of the possible ancestor
+     * @param descendant graph position of the possible descendant
+     * @return whether ancestor is an ancestor of (or the same as) descendant
+     */
+    static boolean isAncestor(int ancestor, int descendant) {
+        CommitWalker walker = new CommitWalker().stopBelow(CommitGraph.generationOf(ancestor));
+        walker.enqueue(descendant);
+        while (walker.hasNext()) {
+            if (walker.nextPosition() == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Orders graph positions by decreasing generation, then decreasing date
+     *
+     * @return the comparator
+     */
+    static Comparator<Integer> newestFirst() {
+        return Comparator.<Integer>comparingInt(CommitGraph::generationOf).reversed()
+                .thenComparing(Comparator.<Integer>comparingLong(CommitGraph::dateOf).reversed());
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Queues the commit at the given position unless it was queued before
+     * or is below the lowest generation
+     */
+    private void enqueue(int position) {
+        if (!seen.get(position) && CommitGraph.generationOf(position) >= minGeneration) {
+            seen.set(position);
+            queue.add(position);
+        }
+    }
+}
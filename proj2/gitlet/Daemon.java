@@ -0,0 +1,274 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/**
+ * A long-lived gitlet process that runs commands sent to it over a Unix
+ * domain socket, so that scripts running many commands pay for JVM
+ * startup, class loading and cache warm-up once instead of per command. <br><br>
+ * <p>
+ * gitlet daemon - serves the repository in the current directory on
+ * .gitlet/daemon.sock until stopped <br>
+ * gitlet daemon --stop - stops the running daemon <br><br>
+ * <p>
+ * While a daemon runs, every other gitlet command started in the
+ * repository is sent to it by {@link #forward}, and runs in its own
+ * process only if the daemon cannot be reached. <br><br>
+ * <p>
+ * Protocol: the client sends its working directory and then the command
+ * and its operands, each followed by a NUL byte, and closes its side of
+ * the connection. The daemon replies with the command's output and closes
+ * the connection. Any client that can do this works, for example <br>
+ * {@code printf '%s\0' "$PWD" status | nc -U -N .gitlet/daemon.sock} <br><br>
+ * <p>
+ * Commands run one at a time. Commits, trees and blobs stay cached between
+ * commands, since objects never change. The staging area, index, commit
+ * graph and pack list are also kept, but forgotten whenever a watch on the
+ * .gitlet directories, including the branch folder of every remote,
+ * reports a change since the previous command, so commands run by other
+ * gitlet processes are always seen.
+ *
+ * @author Rishabh Choudhury
+ */
+class Daemon {
+    /**
+     * Directories whose changes invalidate the cached repository state,
+     * besides the branch folders of remotes (see {@link #watch})
+     */
+    private static final File[] WATCHED = {GITLET_DIR, STAGING_DIR, REF_DIR, BRANCH_DIR, PACK_DIR};
+
+    /**
+     * Serves commands until a stop request arrives
+     */
+    static void serve() {
+        if (DAEMON_SOCKET.exists()) {
+            if (isRunning()) {
+                throw error("A gitlet daemon is already running.");
+            }
+            //Left behind by a daemon that was killed
+            DAEMON_SOCKET.delete();
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            server.bind(socketAddress());
+            Runtime.getRuntime().addShutdownHook(new Thread(DAEMON_SOCKET::delete));
+            watch(watcher);
+            message("Gitlet daemon listening on %s", DAEMON_SOCKET);
+
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    List<String> request = readRequest(client);
+                    if (changed(watcher)) {
+                        Helper.invalidateCaches();
+                    }
+                    running = respond(client, request);
+                } catch (IOException excp) {
+                    //A client that went away does not stop the daemon
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot run daemon: %s", excp.getMessage());
+        } finally {
+            DAEMON_SOCKET.delete();
+        }
+    }
+
+    /**
+     * Asks the running daemon to stop
+     */
+    static void stop() {
+        if (!forward(new String[]{"daemon", "--stop"})) {
+            throw error("No gitlet daemon is running.");
+        }
+    }
+
+    /**
+     * Sends a command to the daemon serving the current directory, if one
+     * is running, and copies its output to standard output
+     *
+     * @param args the command and its operands
+     * @return true if the daemon ran the command, false if no daemon could
+     * be reached and the command must run in this process
+     */
+    static boolean forward(String[] args) {
+        if (!DAEMON_SOCKET.exists()) {
+            return false;
+        }
+        SocketChannel daemon;
+        try {
+            daemon = SocketChannel.open(socketAddress());
+        } catch (IOException excp) {
+            //Left behind by a daemon that was killed
+            return false;
+        }
+        //Once the request is sent the command may have run, so it is never run again here
+        try (daemon) {
+            List<String> request = new ArrayList<>();
+            request.add(CWD.getPath());
+            request.addAll(Arrays.asList(args));
+            ByteBuffer buf = ByteBuffer.wrap(encode(request));
+            while (buf.hasRemaining()) {
+                daemon.write(buf);
+            }
+            daemon.shutdownOutput();
+            Channels.newInputStream(daemon).transferTo(System.out);
+            System.out.flush();
+        } catch (IOException excp) {
+            throw error("Cannot reach daemon: %s", excp.getMessage());
+        }
+        return true;
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Runs a request and writes its output to the client
+     *
+     * @return false if the request stopped the daemon
+     */
+    private static boolean respond(SocketChannel client, List<String> request) {
+        PrintStream stdout = System.out;
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                Channels.newOutputStream(client)), false);
+        System.setOut(out);
+        try {
+            if (request.isEmpty() || !new File(request.get(0)).equals(CWD)) {
+                message("This daemon serves %s", CWD);
+                return true;
+            }
+            String[] args = request.subList(1, request.size()).toArray(new String[0]);
+            if (args.length > 0 && args[0].equals("daemon")) {
+                if (args.length == 2 && args[1].equals("--stop")) {
+                    message("Gitlet daemon stopped.");
+                    return false;
+                }
+                message("A gitlet daemon is already running.");
+                return true;
+            }
+            Main.run(args);
+        } catch (GitletException excp) {
+            message(excp.getMessage());
+        } catch (RuntimeException excp) {
+            //A failed command may have left caches half updated
+            Helper.invalidateCaches();
+            message("Error: %s", excp);
+        } finally {
+            out.flush();
+            System.setOut(stdout);
+        }
+        return true;
+    }
+
+    /**
+     * Registers the watched directories and the branch folder of every
+     * remote. Registering a directory again is harmless, so this is repeated
+     * before every command to pick up the folders of newly fetched remotes.
+     */
+    private static void watch(WatchService watcher) {
+        List<File> dirs = new ArrayList<>(Arrays.asList(WATCHED));
+        List<String> remotes = plainFolderNamesIn(BRANCH_DIR);
+        if (remotes != null) {
+            for (String remote : remotes) {
+                dirs.add(join(BRANCH_DIR, remote));
+            }
+        }
+        for (File dir : dirs) {
+            try {
+                dir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException excp) {
+                //Not created yet, or removed since it was listed
+            }
+        }
+    }
+
+    /**
+     * Returns true if any watched directory changed since the last call.
+     * New remote folders are watched first, so that a branch written in
+     * one after it was created is reported now or by a later call.
+     */
+    private static boolean changed(WatchService watcher) {
+        watch(watcher);
+        boolean changed = false;
+        WatchKey key;
+        while ((key = watcher.poll()) != null) {
+            changed |= !key.pollEvents().isEmpty();
+            key.reset();
+        }
+        return changed;
+    }
+
+    /**
+     * Reads the NUL terminated fields of a request until the client
+     * closes its side of the connection
+     */
+    private static List<String> readRequest(SocketChannel client) throws IOException {
+        InputStream in = Channels.newInputStream(client);
+        byte[] bytes = in.readAllBytes();
+        List<String> fields = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == 0) {
+                fields.add(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the given fields as a request
+     */
+    private static byte[] encode(List<String> fields) {
+        StringBuilder request = new StringBuilder();
+        for (String field : fields) {
+            request.append(field).append('\0');
+        }
+        return request.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns true if a daemon accepts connections on the socket
+     */
+    private static boolean isRunning() {
+        if (!DAEMON_SOCKET.exists()) {
+            return false;
+        }
+        try (SocketChannel daemon = SocketChannel.open(socketAddress())) {
+            return daemon.isConnected();
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the socket address, relative to the working directory so that
+     * deep repositories stay within the length limit of socket paths
+     */
+    private static UnixDomainSocketAddress socketAddress() {
+        return UnixDomainSocketAddress.of(CWD.toPath().relativize(DAEMON_SOCKET.toPath()));
+    }
+}
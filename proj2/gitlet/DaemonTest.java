@@ -0,0 +1,91 @@
+package gitlet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of commands sent to a running daemon, run on repositories in temporary directories
+ *
+ * @author Rishabh Choudhury
+ */
+public class DaemonTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * The repository the daemon serves
+     */
+    private ScratchRepo repo;
+    /**
+     * The daemon process
+     */
+    private Process daemon;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        repo = new ScratchRepo(tmp.newFolder("D1"));
+        repo.run("init");
+        daemon = repo.start("daemon");
+        File socket = repo.file(".gitlet/daemon.sock");
+        for (int i = 0; i < 100 && !socket.exists(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(socket.exists());
+    }
+
+    @After
+    public void tearDown() {
+        daemon.destroyForcibly();
+    }
+
+    @Test
+    /* Checks that commands sent to the daemon see what other processes wrote, and that it stops */
+    public void forwardTest() throws IOException, InterruptedException {
+        repo.write("a.txt", "a\n");
+        assertEquals("", repo.run("add", "a.txt"));
+        assertEquals("", repo.run("commit", "one"));
+        assertTrue(repo.run("status").contains("=== Branches ===\n*master\n\n"));
+
+        //Another repository pushes to this one, from its own process
+        ScratchRepo other = new ScratchRepo(tmp.newFolder("D2"));
+        other.run("init");
+        other.run("add-remote", "R1", "../D1/.gitlet");
+        assertEquals("Current branch fast-forwarded.\n", other.run("pull", "R1", "master"));
+        other.write("b.txt", "b\n");
+        other.run("add", "b.txt");
+        other.run("commit", "two");
+        assertEquals("", other.run("push", "R1", "master"));
+        assertTrue(repo.run("log").contains("\ntwo\n"));
+
+        //This one fetches back into a remote branch folder
+        repo.run("add-remote", "R2", "../D2/.gitlet");
+        assertEquals("", repo.run("fetch", "R2", "master"));
+        assertTrue(repo.run("status").contains("=== Branches ===\nR2/master\n*master\n\n"));
+
+        assertEquals("Gitlet daemon stopped.\n", repo.run("daemon", "--stop"));
+        daemon.waitFor();
+        assertFalse(repo.file(".gitlet/daemon.sock").exists());
+        assertTrue(repo.run("log").contains("\ntwo\n"));
+    }
+
+    @Test
+    /* Checks that commands run in their own process when the daemon was killed */
+    public void killedTest() throws InterruptedException {
+        daemon.destroyForcibly().waitFor();
+        assertTrue(repo.file(".gitlet/daemon.sock").exists());
+        repo.write("a.txt", "a\n");
+        assertEquals("", repo.run("add", "a.txt"));
+        assertEquals("", repo.run("commit", "one"));
+        assertTrue(repo.run("log").contains("\none\n"));
+        assertEquals("No gitlet daemon is running.\n", repo.run("daemon", "--stop"));
+    }
+}
@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/**
+ * Computes and applies binary deltas between two versions of a file. <br><br>
+ * <p>
+ * A delta is a list of instructions that rebuild the target from the base: <br>
+ * COPY offset length - copy a run of bytes from the base <br>
+ * INSERT length bytes - insert literal bytes <br><br>
+ * <p>
+ * Matches are found by indexing every {@code BLOCK}-byte block of the base
+ * by its hash and sliding a rolling hash of the same width over the target,
+ * so appending to or editing a large file yields a delta proportional to
+ * the change rather than to the file.
+ *
+ * @author Rishabh Choudhury
+ */
+class Delta {
+    /**
+     * Instruction copying bytes from the base
+     */
+    private static final byte COPY = 1;
+    /**
+     * Instruction inserting literal bytes
+     */
+    private static final byte INSERT = 2;
+    /**
+     * Width of the blocks used to find matches
+     */
+    private static final int BLOCK = 16;
+    /**
+     * Multiplier of the rolling hash
+     */
+    private static final int PRIME = 31;
+
+    /**
+     * Returns a delta that rebuilds target from base
+     *
+     * @param base   the base version
+     * @param target the new version
+     * @return encoded delta instructions
+     */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+
+        //Index the base by the hash of each whole block
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        int power = 1;
+        for (int i = 1; i < BLOCK; i++) {
+            power *= PRIME;
+        }
+
+        int insertStart = 0;
+        int pos = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (pos + BLOCK <= target.length) {
+            Integer candidate = blocks.get(h);
+            if (candidate != null && matches(base, candidate, target, pos)) {
+                //Extend the match backwards over pending literals and then forwards
+                int baseStart = candidate;
+                int targetStart = pos;
+                while (baseStart > 0 && targetStart > insertStart
+                        && base[baseStart - 1] == target[targetStart - 1]) {
+                    baseStart--;
+                    targetStart--;
+                }
+                int end = pos + BLOCK;
+                int baseEnd = candidate + BLOCK;
+                while (end < target.length && baseEnd < base.length
+                        && base[baseEnd] == target[end]) {
+                    end++;
+                    baseEnd++;
+                }
+
+                writeInsert(out, target, insertStart, targetStart);
+                out.write(COPY);
+                writeVarint(out, baseStart);
+                writeVarint(out, end - targetStart);
+
+                pos = end;
+                insertStart = end;
+                if (pos + BLOCK <= target.length) {
+                    h = hash(target, pos);
+                }
+            } else {
+                //Roll the hash one byte forward
+                if (pos + BLOCK < target.length) {
+                    h = (h - target[pos] * power) * PRIME + target[pos + BLOCK];
+                }
+                pos++;
+            }
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rebuilds the target version from the base and the delta
+     *
+     * @param base  the base version
+     * @param delta encoded delta instructions
+     * @return the target version
+     */
+    static byte[] apply(byte[] base, ByteBuffer delta) {
+        byte[] target = new byte[(int) readVarint(delta)];
+        int pos = 0;
+        while (delta.hasRemaining()) {
+            byte op = delta.get();
+            if (op == COPY) {
+                int offset = (int) readVarint(delta);
+                int length = (int) readVarint(delta);
+                System.arraycopy(base, offset, target, pos, length);
+                pos += length;
+            } else if (op == INSERT) {
+                int length = (int) readVarint(delta);
+                delta.get(target, pos, length);
+                pos += length;
+            } else {
+                throw error("Corrupt delta");
+            }
+        }
+        if (pos != target.length) {
+            throw error("Corrupt delta");
+        }
+        return target;
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Returns the hash of the block of bytes starting at start
+     */
+    private static int hash(byte[] bytes, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i++) {
+            h = h * PRIME + bytes[i];
+        }
+        return h;
+    }
+
+    /**
+     * Returns true if the blocks starting at the given positions are equal
+     */
+    private static boolean matches(byte[] base, int baseStart, byte[] target, int targetStart) {
+        for (int i = 0; i < BLOCK; i++) {
+            if (base[baseStart + i] != target[targetStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes an INSERT instruction for target bytes [start, end), if any
+     */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int start, int end) {
+        if (end > start) {
+            out.write(INSERT);
+            writeVarint(out, end - start);
+            out.write(target, start, end - start);
+        }
+    }
+
+    /**
+     * Writes a non-negative value as an unsigned LEB128 varint
+     */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint
+     */
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,104 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of binary deltas between file versions
+ *
+ * @author Rishabh Choudhury
+ */
+public class DeltaTest {
+
+    /**
+     * Returns the given number of random bytes
+     */
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns bytes with the insert placed at the given position of the base
+     */
+    private static byte[] insert(byte[] base, int position, byte[] insert) {
+        byte[] result = new byte[base.length + insert.length];
+        System.arraycopy(base, 0, result, 0, position);
+        System.arraycopy(insert, 0, result, position, insert.length);
+        System.arraycopy(base, position, result, position + insert.length,
+                base.length - position);
+        return result;
+    }
+
+    /**
+     * Checks that the delta from base to target rebuilds the target and
+     * returns its length
+     */
+    private static int roundTrip(byte[] base, byte[] target) {
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, ByteBuffer.wrap(delta)));
+        return delta.length;
+    }
+
+    @Test
+    /* Checks that small edits to a large file give small deltas that rebuild the file */
+    public void editsTest() {
+        Random random = new Random(61);
+        byte[] base = randomBytes(random, 100000);
+
+        byte[] middle = insert(base, 50000, randomBytes(random, 100));
+        assertTrue(roundTrip(base, middle) < 200);
+
+        byte[] appended = insert(base, base.length, randomBytes(random, 100));
+        assertTrue(roundTrip(base, appended) < 200);
+
+        byte[] prepended = insert(base, 0, randomBytes(random, 100));
+        assertTrue(roundTrip(base, prepended) < 200);
+
+        byte[] removed = new byte[base.length - 1000];
+        System.arraycopy(base, 0, removed, 0, 30000);
+        System.arraycopy(base, 31000, removed, 30000, base.length - 31000);
+        assertTrue(roundTrip(base, removed) < 100);
+
+        byte[] changed = Arrays.copyOf(base, base.length);
+        for (int i = 0; i < changed.length; i += 10000) {
+            changed[i] ^= 1;
+        }
+        assertTrue(roundTrip(base, changed) < 1000);
+    }
+
+    @Test
+    /* Checks files with nothing in common, empty files and files shorter than a block */
+    public void edgeCasesTest() {
+        Random random = new Random(1);
+        byte[] base = randomBytes(random, 5000);
+        byte[] other = randomBytes(random, 5000);
+        roundTrip(base, other);
+        roundTrip(base, base);
+        roundTrip(new byte[0], other);
+        roundTrip(base, new byte[0]);
+        roundTrip(new byte[0], new byte[0]);
+        roundTrip("short".getBytes(), "shorter".getBytes());
+        roundTrip(new byte[1000], new byte[3000]);
+    }
+
+    @Test
+    /* Checks that a delta with an unknown instruction is rejected */
+    public void corruptDeltaTest() {
+        byte[] base = "some base contents for the delta".getBytes();
+        byte[] delta = Delta.create(base, base);
+        delta[delta.length - 3] = 9;
+        try {
+            Delta.apply(base, ByteBuffer.wrap(delta));
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("Corrupt delta", excp.getMessage());
+        }
+    }
+}
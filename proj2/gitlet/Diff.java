@@ -0,0 +1,334 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/**
+ * Finds the differences between two sequences of lines with the
+ * linear-space variant of the Myers O(ND) difference algorithm, and
+ * formats them as unified diffs. <br><br>
+ * <p>
+ * Lines are compared as ints: callers first map every distinct line to
+ * its own number with {@link #number}, so the search compares ints rather
+ * than strings. Lines shared at the start and the end of a region are
+ * matched up front; the rest of the region is split at the middle snake of
+ * a shortest edit script found by searching from both ends at once, so
+ * memory stays linear in the length of the inputs. <br><br>
+ * <p>
+ * Files are handled as bytes: lines keep their line terminators and are
+ * decoded as ISO-8859-1, so any file content passes through unchanged.
+ *
+ * @author Rishabh Choudhury
+ */
+class Diff {
+    /**
+     * Number of unchanged lines shown around each change in a unified diff
+     */
+    private static final int CONTEXT = 3;
+
+    /**
+     * A region of the old sequence that was replaced by a region of the new
+     * sequence. Either region may be empty, for a pure insertion or deletion.
+     */
+    static class Hunk {
+        /**
+         * First line of the region in the old sequence
+         */
+        final int oldStart;
+        /**
+         * Line after the region in the old sequence
+         */
+        final int oldEnd;
+        /**
+         * First line of the region in the new sequence
+         */
+        final int newStart;
+        /**
+         * Line after the region in the new sequence
+         */
+        final int newEnd;
+
+        Hunk(int oldStart, int oldEnd, int newStart, int newEnd) {
+            this.oldStart = oldStart;
+            this.oldEnd = oldEnd;
+            this.newStart = newStart;
+            this.newEnd = newEnd;
+        }
+    }
+
+    /**
+     * Returns the regions in which two sequences of lines differ
+     *
+     * @param a the old line numbers
+     * @param b the new line numbers
+     * @return hunks in increasing order, separated by at least one common line
+     */
+    static List<Hunk> diff(int[] a, int[] b) {
+        List<int[]> snakes = new ArrayList<>();
+        snakes(a, 0, a.length, b, 0, b.length, snakes);
+
+        //Regions between matched runs are the hunks
+        List<Hunk> hunks = new ArrayList<>();
+        int x = 0;
+        int y = 0;
+        for (int[] snake : snakes) {
+            if (snake[0] > x || snake[1] > y) {
+                hunks.add(new Hunk(x, snake[0], y, snake[1]));
+            }
+            x = snake[0] + snake[2];
+            y = snake[1] + snake[2];
+        }
+        if (x < a.length || y < b.length) {
+            hunks.add(new Hunk(x, a.length, y, b.length));
+        }
+        return hunks;
+    }
+
+    /**
+     * Returns the lines of a file, each with its line terminator
+     *
+     * @param contents the file, or null for a missing file
+     * @return the lines, empty for a missing file
+     */
+    static List<String> lines(byte[] contents) {
+        List<String> lines = new ArrayList<>();
+        if (contents == null) {
+            return lines;
+        }
+        String text = new String(contents, StandardCharsets.ISO_8859_1);
+        int start = 0;
+        while (start < text.length()) {
+            int newline = text.indexOf('\n', start);
+            int end = newline < 0 ? text.length() : newline + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the number of every line, giving equal lines equal numbers.
+     * Lines of files that are compared with each other must be numbered
+     * with the same map.
+     *
+     * @param lines   the lines
+     * @param numbers numbers given to lines so far
+     * @return line numbers
+     */
+    static int[] number(List<String> lines, Map<String, Integer> numbers) {
+        int[] nums = new int[lines.size()];
+        for (int i = 0; i < nums.length; i++) {
+            Integer num = numbers.get(lines.get(i));
+            if (num == null) {
+                num = numbers.size();
+                numbers.put(lines.get(i), num);
+            }
+            nums[i] = num;
+        }
+        return nums;
+    }
+
+    /**
+     * Appends a unified diff of two versions of a file to out
+     *
+     * @param out         where the diff is written
+     * @param fileName    name of the file
+     * @param oldContents the old version, or null if the file did not exist
+     * @param newContents the new version, or null if the file was deleted
+     */
+    static void unified(StringBuilder out, String fileName,
+                        byte[] oldContents, byte[] newContents) {
+        out.append("diff --gitlet a/").append(fileName).append(" b/").append(fileName).append('\n');
+        if (isBinary(oldContents) || isBinary(newContents)) {
+            out.append("Binary files ").append(oldContents == null ? "/dev/null" : "a/" + fileName)
+                    .append(" and ").append(newContents == null ? "/dev/null" : "b/" + fileName)
+                    .append(" differ\n");
+            return;
+        }
+        out.append("--- ").append(oldContents == null ? "/dev/null" : "a/" + fileName).append('\n');
+        out.append("+++ ").append(newContents == null ? "/dev/null" : "b/" + fileName).append('\n');
+
+        List<String> a = lines(oldContents);
+        List<String> b = lines(newContents);
+        Map<String, Integer> numbers = new HashMap<>();
+        int[] aNums = number(a, numbers);
+        List<Hunk> hunks = diff(aNums, number(b, numbers));
+
+        int first = 0;
+        while (first < hunks.size()) {
+            //Join hunks whose context would overlap
+            int last = first;
+            while (last + 1 < hunks.size()
+                    && hunks.get(last + 1).oldStart - hunks.get(last).oldEnd <= 2 * CONTEXT) {
+                last++;
+            }
+            Hunk start = hunks.get(first);
+            Hunk end = hunks.get(last);
+            int oldFrom = Math.max(0, start.oldStart - CONTEXT);
+            int oldTo = Math.min(a.size(), end.oldEnd + CONTEXT);
+            int newFrom = start.newStart - (start.oldStart - oldFrom);
+            int newTo = end.newEnd + (oldTo - end.oldEnd);
+            out.append("@@ -").append(range(oldFrom, oldTo))
+                    .append(" +").append(range(newFrom, newTo)).append(" @@\n");
+
+            int pos = oldFrom;
+            for (int i = first; i <= last; i++) {
+                Hunk hunk = hunks.get(i);
+                appendLines(out, ' ', a, pos, hunk.oldStart);
+                appendLines(out, '-', a, hunk.oldStart, hunk.oldEnd);
+                appendLines(out, '+', b, hunk.newStart, hunk.newEnd);
+                pos = hunk.oldEnd;
+            }
+            appendLines(out, ' ', a, pos, oldTo);
+            first = last + 1;
+        }
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Adds the runs of matching lines along a shortest edit script between
+     * a[aLo, aHi) and b[bLo, bHi) to snakes, as {a line, b line, length}
+     * in increasing order
+     */
+    private static void snakes(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                               List<int[]> snakes) {
+        //Match common prefix and suffix
+        int prefix = 0;
+        while (aLo + prefix < aHi && bLo + prefix < bHi && a[aLo + prefix] == b[bLo + prefix]) {
+            prefix++;
+        }
+        if (prefix > 0) {
+            snakes.add(new int[]{aLo, bLo, prefix});
+            aLo += prefix;
+            bLo += prefix;
+        }
+        int suffix = 0;
+        while (aLo < aHi - suffix && bLo < bHi - suffix
+                && a[aHi - 1 - suffix] == b[bHi - 1 - suffix]) {
+            suffix++;
+        }
+        aHi -= suffix;
+        bHi -= suffix;
+
+        //Only insertions or only deletions are left, or else split at the middle snake
+        if (aLo < aHi && bLo < bHi) {
+            int[] middle = middleSnake(a, aLo, aHi, b, bLo, bHi);
+            snakes(a, aLo, middle[0], b, bLo, middle[1], snakes);
+            if (middle[2] > middle[0]) {
+                snakes.add(new int[]{middle[0], middle[1], middle[2] - middle[0]});
+            }
+            snakes(a, middle[2], aHi, b, middle[3], bHi, snakes);
+        }
+
+        if (suffix > 0) {
+            snakes.add(new int[]{aHi, bHi, suffix});
+        }
+    }
+
+    /**
+     * Returns the middle snake of a shortest edit script between a[aLo, aHi)
+     * and b[bLo, bHi) as {start in a, start in b, end in a, end in b}. Both
+     * regions must be non-empty and differ in their first and last lines.
+     */
+    private static int[] middleSnake(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        //Furthest x reached on each diagonal, searching forwards and backwards
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int reverseK = delta - k;
+                if (odd && reverseK >= -(d - 1) && reverseK <= d - 1
+                        && x + backward[offset + reverseK] >= n) {
+                    return new int[]{aLo + startX, bLo + startY, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])) {
+                    x = backward[offset + k + 1];
+                } else {
+                    x = backward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d
+                        && x + forward[offset + forwardK] >= n) {
+                    return new int[]{aHi - x, bHi - y, aHi - startX, bHi - startY};
+                }
+            }
+        }
+        throw error("No edit script found");
+    }
+
+    /**
+     * Returns a unified diff line range for lines [from, to)
+     */
+    private static String range(int from, int to) {
+        if (to - from == 1) {
+            return String.valueOf(from + 1);
+        }
+        return (to == from ? from : from + 1) + "," + (to - from);
+    }
+
+    /**
+     * Appends lines[from, to) to out, each preceded by the given prefix
+     */
+    private static void appendLines(StringBuilder out, char prefix, List<String> lines,
+                                    int from, int to) {
+        for (int i = from; i < to; i++) {
+            String line = lines.get(i);
+            out.append(prefix).append(line);
+            if (!line.endsWith("\n")) {
+                out.append("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given file contents contain a NUL byte
+     */
+    private static boolean isBinary(byte[] contents) {
+        if (contents != null) {
+            for (byte c : contents) {
+                if (c == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static gitlet.Utils.*;
+
+/**
+ * Writes files so that a crash leaves either the old or the new version
+ * in place, never a truncated or half written one. <br><br>
+ * <p>
+ * A file is written under a temporary name in the tmp directory of its
+ * repository, flushed to disk, renamed over the target and then the
+ * target's directory is flushed so that the rename survives a crash too.
+ * Keeping temporary files out of the target's directory means directory
+ * listings, such as the branch names, never see them, even after a crash. Flushing costs a disk
+ * round trip, so callers writing many files (see {@link ObjectStore#sync})
+ * flush them together with {@link #force} instead.
+ *
+ * @author Rishabh Choudhury
+ */
+class DurableFiles {
+    /**
+     * Number of temporary files created, to keep their names unique
+     */
+    private static final AtomicLong tmpCount = new AtomicLong();
+
+    /**
+     * Replaces the target file with the given contents atomically and durably
+     *
+     * @param target   the file to create or replace
+     * @param contents the new contents
+     */
+    static void write(File target, byte[] contents) {
+        File dir = target.getAbsoluteFile().getParentFile();
+        File tmp = new File(tmpDir(dir), "tmp-" + target.getName() + "-" + System.nanoTime()
+                + "-" + tmpCount.incrementAndGet());
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE_NEW)) {
+            ByteBuffer buf = ByteBuffer.wrap(contents);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw error("Cannot write %s: %s", target, excp.getMessage());
+        }
+        move(tmp, target);
+        force(dir);
+    }
+
+    /**
+     * Returns the tmp directory of the repository holding the given
+     * directory, creating it if needed. Files outside a repository are
+     * written next to their target.
+     *
+     * @param dir directory of the file being written
+     * @return directory to write the temporary file in
+     */
+    private static File tmpDir(File dir) {
+        for (File parent = dir; parent != null; parent = parent.getParentFile()) {
+            if (parent.getName().equals(Repository.GITLET_DIR.getName())) {
+                File tmpDir = join(parent, Repository.TMP_DIR.getName());
+                if (!tmpDir.isDirectory() && !tmpDir.mkdirs()) {
+                    throw error("Cannot create directory %s", tmpDir);
+                }
+                return tmpDir;
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * Replaces the target file with the given text atomically and durably
+     *
+     * @param target   the file to create or replace
+     * @param contents the new contents
+     */
+    static void write(File target, String contents) {
+        write(target, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Renames source over target in a single step where the file system
+     * allows it
+     *
+     * @param source the file to rename
+     * @param target the file to create or replace
+     */
+    static void move(File source, File target) {
+        try {
+            try {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException excp) {
+            source.delete();
+            throw error("Cannot write %s: %s", target, excp.getMessage());
+        }
+    }
+
+    /**
+     * Flushes the given files or directories to disk, in parallel so that
+     * the disk sees them as one batch of requests rather than a queue of
+     * round trips
+     *
+     * @param files files and directories to flush
+     */
+    static void force(Collection<File> files) {
+        files.parallelStream().forEach(DurableFiles::force);
+    }
+
+    /**
+     * Flushes the given file or directory to disk. Directories cannot be
+     * opened for flushing on every platform; there the flush is skipped.
+     *
+     * @param file the file or directory to flush
+     */
+    static void force(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw error("Cannot flush %s: %s", file, excp.getMessage());
+            }
+        }
+    }
+}
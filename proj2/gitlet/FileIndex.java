@@ -0,0 +1,314 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.INDEX_FILE;
+import static gitlet.Utils.*;
+
+/**
+ * A cache of the SHA-1 ids of working directory files, keyed by their
+ * stat information (size, modification time and inode), so that a file
+ * which has not changed since it was last hashed is recognised without
+ * reading it. <br><br>
+ * <p>
+ * Index file layout: <br>
+ * "GLIX" | version (int) | count (int) | entry* <br>
+ * entry = path (UTF) | size (long) | mtime (long, ns) | inode (long) | id (20 bytes) <br><br>
+ * <p>
+ * A file modified in the same file system clock tick as the index was
+ * written cannot be told apart from the hashed version by its stat alone,
+ * so entries whose modification time is not older than the index file's
+ * own modification time are always re-hashed. That check only holds until
+ * the index is written again, so such entries are also saved smudged, with
+ * a size no file has, and are re-hashed by every later command until a
+ * save finds them older than the index. <br><br>
+ * <p>
+ * A file hashed by gitlet is stat-ed before it is read, and that stat is
+ * cached with its id. A write that lands while the file is being hashed
+ * then leaves a stat that no longer matches, so the file is hashed again.
+ *
+ * @author Rishabh Choudhury
+ */
+class FileIndex {
+    /**
+     * Magic bytes at the start of the index file
+     */
+    private static final byte[] MAGIC = {'G', 'L', 'I', 'X'};
+    /**
+     * Current index format version
+     */
+    private static final int VERSION = 1;
+    /**
+     * Size saved for entries too recent to trust, which no file can match.
+     * Git smudges with 0, but an empty file would then match a smudged entry.
+     */
+    private static final long SMUDGED_SIZE = -1;
+
+    /**
+     * Index entries keyed by file name, loaded on first use
+     */
+    private static TreeMap<String, Entry> entries;
+    /**
+     * Modification time of the index file in nanoseconds
+     */
+    private static long writtenAt;
+    /**
+     * Whether entries changed since the index was loaded
+     */
+    private static boolean dirty;
+
+    /**
+     * Stat information and id of a single working directory file
+     */
+    static class Entry {
+        /**
+         * File size in bytes
+         */
+        long size;
+        /**
+         * Modification time in nanoseconds
+         */
+        long mtime;
+        /**
+         * Inode number, or 0 where the file system has none
+         */
+        long inode;
+        /**
+         * SHA-1 id of the file contents
+         */
+        String id;
+        /**
+         * Whether the file was hashed by this command, in which
+         * case a matching stat can be trusted without the racy check
+         */
+        boolean fresh;
+
+        /**
+         * Returns true if the given stat matches this entry
+         */
+        boolean matches(Entry stat) {
+            return size == stat.size && mtime == stat.mtime && inode == stat.inode;
+        }
+    }
+
+    /**
+     * Returns the id of the given working directory file if its stat
+     * shows it has not changed since it was last hashed
+     *
+     * @param fileName name of the file in the CWD
+     * @return cached SHA-1 id, or null if the file must be hashed
+     */
+    static String cachedID(String fileName) {
+        Entry entry = entries().get(fileName);
+        if (entry == null || (!entry.fresh && entry.mtime >= writtenAt)) {
+            return null;
+        }
+        Entry stat = stat(fileName);
+        if (stat == null || !entry.matches(stat)) {
+            return null;
+        }
+        return entry.id;
+    }
+
+    /**
+     * Returns the id of the given working directory file,
+     * hashing it only if its stat changed
+     *
+     * @param fileName name of the file in the CWD
+     * @return SHA-1 id of the file contents
+     */
+    static String fileID(String fileName) {
+        String id = cachedID(fileName);
+        if (id == null) {
+            Entry stat = stat(fileName);
+            id = sha1Contents(join(CWD, fileName));
+            update(fileName, id, stat);
+        }
+        return id;
+    }
+
+    /**
+     * Records that the given working directory file, just written by
+     * gitlet, currently has the given id
+     *
+     * @param fileName name of the file in the CWD
+     * @param id       SHA-1 id of the file contents
+     */
+    static void update(String fileName, String id) {
+        update(fileName, id, stat(fileName));
+    }
+
+    /**
+     * Records that the given working directory file had the given id when
+     * it had the given stat
+     *
+     * @param fileName name of the file in the CWD
+     * @param id       SHA-1 id of the file contents
+     * @param stat     stat of the file taken before its contents were read
+     */
+    static void update(String fileName, String id, Entry stat) {
+        if (stat == null) {
+            remove(fileName);
+            return;
+        }
+        stat.id = id;
+        stat.fresh = true;
+        entries().put(fileName, stat);
+        dirty = true;
+    }
+
+    /**
+     * Returns the stat information of the given working directory file
+     *
+     * @param fileName name of the file in the CWD
+     * @return the stat, or null if the file does not exist
+     */
+    static Entry stat(String fileName) {
+        return stat(join(CWD, fileName));
+    }
+
+    /**
+     * Forgets the given file
+     *
+     * @param fileName name of the file in the CWD
+     */
+    static void remove(String fileName) {
+        if (entries().remove(fileName) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the index back to disk if any entry changed
+     */
+    static void save() {
+        if (!dirty) {
+            return;
+        }
+        //Replaced by a rename, so a crash never leaves a half written index.
+        //Read-only commands save it without a lock, so the name is per process
+        File tmp = new File(INDEX_FILE.getParentFile(), INDEX_FILE.getName() + ".tmp-"
+                + ProcessHandle.current().pid());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmp.toPath())))) {
+            //The index ends up no older than its file was created, so entries
+            //modified since then are racy against it
+            long startedAt = lastModified(tmp);
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.mtime >= startedAt ? SMUDGED_SIZE : entry.size);
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.inode);
+                out.write(fromHex(entry.id));
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write index: %s", excp.getMessage());
+        }
+        DurableFiles.move(tmp, INDEX_FILE);
+        writtenAt = lastModified(INDEX_FILE);
+        dirty = false;
+    }
+
+    /**
+     * Forgets the cached entries, so that the index is read again
+     * from disk when next used
+     */
+    static void invalidate() {
+        entries = null;
+        dirty = false;
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Returns the index entries, loading them from disk on first use.
+     * A missing or unreadable index is treated as empty.
+     */
+    private static TreeMap<String, Entry> entries() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new TreeMap<>();
+        if (!INDEX_FILE.isFile()) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(INDEX_FILE.toPath())))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                return entries;
+            }
+            writtenAt = lastModified(INDEX_FILE);
+            int count = in.readInt();
+            byte[] id = new byte[UID_LENGTH / 2];
+            for (int i = 0; i < count; i++) {
+                String fileName = in.readUTF();
+                Entry entry = new Entry();
+                entry.size = in.readLong();
+                entry.mtime = in.readLong();
+                entry.inode = in.readLong();
+                in.readFully(id);
+                entry.id = toHex(id);
+                entries.put(fileName, entry);
+            }
+        } catch (IOException excp) {
+            //The index is only a cache; start over
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the modification time of the given file in nanoseconds
+     */
+    private static long lastModified(File file) {
+        try {
+            return Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the stat information of the given file, or null if it does not exist
+     */
+    private static Entry stat(File file) {
+        Path path = file.toPath();
+        Entry stat = new Entry();
+        try {
+            try {
+                Map<String, Object> attrs = Files.readAttributes(path,
+                        "unix:size,lastModifiedTime,ino");
+                stat.size = (Long) attrs.get("size");
+                stat.mtime = ((FileTime) attrs.get("lastModifiedTime")).to(TimeUnit.NANOSECONDS);
+                stat.inode = (Long) attrs.get("ino");
+            } catch (UnsupportedOperationException | IllegalArgumentException excp) {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                stat.size = attrs.size();
+                stat.mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return stat;
+    }
+}
@@ -0,0 +1,47 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the cache of working file ids, run on repositories in temporary directories
+ *
+ * @author Rishabh Choudhury
+ */
+public class FileIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    /* Checks that a file changed in the tick it was hashed in is noticed after the index is rewritten */
+    public void racyEntryTest() throws InterruptedException {
+        ScratchRepo repo = new ScratchRepo(tmp.getRoot());
+        repo.run("init");
+        repo.write("a.txt", "aaaa\n");
+        repo.run("add", "a.txt");
+        repo.run("commit", "one");
+
+        //The index is written in the same tick as a.txt was last modified
+        File a = repo.file("a.txt");
+        long tick = System.currentTimeMillis() + 1500;
+        assertTrue(a.setLastModified(tick));
+        assertFalse(repo.run("status").contains("a.txt (modified)"));
+        //a.txt changes within that tick, keeping its size and modification time
+        repo.write("a.txt", "bbbb\n");
+        assertTrue(a.setLastModified(tick));
+
+        //An index written after that tick must not make the old id look trustworthy
+        while (System.currentTimeMillis() <= tick + 100) {
+            Thread.sleep(100);
+        }
+        repo.write("b.txt", "b\n");
+        repo.run("add", "b.txt");
+        assertTrue(repo.run("status").contains("a.txt (modified)"));
+    }
+}
@@ -1,8 +1,11 @@
 package gitlet;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static gitlet.Utils.*;
 import static gitlet.Repository.*;
@@ -13,12 +16,25 @@ import static gitlet.Repository.*;
  */
 public class Helper {
 
+    /**
+     * The object store holding all commits and file blobs of the repo
+     */
+    static final ObjectStore OBJECTS = new ObjectStore(GITLET_DIR);
+
+    /**
+     * Parsed commits shared by all commit loaders, keyed by full id.
+     * Its size is set with the system property {@code gitlet.commitCache}.
+     */
+    static final LruCache<String, Commit> COMMITS =
+            new LruCache<>(Integer.getInteger("gitlet.commitCache", 1024));
+
     /**
      * Creates all the required gitlet repo directories
      */
     static void setupPersistence() {
         File gitletDir = new File(GITLET_DIR.toString());
         gitletDir.mkdir();
+        OBJECTS.setHeaderFormat();
 
         File commitsDir = new File(COMMIT_DIR.toString());
         commitsDir.mkdir();
@@ -30,6 +46,15 @@ public class Helper {
         File filesDir = new File(FILE_DIR.toString());
         filesDir.mkdir();
 
+        File treesDir = new File(TREE_DIR.toString());
+        treesDir.mkdir();
+
+        File searchDir = new File(SEARCH_DIR.toString());
+        searchDir.mkdir();
+
+        File packsDir = new File(PACK_DIR.toString());
+        packsDir.mkdir();
+
         File refsDir = new File(REF_DIR.toString());
         refsDir.mkdir();
         saveCurrentBranchVar();
@@ -58,7 +83,7 @@ public class Helper {
      */
     static void saveCurrentBranchVar() {
         File currentBranchFile = new File(REF_DIR, "current branch");
-        writeContents(currentBranchFile, currentBranch);
+        DurableFiles.write(currentBranchFile, currentBranch);
     }
 
     /**
@@ -71,14 +96,87 @@ public class Helper {
 
     /**
      * Updates and saves the given branch ref
-     * to point to the given commit
+     * to point to the given commit. The ref is replaced atomically,
+     * so a crash leaves either the old or the new commit id.
+     *
+     * @param branchFile the ref file of the branch to save
+     * @param commitID   the commit id to save as given branch head
+     */
+    static void saveBranch(File branchFile, String commitID) {
+        //The commit and everything it refers to must be on disk before the ref
+        OBJECTS.sync();
+        //Remote branches (REMOTE/BRANCH) live in a folder per remote
+        branchFile.getParentFile().mkdirs();
+        DurableFiles.write(branchFile, commitID);
+    }
+
+    /**
+     * Moves the given branch to the given commit if it still points where
+     * the caller last saw it (compare and swap). The comparison and the
+     * write happen under the branch's lock, so when several processes move
+     * one branch at once, exactly one of them succeeds for each old value.
      *
-     * @param branch the branch to save
-     * @param commitID the commit id to save as given branch head
+     * @param branch     the branch to update
+     * @param expectedID the commit the branch must point to, or null if it must not exist
+     * @param commitID   the commit to point the branch to, or null to delete the branch
      */
-    static void saveBranch(String branch, String commitID) {
-        File branchFile = new File(join(BRANCH_DIR, branch).toString());
-        writeContents(branchFile, commitID);
+    static void updateBranch(String branch, String expectedID, String commitID) {
+        updateBranch(GITLET_DIR, branch, expectedID, commitID);
+    }
+
+    /**
+     * Moves a branch of the given repository like
+     * {@link #updateBranch(String, String, String)}
+     *
+     * @param gitletDir  the .gitlet directory of the repository
+     * @param branch     the branch to update
+     * @param expectedID the commit the branch must point to, or null if it must not exist
+     * @param commitID   the commit to point the branch to, or null to delete the branch
+     */
+    static void updateBranch(File gitletDir, String branch, String expectedID, String commitID) {
+        File branchDir = join(gitletDir, REF_DIR.getName(), BRANCH_DIR.getName());
+        File branchFile = join(branchDir, branch);
+        RepoLock lock = RepoLock.acquire(gitletDir, RepoLock.ref(branch));
+        try {
+            String currentID = branchFile.isFile() ? readContentsAsString(branchFile) : null;
+            if (currentID == null ? expectedID != null : !currentID.equals(expectedID)) {
+                if (expectedID == null) {
+                    throw error("A branch with that name already exists.");
+                }
+                throw error("Branch %s was changed by another gitlet process.", branch);
+            }
+            if (commitID != null) {
+                saveBranch(branchFile, commitID);
+            } else {
+                branchFile.delete();
+                //Drop the folder of a remote once its last branch is gone
+                if (!branchFile.getParentFile().equals(branchDir)) {
+                    branchFile.getParentFile().delete();
+                }
+            }
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Returns the names of all branches, including the remote branches
+     * fetched from other repositories, which are named REMOTE/BRANCH
+     *
+     * @return sorted branch names
+     */
+    static List<String> branchNames() {
+        List<String> branches = new ArrayList<>(plainFilenamesIn(BRANCH_DIR));
+        List<String> remotes = plainFolderNamesIn(BRANCH_DIR);
+        if (remotes != null) {
+            for (String remote : remotes) {
+                for (String branch : plainFilenamesIn(join(BRANCH_DIR, remote))) {
+                    branches.add(remote + "/" + branch);
+                }
+            }
+        }
+        Collections.sort(branches);
+        return branches;
     }
 
     /**
@@ -102,21 +200,20 @@ public class Helper {
     static void saveCommit(Commit newCommit) {
 
         //Calculate commit SHA-1 id
-        String commitID = sha1(serialize(newCommit));
+        byte[] contents = CommitCodec.encode(newCommit);
+        String commitID = sha1(contents);
         newCommit.setID(commitID);
 
-        //Make a new commit directory using the first 6 characters of the commitID
-        File commitDir = new File(join(COMMIT_DIR, commitID.substring(0, 6)).toString());
-        commitDir.mkdir();
-
-        //Save the commit to a new file in the new commit dir
-        //named using the remaining characters in the commitID
-        String commitFileName = commitID.substring(6);
-        File commitFile = new File(join(commitDir, commitFileName).toString());
-        writeObject(commitFile, newCommit);
+        //Save the commit to the object store
+        OBJECTS.write(ObjectStore.COMMIT, commitID, contents);
+        COMMITS.put(commitID, newCommit);
+        CommitGraph.add(newCommit);
+        SearchIndex.add(newCommit);
 
+        //The commit is made on top of the branch head its first parent was read from
         loadCurrentBranchVar();
-        saveBranch(currentBranch, commitID);
+        List<String> parentIDs = newCommit.getParentIDs();
+        updateBranch(currentBranch, parentIDs.isEmpty() ? null : parentIDs.get(0), commitID);
     }
 
     /**
@@ -125,45 +222,118 @@ public class Helper {
      * @param commitID the id of the commit that needs to be loaded
      */
     static Commit loadCommitWithID(String commitID) {
-        //Check folder exists
-        File commitFolder = new File(join(COMMIT_DIR, commitID.substring(0, 6)).toString());
-        if (!commitFolder.exists()) {
-            message("No commit with that id exists.");
-            System.exit(0);
+        //A full id can be looked up in the cache before it is resolved
+        String fullID = commitID.length() == UID_LENGTH ? commitID : resolveCommitID(commitID);
+        Commit commit = COMMITS.get(fullID);
+        if (commit != null) {
+            return commit;
+        }
+
+        //Load commit object from the object store
+        byte[] contents = OBJECTS.read(ObjectStore.COMMIT, fullID);
+        if (contents == null) {
+            throw error("No commit with that id exists.");
         }
-        //Get the commit file in commit folder
-        List<String> files = plainFilenamesIn(commitFolder);
-        File commitFile = new File(join(commitFolder, files.get(0)).toString());
-        //Load commit object in commitFile
-        Commit commit = readObject(commitFile, Commit.class);
+        commit = CommitCodec.decode(fullID, contents);
+        COMMITS.put(fullID, commit);
         return commit;
     }
 
+    /**
+     * Returns the full id of the commit identified by the given full
+     * or abbreviated commit id. Throws if no commit or more than one
+     * commit matches.
+     *
+     * @param commitID full or abbreviated commit id
+     * @return full commit id
+     */
+    static String resolveCommitID(String commitID) {
+        List<String> ids = OBJECTS.resolve(ObjectStore.COMMIT, commitID);
+        if (ids.isEmpty()) {
+            throw error("No commit with that id exists.");
+        }
+        if (ids.size() > 1) {
+            throw error("Commit id %s is ambiguous. Candidates are:%n%s",
+                    commitID, String.join(System.lineSeparator(), ids));
+        }
+        return ids.get(0);
+    }
+
+    /**
+     * Prints hit and miss counts of the in-process caches to standard error
+     */
+    static void printCacheStats() {
+        System.err.println("commit cache: " + COMMITS);
+        System.err.println("rebuilt blob cache: " + OBJECTS.rebuiltCache());
+    }
+
+    /**
+     * Forgets cached repository state that other processes may have
+     * changed on disk. Caches of objects are kept, since objects never
+     * change once written.
+     */
+    static void invalidateCaches() {
+        StagingOperations.invalidate();
+        FileIndex.invalidate();
+        Shallow.invalidate();
+        CommitGraph.invalidate();
+        OBJECTS.invalidate();
+    }
+
+    // ------------ Loading Files --------------- //
+
+    /**
+     * Loads the contents of the file blob with the given id
+     *
+     * @param fileID the SHA-1 id of the file blob
+     * @return file contents
+     */
+    static byte[] loadFile(String fileID) {
+        byte[] contents = OBJECTS.read(ObjectStore.BLOB, fileID);
+        if (contents == null) {
+            throw error("Missing file object %s", fileID);
+        }
+        return contents;
+    }
+
     // ------------ Saving CWD Files --------------- //
 
     /**
-     * Saves all staged working directory files to the repo
-     * and clears the staging area
+     * Saves the given working directory files to the object store, hashing
+     * and compressing them in parallel on the common ForkJoinPool
+     *
+     * @param fileNames the working files to save
+     * @param parent    the commit holding the previous versions of the files,
+     *                  against which new versions are delta compressed
+     * @return map of file names to the SHA-1 ids of their contents
+     */
+    static Map<String, String> saveWorkingFiles(List<String> fileNames, Commit parent) {
+        Map<String, String> fileIDs = new ConcurrentHashMap<>();
+        fileNames.parallelStream().forEach(fileName -> fileIDs.put(fileName,
+                OBJECTS.writeBlob(join(CWD, fileName), parent.getFileID(fileName))));
+        return fileIDs;
+    }
+
+    /**
+     * Saves any staged working directory files that are not in the
+     * object store yet. Files are saved when they are added, so this
+     * only finds copies staged by earlier versions of gitlet. Called
+     * before the commit tracking the files is saved, so that its branch
+     * never points to a commit whose files are missing.
      *
      * @param stagedFiles list of files added to the staging area
+     * @param parent      the commit holding the previous versions of the files,
+     *                    against which new versions are delta compressed
      */
-    static void saveFiles(Map<String, String> stagedFiles) {
+    static void saveFiles(Map<String, String> stagedFiles, Commit parent) {
 
         for (String fileName : stagedFiles.keySet()) {
             String fileSHAID = stagedFiles.get(fileName);
-            //Make a new folder using the first 6 characters of the fileSHAID
-            File newFolder = new File(join(FILE_DIR, fileSHAID.substring(0, 6)).toString());
-            newFolder.mkdir();
-
-            //Save the staged copy of the working directory file to a new file in a new folder
-            //named using the remaining characters in the fileSHAID
-            String saveFileName = fileSHAID.substring(6);
-            File saveFile = new File(join(newFolder, saveFileName).toString());
-            String fileContents = readContentsAsString(join(StagingOperations.STAGED_COPY_DIR,
-                    fileName));
-            writeContents(saveFile, fileContents);
+            //Save the staged copy of the working directory file to the object store
+            File stagedCopy = join(StagingOperations.STAGED_COPY_DIR, fileName);
+            if (!OBJECTS.contains(ObjectStore.BLOB, fileSHAID) && stagedCopy.isFile()) {
+                OBJECTS.writeBlob(stagedCopy, parent.getFileID(fileName));
+            }
         }
-        //Clear staging area
-        StagingOperations.clearStagingArea();
     }
 }
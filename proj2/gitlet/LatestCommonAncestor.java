@@ -1,75 +1,128 @@
 package gitlet;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
 
 import static gitlet.Helper.*;
 
 /**
  * Class finds the latest common ancestor of two given branches i.e their common split point
+ * <p>
+ * Ancestors of both heads are painted on the {@link CommitGraph}, visiting
+ * commits in order of decreasing generation number. A commit reached from
+ * both heads is a common ancestor; its own ancestors are then painted stale,
+ * so the walk stops as soon as only stale commits are left and never
+ * descends below the split point. No commit objects are loaded.
  */
 class LatestCommonAncestor {
 
     /**
-     * hash set to store all parent commits of branch 1
+     * Reached from branch 1
      */
-    static HashSet<String> branch1Commits = new HashSet<>();
-
+    private static final int PARENT1 = 1;
+    /**
+     * Reached from branch 2
+     */
+    private static final int PARENT2 = 2;
+    /**
+     * Ancestor of a common ancestor
+     */
+    private static final int STALE = 4;
     /**
-     * Stores the latest common ancestor of branch1 and branch2
+     * Already recorded as a common ancestor
      */
-    static Commit lca;
+    private static final int RESULT = 8;
+    /**
+     * Waiting in the queue without being stale
+     */
+    private static final int QUEUED_ACTIVE = 16;
 
     /**
      * Returns the latest common ancestor of given branches
      *
      * @param branch1Head head commit of branch 1
      * @param branch2Head head commit of branch 2
-     * @return the latest common ancestor commit of both branches
+     * @return the latest common ancestor commit of both branches, or null if
+     * they have none
      */
     static Commit findLCA(Commit branch1Head, Commit branch2Head) {
-        dfsCurrent(branch1Head);
-        dfsMerge(branch2Head);
-        return lca;
+        String splitID = findLCA(branch1Head.getID(), branch2Head.getID());
+        return splitID == null ? null : loadCommitWithID(splitID);
     }
 
     /**
-     * Performs depth first search on the commit tree
-     * starting from branch1 head adding found
-     * commits to {@code branch1Commits} set
+     * Returns the id of the latest common ancestor of the given commits.
+     * When there is more than one common ancestor none of which is an
+     * ancestor of another (criss-cross merges), the most recent one is chosen.
+     * Shallow commits are roots of the graph, so only the history the
+     * repository has is searched.
+     *
+     * @param commitID1 full id of the first commit
+     * @param commitID2 full id of the second commit
+     * @return full id of the latest common ancestor, or null if there is none
      */
-    private static void dfsCurrent(Commit commit) {
-        branch1Commits.add(commit.getID());
-        for (String parentCommitID : commit.getParentIDs()) {
-            if (!branch1Commits.contains(parentCommitID)) {
-                dfsCurrent(loadCommitWithID(parentCommitID));
-            }
+    static String findLCA(String commitID1, String commitID2) {
+        int head1 = CommitGraph.lookup(commitID1);
+        int head2 = CommitGraph.lookup(commitID2);
+        if (head1 == head2) {
+            return commitID1;
         }
-    }
 
-    /**
-     * Performs depth first search on the commit tree
-     * starting from branch2 head. Returns as soon
-     * as the latest common ancestor is found
-     */
-    private static void dfsMerge(Commit commit) {
+        //Paint flags of every graph position, and the number of queued
+        //entries that are not stale
+        int[] flags = new int[CommitGraph.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(CommitWalker.newestFirst());
+        flags[head1] = PARENT1 | QUEUED_ACTIVE;
+        flags[head2] = PARENT2 | QUEUED_ACTIVE;
+        queue.add(head1);
+        queue.add(head2);
+        int active = 2;
 
-        //Common commit
-        if (branch1Commits.contains(commit.getID())) {
-            //Already found a LCA
-            if (lca != null) {
-                //this commit is more recent than lca i.e. latest
-                if (commit.getDate().compareTo(lca.getDate()) > 0) {
-                    lca = commit;
+        List<Integer> common = new ArrayList<>();
+        while (active > 0) {
+            int commit = queue.poll();
+            int commitFlags = flags[commit];
+            if ((commitFlags & QUEUED_ACTIVE) != 0) {
+                active--;
+            }
+            if ((commitFlags & (PARENT1 | PARENT2)) == (PARENT1 | PARENT2)) {
+                if ((commitFlags & RESULT) == 0) {
+                    flags[commit] |= RESULT;
+                    common.add(commit);
+                }
+                commitFlags |= STALE;
+            }
+            flags[commit] &= ~QUEUED_ACTIVE;
+            commitFlags &= PARENT1 | PARENT2 | STALE;
+            for (int parent : CommitGraph.parentsOf(commit)) {
+                if ((flags[parent] & commitFlags) == commitFlags) {
+                    continue;
+                }
+                flags[parent] |= commitFlags;
+                queue.add(parent);
+                if ((commitFlags & STALE) == 0 && (flags[parent] & QUEUED_ACTIVE) == 0) {
+                    flags[parent] |= QUEUED_ACTIVE;
+                    active++;
                 }
-            } else {
-                lca = commit;
             }
-            return;
         }
 
-        for (String parentCommitID : commit.getParentIDs()) {
-            Commit parentCommit = loadCommitWithID(parentCommitID);
-            dfsMerge(parentCommit);
+        //Drop common ancestors of other common ancestors, then take the newest
+        int best = -1;
+        for (int candidate : common) {
+            boolean redundant = false;
+            for (int other : common) {
+                if (other != candidate && CommitWalker.isAncestor(candidate, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant && (best < 0 || CommitWalker.newestFirst().compare(candidate, best) < 0)) {
+                best = candidate;
+            }
         }
+        //Histories cut short by a shallow clone may not meet at all
+        return best < 0 ? null : CommitGraph.idAt(best);
     }
 }
@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges two versions of a file line by line against the version they
+ * both started from. <br><br>
+ * <p>
+ * Both versions are diffed against the base. Hunks that change different
+ * parts of the base are applied together; where the two sides change the
+ * same (or touching) base lines differently, only that region is written
+ * between conflict markers: <br>
+ * {@code <<<<<<< HEAD} | current lines | [{@code ||||||| split} | base lines] |
+ * {@code =======} | given lines | {@code >>>>>>>} <br>
+ * where the base section is only written in diff3 style. A file that one
+ * side deleted conflicts as a whole. <br><br>
+ * <p>
+ * Lines are split and compared as described in {@link Diff}, so any file
+ * content passes through unchanged.
+ *
+ * @author Rishabh Choudhury
+ */
+class LineMerge {
+    /**
+     * Starts the current branch's side of a conflict
+     */
+    private static final String OURS_MARKER = "<<<<<<< HEAD\n";
+    /**
+     * Starts the split point's lines of a diff3 style conflict
+     */
+    private static final String BASE_MARKER = "||||||| split\n";
+    /**
+     * Starts the given branch's side of a conflict
+     */
+    private static final String THEIRS_MARKER = "=======\n";
+    /**
+     * Ends a conflict
+     */
+    private static final String END_MARKER = ">>>>>>>\n";
+
+    /**
+     * Merged contents of a file
+     */
+    static class Result {
+        /**
+         * The merged file
+         */
+        final byte[] contents;
+        /**
+         * Whether the file has conflict markers
+         */
+        final boolean conflict;
+
+        Result(byte[] contents, boolean conflict) {
+            this.contents = contents;
+            this.conflict = conflict;
+        }
+    }
+
+    /**
+     * Merges the changes both sides made to a file
+     *
+     * @param base   the file at the split point, or null if it did not exist
+     * @param ours   the file in the current branch, or null if it was deleted
+     * @param theirs the file in the given branch, or null if it was deleted
+     * @param diff3  whether conflicts also show the split point's lines
+     * @return the merged file
+     */
+    static Result merge(byte[] base, byte[] ours, byte[] theirs, boolean diff3) {
+        List<String> baseLines = Diff.lines(base);
+        List<String> ourLines = Diff.lines(ours);
+        List<String> theirLines = Diff.lines(theirs);
+        StringBuilder out = new StringBuilder();
+
+        //A deleted file cannot be merged line by line
+        if (ours == null || theirs == null) {
+            conflict(out, ourLines, baseLines, theirLines, diff3);
+            return result(out, true);
+        }
+
+        Map<String, Integer> numbers = new HashMap<>();
+        int[] baseNums = Diff.number(baseLines, numbers);
+        List<Diff.Hunk> ourHunks = Diff.diff(baseNums, Diff.number(ourLines, numbers));
+        List<Diff.Hunk> theirHunks = Diff.diff(baseNums, Diff.number(theirLines, numbers));
+
+        boolean conflict = false;
+        int basePos = 0;
+        //Difference between line numbers in each side and in the base
+        int ourShift = 0;
+        int theirShift = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ourHunks.size() || j < theirHunks.size()) {
+            //Start a region at the first remaining hunk of either side
+            int lo = Math.min(
+                    i < ourHunks.size() ? ourHunks.get(i).oldStart : Integer.MAX_VALUE,
+                    j < theirHunks.size() ? theirHunks.get(j).oldStart : Integer.MAX_VALUE);
+            int hi = lo;
+            int ourEnd = i;
+            int theirEnd = j;
+            int ourGrowth = 0;
+            int theirGrowth = 0;
+
+            //Grow the region while a hunk of either side overlaps or touches it
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                if (ourEnd < ourHunks.size() && ourHunks.get(ourEnd).oldStart <= hi) {
+                    Diff.Hunk hunk = ourHunks.get(ourEnd++);
+                    hi = Math.max(hi, hunk.oldEnd);
+                    ourGrowth += (hunk.newEnd - hunk.newStart) - (hunk.oldEnd - hunk.oldStart);
+                    grown = true;
+                }
+                if (theirEnd < theirHunks.size() && theirHunks.get(theirEnd).oldStart <= hi) {
+                    Diff.Hunk hunk = theirHunks.get(theirEnd++);
+                    hi = Math.max(hi, hunk.oldEnd);
+                    theirGrowth += (hunk.newEnd - hunk.newStart) - (hunk.oldEnd - hunk.oldStart);
+                    grown = true;
+                }
+            }
+
+            //Unchanged lines before the region
+            out.append(String.join("", baseLines.subList(basePos, lo)));
+
+            List<String> ourRegion = ourLines.subList(lo + ourShift, hi + ourShift + ourGrowth);
+            List<String> theirRegion = theirLines.subList(lo + theirShift,
+                    hi + theirShift + theirGrowth);
+            if (theirEnd == j || ourRegion.equals(theirRegion)) {
+                //Only the current branch changed this region, or both alike
+                out.append(String.join("", ourRegion));
+            } else if (ourEnd == i) {
+                //Only the given branch changed this region
+                out.append(String.join("", theirRegion));
+            } else {
+                conflict = true;
+                conflict(out, ourRegion, baseLines.subList(lo, hi), theirRegion, diff3);
+            }
+
+            basePos = hi;
+            ourShift += ourGrowth;
+            theirShift += theirGrowth;
+            i = ourEnd;
+            j = theirEnd;
+        }
+        out.append(String.join("", baseLines.subList(basePos, baseLines.size())));
+        return result(out, conflict);
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Writes a conflict region
+     */
+    private static void conflict(StringBuilder out, List<String> ours, List<String> base,
+                                 List<String> theirs, boolean diff3) {
+        out.append(OURS_MARKER).append(String.join("", ours));
+        if (diff3) {
+            out.append(BASE_MARKER).append(String.join("", base));
+        }
+        out.append(THEIRS_MARKER).append(String.join("", theirs)).append(END_MARKER);
+    }
+
+    /**
+     * Returns the merged file written to out
+     */
+    private static Result result(StringBuilder out, boolean conflict) {
+        return new Result(out.toString().getBytes(StandardCharsets.ISO_8859_1), conflict);
+    }
+}
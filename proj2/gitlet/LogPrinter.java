@@ -0,0 +1,228 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/**
+ * Prints commits for the log and global-log commands and decides which
+ * commits they show. <br><br>
+ * <p>
+ * Options: <br>
+ * -n [count] - show at most count commits <br>
+ * --since [date] - show only commits made at or after date <br>
+ * --until [date] - show only commits made at or before date <br>
+ * --oneline - show each commit as its abbreviated id and first message line <br>
+ * where a date is either yyyy-mm-dd or yyyy-mm-ddThh:mm[:ss] in local time. <br><br>
+ * <p>
+ * Output goes through one large buffer and dates through a single
+ * formatter, instead of a print call per line and a Calendar per commit.
+ *
+ * @author Rishabh Choudhury
+ */
+class LogPrinter {
+    /**
+     * Size of the output buffer in characters
+     */
+    private static final int BUFFER_CHARS = 1 << 16;
+    /**
+     * Number of id characters shown in abbreviated ids
+     */
+    private static final int SHORT_ID = 7;
+    /**
+     * Formats commit dates, e.g. Thu Nov 9 20:00:05 2017 -0800
+     */
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z");
+
+    /**
+     * Buffered standard output
+     */
+    private final Writer out = new BufferedWriter(
+            new OutputStreamWriter(System.out), BUFFER_CHARS);
+    /**
+     * Time zone dates are shown in
+     */
+    private final ZoneId zone = ZoneId.systemDefault();
+    /**
+     * Maximum number of commits to show
+     */
+    private long limit = Long.MAX_VALUE;
+    /**
+     * Commits made before this time in ms are not shown
+     */
+    private long since = Long.MIN_VALUE;
+    /**
+     * Commits made after this time in ms are not shown
+     */
+    private long until = Long.MAX_VALUE;
+    /**
+     * Whether commits are shown one per line
+     */
+    private boolean oneline;
+    /**
+     * Number of commits shown so far
+     */
+    private long printed;
+
+    /**
+     * Creates a printer for the given log options. Throws if the options
+     * are not valid.
+     *
+     * @param options the arguments following the command name
+     * @return the printer
+     */
+    static LogPrinter withOptions(List<String> options) {
+        LogPrinter printer = new LogPrinter();
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+            if (option.equals("--oneline")) {
+                printer.oneline = true;
+                continue;
+            }
+            if (i + 1 >= options.size()) {
+                throw incorrectOperands();
+            }
+            String value = options.get(++i);
+            switch (option) {
+                case "-n" -> {
+                    try {
+                        printer.limit = Long.parseLong(value);
+                    } catch (NumberFormatException excp) {
+                        throw incorrectOperands();
+                    }
+                    if (printer.limit < 0) {
+                        throw incorrectOperands();
+                    }
+                }
+                case "--since" -> printer.since = printer.parseDate(value, false);
+                case "--until" -> printer.until = printer.parseDate(value, true);
+                default -> throw incorrectOperands();
+            }
+        }
+        return printer;
+    }
+
+    /**
+     * Returns true once as many commits as asked for have been shown
+     *
+     * @return whether no more commits should be shown
+     */
+    boolean isFull() {
+        return printed >= limit;
+    }
+
+    /**
+     * Returns true if a commit made at the given time is older than
+     * the commits that should be shown
+     *
+     * @param date commit time in ms since the epoch
+     * @return whether the commit is too old
+     */
+    boolean isTooOld(long date) {
+        return date < since;
+    }
+
+    /**
+     * Returns true if a commit made at the given time should be shown
+     *
+     * @param date commit time in ms since the epoch
+     * @return whether the commit is in the requested time range
+     */
+    boolean inRange(long date) {
+        return date >= since && date <= until;
+    }
+
+    /**
+     * Shows the given commit
+     *
+     * @param commit the commit to show
+     */
+    void print(Commit commit) {
+        try {
+            String id = commit.getID();
+            if (oneline) {
+                String message = commit.getMessage();
+                int newline = message.indexOf('\n');
+                out.write(id, 0, SHORT_ID);
+                out.write(' ');
+                out.write(newline < 0 ? message : message.substring(0, newline));
+                out.write('\n');
+            } else {
+                out.write("===\ncommit ");
+                out.write(id);
+                out.write('\n');
+
+                //Merge commit
+                List<String> parentIDs = commit.getParentIDs();
+                if (parentIDs.size() > 1) {
+                    out.write("Merge: ");
+                    for (String parentID : parentIDs) {
+                        out.write(parentID, 0, SHORT_ID);
+                        out.write(' ');
+                    }
+                    out.write('\n');
+                }
+
+                out.write("Date: ");
+                DATE_FORMAT.formatTo(Instant.ofEpochMilli(commit.getDate().getTime())
+                        .atZone(zone), out);
+                out.write('\n');
+                out.write(commit.getMessage());
+                out.write("\n\n");
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write log: %s", excp.getMessage());
+        }
+        printed++;
+    }
+
+    /**
+     * Writes out any buffered output
+     */
+    void flush() {
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            throw error("Cannot write log: %s", excp.getMessage());
+        }
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Returns the given local date or date-time in ms since the epoch. A date
+     * without a time means the start of that day, or its end for an upper bound.
+     */
+    private long parseDate(String value, boolean endOfDay) {
+        try {
+            if (value.contains("T")) {
+                return LocalDateTime.parse(value).atZone(zone).toInstant().toEpochMilli();
+            }
+            LocalDate day = LocalDate.parse(value);
+            if (endOfDay) {
+                return day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+            }
+            return day.atStartOfDay(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            throw incorrectOperands();
+        }
+    }
+
+    /**
+     * Returns the error reporting incorrect operands
+     */
+    private static GitletException incorrectOperands() {
+        return error("Incorrect operands.");
+    }
+}
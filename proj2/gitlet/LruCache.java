@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded in-process cache that evicts its least recently used
+ * entries once the total weight of its values exceeds its capacity. <br><br>
+ * <p>
+ * The cache counts hits and misses so that its capacity can be tuned for
+ * a workload. All methods are synchronized, so a cache can be shared by
+ * the threads of a parallel command.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ * @author Rishabh Choudhury
+ */
+class LruCache<K, V> {
+    /**
+     * Cached values, least recently used first
+     */
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Maximum total weight of the cached values
+     */
+    private final long capacity;
+    /**
+     * Returns the weight of a value
+     */
+    private final ToLongFunction<V> weigher;
+    /**
+     * Total weight of the cached values
+     */
+    private long weight;
+    /**
+     * Number of lookups that found a value
+     */
+    private long hits;
+    /**
+     * Number of lookups that found nothing
+     */
+    private long misses;
+
+    /**
+     * Creates a cache holding at most the given number of values
+     *
+     * @param capacity maximum number of values
+     */
+    LruCache(long capacity) {
+        this(capacity, value -> 1);
+    }
+
+    /**
+     * Creates a cache holding values up to the given total weight
+     *
+     * @param capacity maximum total weight of the values
+     * @param weigher  returns the weight of a value
+     */
+    LruCache(long capacity, ToLongFunction<V> weigher) {
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the value cached for the given key, marking it most recently used
+     *
+     * @param key the key
+     * @return the cached value or null
+     */
+    synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Caches a value, evicting least recently used values as needed.
+     * Values heavier than the whole cache are not cached.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > capacity) {
+            return;
+        }
+        V old = entries.put(key, value);
+        if (old != null) {
+            weight -= weigher.applyAsLong(old);
+        }
+        weight += valueWeight;
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (weight > capacity && eldest.hasNext()) {
+            weight -= weigher.applyAsLong(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found a value
+     *
+     * @return hit count
+     */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that found nothing
+     *
+     * @return miss count
+     */
+    synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of cached values
+     *
+     * @return value count
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hits=%d misses=%d size=%d weight=%d/%d",
+                hits, misses, entries.size(), weight, capacity);
+    }
+}
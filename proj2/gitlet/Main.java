@@ -1,5 +1,9 @@
 package gitlet;
 
+import java.util.Arrays;
+import java.util.Set;
+
+import static gitlet.Utils.error;
 import static gitlet.Utils.message;
 
 /**
@@ -8,80 +12,158 @@ import static gitlet.Utils.message;
  * @author Rishabh Choudhury
  */
 public class Main {
+    /**
+     * Commands that hold the staging lock while they run
+     */
+    private static final Set<String> STAGING_COMMANDS = Set.of(
+            "add", "rm", "commit", "checkout", "reset", "merge", "pull", "migrate");
 
     /**
      * Usage: java gitlet.Main ARGS, where ARGS contains
      * <COMMAND> <OPERAND1> <OPERAND2> ...
      */
     public static void main(String[] args) {
+        //A running daemon runs the command, so this process need not load the repository
+        if (args.length > 0 && !args[0].equals("daemon") && Daemon.forward(args)) {
+            return;
+        }
+
+        //Report cache effectiveness however the command exits
+        if (Boolean.getBoolean("gitlet.cacheStats")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Helper::printCacheStats));
+        }
+
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            message(excp.getMessage());
+        }
+    }
+
+    /**
+     * Runs a single gitlet command. Errors that end the command,
+     * including incorrect usage, are thrown as GitletExceptions whose
+     * message should be shown to the user.
+     *
+     * @param args the command and its operands
+     */
+    static void run(String[] args) {
         //Empty arguement list
         if (args.length == 0) {
-            Utils.message("Please enter a command.");
-            System.exit(0);
+            throw error("Please enter a command.");
         }
 
         String firstArg = args[0];
         Repository gitlet = new Repository();
         //Check repo has been created first
-        if (!firstArg.equals("init")) {
+        if (!firstArg.equals("init") && !firstArg.equals("clone")) {
             gitlet.checkRepoExists();
         }
 
-        switch (firstArg) {
-            case "init" -> {
-                commandsWithNoArgument(args);
-                gitlet.init();
-            }
-            case "log" -> {
-                commandsWithNoArgument(args);
-                gitlet.log();
+        //Commands that change the staging area or working directory run one at a time
+        RepoLock staging = STAGING_COMMANDS.contains(firstArg)
+                ? RepoLock.acquire(RepoLock.STAGING) : null;
+        try {
+            switch (firstArg) {
+                case "init" -> {
+                    commandsWithNoArgument(args);
+                    gitlet.init();
+                }
+                case "log" -> gitlet.log(Arrays.copyOfRange(args, 1, args.length));
+                case "global-log" -> gitlet.globalLog(Arrays.copyOfRange(args, 1, args.length));
+                case "status" -> {
+                    statusCommandArguments(args);
+                    gitlet.status(args.length == 2);
+                }
+                case "add" -> {
+                    commandsWithOneOrMoreArguments(args);
+                    gitlet.add(Arrays.copyOfRange(args, 1, args.length));
+                }
+                case "commit" -> {
+                    commandsWithOneArgument(args);
+                    gitlet.commit(args[1]);
+                }
+                case "find" -> {
+                    findCommandArguments(args);
+                    gitlet.find(Arrays.copyOfRange(args, 1, args.length));
+                }
+                case "rm" -> {
+                    commandsWithOneArgument(args);
+                    gitlet.rm(args[1]);
+                }
+                case "reset" -> {
+                    commandsWithOneArgument(args);
+                    gitlet.reset(args[1]);
+                }
+                case "branch" -> {
+                    commandsWithOneArgument(args);
+                    gitlet.branch(args[1]);
+                }
+                case "rm-branch" -> {
+                    commandsWithOneArgument(args);
+                    gitlet.removeBranch(args[1]);
+                }
+                case "merge" -> {
+                    mergeCommandArguments(args);
+                    gitlet.merge(args[1], args.length == 3);
+                }
+                case "diff" -> {
+                    diffCommandArguments(args);
+                    gitlet.diff(Arrays.copyOfRange(args, 1, args.length));
+                }
+                case "daemon" -> {
+                    daemonCommandArguments(args);
+                    if (args.length == 1) {
+                        Daemon.serve();
+                    } else {
+                        Daemon.stop();
+                    }
+                }
+                case "add-remote" -> {
+                    commandsWithTwoArguments(args);
+                    gitlet.addRemote(args[1], args[2]);
+                }
+                case "rm-remote" -> {
+                    commandsWithOneArgument(args);
+                    gitlet.removeRemote(args[1]);
+                }
+                case "push" -> {
+                    commandsWithTwoArguments(args);
+                    gitlet.push(args[1], args[2]);
+                }
+                case "fetch" -> {
+                    commandsWithTwoArguments(args);
+                    gitlet.fetch(args[1], args[2]);
+                }
+                case "pull" -> {
+                    commandsWithTwoArguments(args);
+                    gitlet.pull(args[1], args[2]);
+                }
+                case "clone" -> {
+                    cloneCommandArguments(args);
+                    gitlet.clone(Arrays.copyOfRange(args, 1, args.length));
+                }
+                case "gc" -> {
+                    commandsWithNoArgument(args);
+                    gitlet.gc();
+                }
+                case "migrate" -> {
+                    commandsWithNoArgument(args);
+                    gitlet.migrate();
+                }
+                case "checkout" -> {
+                    checkoutCommandArguments(args);
+                    gitlet.checkout(args);
+                }
+                default -> {
+                    System.out.println("No command with that name exists.");
+                }
             }
-            case "global-log" -> {
-                commandsWithNoArgument(args);
-                gitlet.globalLog();
-            }
-            case "status" -> {
-                commandsWithNoArgument(args);
-                gitlet.status();
-            }
-            case "add" -> {
-                commandsWithOneArgument(args);
-                gitlet.add(args[1]);
-            }
-            case "commit" -> {
-                commandsWithOneArgument(args);
-                gitlet.commit(args[1]);
-            }
-            case "find" -> {
-                commandsWithOneArgument(args);
-                gitlet.find(args[1]);
-            }
-            case "rm" -> {
-                commandsWithOneArgument(args);
-                gitlet.rm(args[1]);
-            }
-            case "reset" -> {
-                commandsWithOneArgument(args);
-                gitlet.reset(args[1]);
-            }
-            case "branch" -> {
-                commandsWithOneArgument(args);
-                gitlet.branch(args[1]);
-            }
-            case "rm-branch" -> {
-                commandsWithOneArgument(args);
-                gitlet.removeBranch(args[1]);
-            }
-            case "merge" -> {
-                commandsWithOneArgument(args);
-                gitlet.merge(args[1]);
-            }
-            case "checkout" -> {
-                checkoutCommandArguments(args);
-                gitlet.checkout(args);
-            }
-            default -> {
-                System.out.println("No command with that name exists.");
+        } finally {
+            //Objects saved by the command reach the disk in one batch
+            Helper.OBJECTS.sync();
+            if (staging != null) {
+                staging.close();
             }
         }
     }
@@ -91,37 +173,102 @@ public class Main {
 
     public static void commandsWithNoArgument(String[] args) {
         if (args.length > 1) {
-            message("Incorrect operands.");
-            System.exit(0);
+            throw error("Incorrect operands.");
         }
     }
 
     public static void commandsWithOneArgument(String[] args) {
         if (args.length > 2) {
-            message("Incorrect operands.");
-            System.exit(0);
+            throw error("Incorrect operands.");
+        }
+    }
+
+    public static void commandsWithTwoArguments(String[] args) {
+        if (args.length != 3) {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    public static void cloneCommandArguments(String[] args) {
+        // clone [--depth N] [--filter=blob:none] [remote .gitlet directory]
+        if (args.length < 2) {
+            throw error("Incorrect operands.");
+        }
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equals("--depth") && i + 1 < args.length - 1
+                    && args[i + 1].matches("[1-9][0-9]{0,8}")) {
+                i++;
+            } else if (!args[i].equals("--filter=blob:none")) {
+                throw error("Incorrect operands.");
+            }
+        }
+    }
+
+    public static void commandsWithOneOrMoreArguments(String[] args) {
+        if (args.length < 2) {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    public static void findCommandArguments(String[] args) {
+        // find [message] | find --words [words] | find --substring [text]
+        if (args.length < 2 || args.length > 3) {
+            throw error("Incorrect operands.");
+        }
+        if (args.length == 3 && !args[1].equals("--words") && !args[1].equals("--substring")) {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    public static void mergeCommandArguments(String[] args) {
+        // merge [branch name] | merge [branch name] --diff3
+        if (args.length < 2 || args.length > 3) {
+            throw error("Incorrect operands.");
+        }
+        if (args.length == 3 && !args[2].equals("--diff3")) {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    public static void diffCommandArguments(String[] args) {
+        // diff [commit id] [commit id] -- [path], with every part optional
+        int separator = Arrays.asList(args).indexOf("--");
+        int commitCount = (separator < 0 ? args.length : separator) - 1;
+        if (commitCount > 2 || (separator >= 0 && separator != args.length - 2)) {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    public static void statusCommandArguments(String[] args) {
+        // status | status --renames
+        if (args.length > 2 || (args.length == 2 && !args[1].equals("--renames"))) {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    public static void daemonCommandArguments(String[] args) {
+        // daemon | daemon --stop
+        if (args.length > 2 || (args.length == 2 && !args[1].equals("--stop"))) {
+            throw error("Incorrect operands.");
         }
     }
 
     public static void checkoutCommandArguments(String[] args) {
         if (args.length > 4) {
-            message("Incorrect operands.");
-            System.exit(0);
+            throw error("Incorrect operands.");
         }
 
         // checkout [commit id] -- [file name]
         if (args.length == 4) {
             if (!args[2].equals("--")) {
-                message("Incorrect operands.");
-                System.exit(0);
+                throw error("Incorrect operands.");
             }
         }
 
         // checkout -- [file name]
         if (args.length == 3) {
             if (!args[1].equals("--")) {
-                message("Incorrect operands.");
-                System.exit(0);
+                throw error("Incorrect operands.");
             }
         }
     }
@@ -0,0 +1,1306 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/**
+ * Stores and retrieves gitlet objects (commits, trees and file blobs). <br><br>
+ * <p>
+ * Newly created objects are written as loose files, one file per object,
+ * under {@code commits/<6 chars>/<34 chars>}, {@code trees/<6 chars>/<34 chars>}
+ * and {@code files/<6 chars>/<34 chars>}.
+ * The gc command moves all loose objects into a single pack
+ * (see {@link PackFile}), so that reading an object costs one index
+ * lookup instead of a directory listing and an open per object. <br><br>
+ * <p>
+ * Objects are stored with a two byte header: a magic byte, then the encoding
+ * (FULL or DELTA) in the low four bits and the compression {@link Codec}
+ * in the high four bits of the second byte.
+ * A blob may be stored as a delta against an earlier version of the same
+ * file (see {@link Delta}), in which case reading it rebuilds it from its
+ * base, whose chain length is bounded by {@code MAX_DELTA_DEPTH}. <br><br>
+ * <p>
+ * Objects written before headers existed are stored at the same paths, as
+ * Java serialized commits or raw blob contents, and are read as if stored
+ * in full and uncompressed. A commit never starts with the magic byte, but
+ * a raw blob may, so repositories record their format version in
+ * .gitlet/object-format. Those created with headers never hold a raw blob.
+ * In older ones a blob starting with the magic byte is raw if its stored
+ * bytes hash to its id, which the stored form of a blob with a header never
+ * does. gc gives every object it packs a header and then records the new
+ * format version, unless a big loose blob is still raw. <br><br>
+ * <p>
+ * Big blobs are split into content-defined chunks (see {@link Chunker}).
+ * Each chunk is stored once as a CHUNK object, under {@code chunks/},
+ * keyed by the SHA-1 id of its contents, and the blob is stored as the
+ * list of its chunks (CHUNKED encoding): varint count | (chunk id | varint
+ * length)*. Versions of a big file, and big files sharing content, share
+ * all chunks outside the edited regions.
+ * <p>
+ * A new loose object is written to a temporary file and only renamed to
+ * its id by {@link #sync}, which flushes all objects written since the
+ * previous sync in one batch first. Until then it is read from its
+ * temporary file. Anything that refers to objects (refs, the staging
+ * area) syncs before it is written, and every command syncs when it ends,
+ * so a crash never leaves an object that is referenced but missing or
+ * half written. <br><br>
+ * <p>
+ * The store of a partial clone has no blobs of its own except those it
+ * has used. The .gitlet/promisor file holds the path of the repository it
+ * was cloned from, and a blob that is not found is fetched from there the
+ * first time it is read. {@link #prefetch} fetches many blobs at once, in
+ * a single pack, before a checkout reads them.
+ *
+ * @author Rishabh Choudhury
+ */
+class ObjectStore {
+    /**
+     * Object type of a serialized commit
+     */
+    static final byte COMMIT = 1;
+    /**
+     * Object type of the contents of a tracked file
+     */
+    static final byte BLOB = 2;
+    /**
+     * Object type of a directory listing (see {@link Tree})
+     */
+    static final byte TREE = 3;
+    /**
+     * Object type of a chunk of a big file blob
+     */
+    static final byte CHUNK = 4;
+    /**
+     * All object types, in the order they are packed
+     */
+    private static final byte[] TYPES = {COMMIT, TREE, BLOB, CHUNK};
+    /**
+     * Number of leading id characters used to name loose object folders
+     */
+    private static final int FOLDER_CHARS = 6;
+    /**
+     * First byte of every object written with a header
+     */
+    private static final byte MAGIC = (byte) 0xC5;
+    /**
+     * Encoding of an object stored in full. Encoding values are recorded
+     * in object headers, so each keeps its value for good.
+     */
+    private static final byte FULL = 0;
+    /**
+     * Encoding of a blob stored as a delta against another blob
+     */
+    private static final byte DELTA = 1;
+    /**
+     * Encoding of a blob stored as a list of chunks
+     */
+    private static final byte CHUNKED = 2;
+    /**
+     * Size of the object header
+     */
+    private static final int HEADER_SIZE = 2;
+    /**
+     * Format version of stores whose every object has a header. Stores
+     * without a recorded version are of version 1, which may hold raw blobs.
+     */
+    private static final int HEADER_FORMAT = 2;
+    /**
+     * Longest chain of deltas that may have to be applied to read a blob
+     */
+    static final int MAX_DELTA_DEPTH = 16;
+    /**
+     * Largest blob that is handled in memory. Bigger blobs are split into
+     * chunks while they are read and are never delta compressed; checkout
+     * streams them chunk by chunk. Big blobs saved before chunking existed
+     * are streamed to and from their loose file and left loose by gc.
+     */
+    static final int BIG_FILE_SIZE = 32 << 20;
+    /**
+     * Number of bytes of rebuilt blobs kept in the reconstruction cache
+     */
+    private static final long CACHE_BYTES = 32 << 20;
+
+    /**
+     * Directory of loose commits
+     */
+    private final File commitDir;
+    /**
+     * Directory of loose file blobs
+     */
+    private final File fileDir;
+    /**
+     * Directory of loose trees
+     */
+    private final File treeDir;
+    /**
+     * Directory of loose chunks
+     */
+    private final File chunkDir;
+    /**
+     * Directory of packs
+     */
+    private final File packDir;
+    /**
+     * Packs currently in the pack directory, loaded on first use
+     */
+    private List<PackFile> packs;
+    /**
+     * Every open pack, keyed by index file name, kept open across
+     * invalidations until its files are deleted
+     */
+    private final Map<String, PackFile> openPacks = new HashMap<>();
+    /**
+     * Recently rebuilt delta blobs
+     */
+    private final LruCache<String, byte[]> rebuilt = new LruCache<>(CACHE_BYTES, b -> b.length);
+    /**
+     * Number of temporary files created, to keep their names unique
+     */
+    private final AtomicLong tmpCount = new AtomicLong();
+    /**
+     * Temporary files of objects written since the last sync,
+     * keyed by the loose file each is renamed to
+     */
+    private final Map<File, File> pending = new ConcurrentHashMap<>();
+    /**
+     * File holding the path of the repository missing blobs are fetched from
+     */
+    private final File promisorFile;
+    /**
+     * Object store of that repository, opened on first use
+     */
+    private ObjectStore promisor;
+    /**
+     * File holding the format version of the store
+     */
+    private final File formatFile;
+    /**
+     * Format version of the store, read on first use
+     */
+    private int format;
+
+    /**
+     * Creates an object store for the given .gitlet directory
+     *
+     * @param gitletDir the .gitlet directory of a repository
+     */
+    ObjectStore(File gitletDir) {
+        commitDir = join(gitletDir, "commits");
+        fileDir = join(gitletDir, "files");
+        treeDir = join(gitletDir, "trees");
+        chunkDir = join(gitletDir, "chunks");
+        packDir = join(gitletDir, "packs");
+        promisorFile = join(gitletDir, "promisor");
+        formatFile = join(gitletDir, "object-format");
+    }
+
+    // ------------ Reading Objects --------------- //
+
+    /**
+     * Returns the contents of the given object, rebuilding it
+     * from its delta chain if needed
+     *
+     * @param type the object type
+     * @param id   the full SHA-1 id of the object
+     * @return object contents or null if the object does not exist
+     */
+    byte[] read(byte type, String id) {
+        byte[] cached = rebuilt.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] stored = readStored(type, id);
+        return stored == null ? null : decode(type, id, stored);
+    }
+
+    /**
+     * Returns the contents of the given object from its stored form,
+     * rebuilding it from its delta chain if needed
+     *
+     * @param type   the object type
+     * @param id     the full SHA-1 id of the object
+     * @param stored the object exactly as stored
+     * @return object contents
+     */
+    private byte[] decode(byte type, String id, byte[] stored) {
+        if (encodingOf(stored) == CHUNKED) {
+            return joinChunks(stored);
+        }
+        if (encodingOf(stored) != DELTA) {
+            return body(stored);
+        }
+
+        //Walk down the delta chain until a full object or a cached blob is found
+        Deque<String> chainIDs = new ArrayDeque<>();
+        Deque<ByteBuffer> chain = new ArrayDeque<>();
+        String currentID = id;
+        byte[] contents;
+        while (true) {
+            if (encodingOf(stored) != DELTA) {
+                contents = body(stored);
+                break;
+            }
+            ByteBuffer delta = ByteBuffer.wrap(stored, HEADER_SIZE, stored.length - HEADER_SIZE);
+            byte[] baseID = new byte[UID_LENGTH / 2];
+            delta.get(baseID);
+            delta.get();
+            chainIDs.push(currentID);
+            chain.push(ByteBuffer.wrap(codecOf(stored).decompress(delta)));
+
+            currentID = toHex(baseID);
+            contents = rebuilt.get(currentID);
+            if (contents != null) {
+                break;
+            }
+            stored = readStored(type, currentID);
+            if (stored == null) {
+                throw error("Missing delta base %s", currentID);
+            }
+        }
+
+        //Apply the deltas from the base up, caching each version on the way
+        while (!chain.isEmpty()) {
+            contents = Delta.apply(contents, chain.pop());
+            rebuilt.put(chainIDs.pop(), contents);
+        }
+        return contents;
+    }
+
+    /**
+     * Returns the contents of the given object as stored, with a header
+     * added to objects written before headers existed. Objects written by
+     * this process are found in memory, then the packs are searched, and
+     * only objects in neither cost a stat of their loose file.
+     *
+     * @param type the object type
+     * @param id   the full SHA-1 id of the object
+     * @return stored object contents or null if the object does not exist
+     */
+    private byte[] readStored(byte type, String id) {
+        File loose = looseFile(type, id);
+        File tmp = pending.get(loose);
+        if (tmp != null) {
+            return readContents(tmp);
+        }
+        for (PackFile pack : packs()) {
+            int position = pack.find(id);
+            if (position >= 0 && pack.typeAt(position) == type) {
+                return withHeader(type, id, pack.read(position));
+            }
+        }
+        if (loose.isFile()) {
+            return withHeader(type, id, readContents(loose));
+        }
+        if (type == BLOB && promisor() != null) {
+            //A partial clone fetches the blobs it lacks when they are first needed
+            prefetch(List.of(id));
+            return contains(BLOB, id) ? readStored(BLOB, id) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the given object exists in the store
+     *
+     * @param type the object type
+     * @param id   the full SHA-1 id of the object
+     * @return whether the object exists
+     */
+    boolean contains(byte type, String id) {
+        File loose = looseFile(type, id);
+        if (pending.containsKey(loose)) {
+            return true;
+        }
+        for (PackFile pack : packs()) {
+            int position = pack.find(id);
+            if (position >= 0 && pack.typeAt(position) == type) {
+                return true;
+            }
+        }
+        return loose.isFile();
+    }
+
+    /**
+     * Returns the full ids of all objects of the given type
+     * whose id starts with the given prefix. Packed objects are found
+     * through the pack index fan-out and a binary search; loose objects
+     * need at most one folder listing (none for a full id).
+     *
+     * @param type   the object type
+     * @param prefix a full or abbreviated hex id
+     * @return sorted list of matching ids
+     */
+    List<String> resolve(byte type, String prefix) {
+        TreeSet<String> ids = new TreeSet<>();
+        if (prefix.length() > UID_LENGTH || !prefix.matches("[0-9a-f]*")) {
+            return new ArrayList<>(ids);
+        }
+        //A full id needs no search at all
+        if (prefix.length() == UID_LENGTH) {
+            if (contains(type, prefix)) {
+                ids.add(prefix);
+            }
+            return new ArrayList<>(ids);
+        }
+
+        File dir = looseDir(type);
+        if (prefix.length() >= FOLDER_CHARS) {
+            addLooseMatches(ids, dir, prefix.substring(0, FOLDER_CHARS), prefix);
+        } else {
+            List<String> folders = plainFolderNamesIn(dir);
+            if (folders != null) {
+                for (String folder : folders) {
+                    if (folder.startsWith(prefix)) {
+                        addLooseMatches(ids, dir, folder, prefix);
+                    }
+                }
+            }
+        }
+        for (File loose : pending.keySet()) {
+            String id = loose.getParentFile().getName() + loose.getName();
+            if (loose.getParentFile().getParentFile().equals(dir) && id.startsWith(prefix)) {
+                ids.add(id);
+            }
+        }
+        for (PackFile pack : packs()) {
+            ids.addAll(pack.idsWithPrefix(type, prefix));
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * Returns the ids of all objects of the given type
+     *
+     * @param type the object type
+     * @return sorted list of ids
+     */
+    List<String> allIDs(byte type) {
+        return resolve(type, "");
+    }
+
+    /**
+     * Returns the cache of blobs rebuilt from deltas
+     *
+     * @return the reconstruction cache
+     */
+    LruCache<String, byte[]> rebuiltCache() {
+        return rebuilt;
+    }
+
+    // ------------ Writing Objects --------------- //
+
+    /**
+     * Saves the given object as a loose object unless it already exists
+     *
+     * @param type     the object type
+     * @param id       the full SHA-1 id of the object
+     * @param contents the contents to store
+     */
+    void write(byte type, String id, byte[] contents) {
+        if (contains(type, id)) {
+            return;
+        }
+        writeLoose(type, id, encode(FULL, contents));
+    }
+
+    /**
+     * Saves the given object as a loose object even if it already exists.
+     * Until it is synced the new contents are read in place of any packed
+     * copy, and the next repack keeps them and drops that copy.
+     *
+     * @param type     the object type
+     * @param id       the full SHA-1 id of the object
+     * @param contents the contents to store
+     */
+    void replace(byte type, String id, byte[] contents) {
+        File earlier = pending.remove(looseFile(type, id));
+        if (earlier != null) {
+            earlier.delete();
+        }
+        writeLoose(type, id, encode(FULL, contents));
+    }
+
+    /**
+     * Saves the given file blob, as a delta against the given earlier
+     * version of the same file when that is much smaller than the blob
+     * and the delta chain would not grow beyond {@code MAX_DELTA_DEPTH}
+     *
+     * @param id       the full SHA-1 id of the blob
+     * @param contents the contents of the blob
+     * @param baseID   id of the previous version of the file, or null
+     */
+    void writeBlob(String id, byte[] contents, String baseID) {
+        if (contains(BLOB, id)) {
+            return;
+        }
+        byte[] stored = null;
+        //A base missing from a partial clone is not worth fetching
+        if (baseID != null && contents.length <= BIG_FILE_SIZE && contains(BLOB, baseID)) {
+            //The base is rebuilt only once its header shows a delta will be tried
+            byte[] baseStored = readStored(BLOB, baseID);
+            if (baseStored != null && encodingOf(baseStored) != CHUNKED
+                    && deltaDepth(baseStored) < MAX_DELTA_DEPTH
+                    && contentSize(baseStored) <= BIG_FILE_SIZE) {
+                byte[] delta = Delta.create(read(BLOB, baseID), contents);
+                if (delta.length < contents.length / 2) {
+                    stored = encodeDelta(baseID, deltaDepth(baseStored) + 1, delta);
+                }
+            }
+        }
+        if (stored == null) {
+            stored = encode(FULL, contents);
+        }
+        writeLoose(BLOB, id, stored);
+    }
+
+    /**
+     * Saves the contents of the given file as a blob and returns its id.
+     * Files up to {@code BIG_FILE_SIZE} are read once into memory and may
+     * be delta compressed; bigger files are hashed while being read
+     * through the chunker, and only chunks not already stored are saved.
+     *
+     * @param source the file to save
+     * @param baseID id of the previous version of the file, or null
+     * @return the SHA-1 id of the blob
+     */
+    String writeBlob(File source, String baseID) {
+        long size = source.length();
+        if (size <= BIG_FILE_SIZE) {
+            byte[] contents = readContents(source);
+            String id = sha1(contents);
+            writeBlob(id, contents, baseID);
+            return id;
+        }
+
+        //Split into chunks while hashing the whole file
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("System does not support SHA-1");
+        }
+        ByteArrayOutputStream list = new ByteArrayOutputStream();
+        DataOutputStream listOut = new DataOutputStream(list);
+        int count = 0;
+        long copied = 0;
+        try (InputStream in = new DigestInputStream(Files.newInputStream(source.toPath()), md)) {
+            Chunker chunker = new Chunker(in);
+            byte[] chunk;
+            while ((chunk = chunker.next()) != null) {
+                String chunkID = sha1(chunk);
+                write(CHUNK, chunkID, chunk);
+                listOut.write(fromHex(chunkID));
+                PackFile.writeVarint(listOut, chunk.length);
+                copied += chunk.length;
+                count++;
+            }
+        } catch (IOException excp) {
+            throw error("Cannot save %s: %s", source, excp.getMessage());
+        }
+        if (copied != size) {
+            throw error("%s changed while being saved", source);
+        }
+
+        String id = toHex(md.digest());
+        if (!contains(BLOB, id)) {
+            ByteArrayOutputStream stored = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(stored)) {
+                out.writeByte(MAGIC);
+                out.writeByte(Codec.NONE.id() << 4 | CHUNKED);
+                PackFile.writeVarint(out, count);
+                list.writeTo(out);
+            } catch (IOException excp) {
+                throw error("Cannot save %s: %s", source, excp.getMessage());
+            }
+            writeLoose(BLOB, id, stored.toByteArray());
+        }
+        return id;
+    }
+
+    /**
+     * Writes the contents of the given blob to the target file. Chunked
+     * blobs are written one chunk at a time, and big loose blobs are
+     * decompressed straight from their loose file through a fixed-size
+     * buffer.
+     *
+     * @param id     the full SHA-1 id of the blob
+     * @param target the file to create or overwrite
+     */
+    void copyBlob(String id, File target) {
+        File loose = storedFile(BLOB, id);
+        if (!loose.isFile() || loose.length() <= BIG_FILE_SIZE) {
+            byte[] contents = rebuilt.get(id);
+            if (contents == null) {
+                byte[] stored = readStored(BLOB, id);
+                if (stored == null) {
+                    throw error("Missing file object %s", id);
+                }
+                if (encodingOf(stored) == CHUNKED) {
+                    writeChunks(stored, target);
+                    return;
+                }
+                contents = decode(BLOB, id, stored);
+            }
+            writeContents(target, contents);
+            return;
+        }
+        try (InputStream contents = openLoose(loose, id)) {
+            Files.copy(contents, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("Cannot write %s: %s", target, excp.getMessage());
+        }
+    }
+
+    /**
+     * Opens the contents of the given blob for reading. Chunked blobs are
+     * read one chunk at a time and big loose blobs are decompressed from
+     * their loose file as they are read, so neither is held in memory.
+     *
+     * @param id the full SHA-1 id of the blob
+     * @return stream of the blob contents, to be closed by the caller
+     */
+    InputStream open(String id) {
+        File loose = storedFile(BLOB, id);
+        if (loose.isFile() && loose.length() > BIG_FILE_SIZE) {
+            try {
+                return openLoose(loose, id);
+            } catch (IOException excp) {
+                throw error("Cannot read file object %s: %s", id, excp.getMessage());
+            }
+        }
+        byte[] stored = readStored(BLOB, id);
+        if (stored == null) {
+            throw error("Missing file object %s", id);
+        }
+        if (encodingOf(stored) != CHUNKED) {
+            return new ByteArrayInputStream(read(BLOB, id));
+        }
+        Iterator<String> chunkIDs = chunksOf(stored, new ArrayList<>()).iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunkIDs.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return new ByteArrayInputStream(chunk(chunkIDs.next()));
+            }
+        });
+    }
+
+    /**
+     * Returns the size of the contents of the given blob, reading no more
+     * than the header of a big loose blob and the chunk list of a chunked one
+     *
+     * @param id the full SHA-1 id of the blob
+     * @return size in bytes
+     */
+    long size(String id) {
+        File loose = storedFile(BLOB, id);
+        if (loose.isFile() && loose.length() > BIG_FILE_SIZE) {
+            //The header and the length prefix of the compressed contents
+            byte[] prefix = new byte[HEADER_SIZE + 10];
+            try (InputStream in = Files.newInputStream(loose.toPath())) {
+                in.readNBytes(prefix, 0, prefix.length);
+                if (isRaw(loose, id)) {
+                    return loose.length();
+                }
+            } catch (IOException excp) {
+                throw error("Cannot read file object %s: %s", id, excp.getMessage());
+            }
+            if (codecOf(prefix) == Codec.NONE) {
+                return loose.length() - HEADER_SIZE;
+            }
+            return contentSize(prefix);
+        }
+        byte[] stored = readStored(BLOB, id);
+        if (stored == null) {
+            throw error("Missing file object %s", id);
+        }
+        if (encodingOf(stored) != CHUNKED) {
+            return contentSize(stored);
+        }
+        List<Integer> lengths = new ArrayList<>();
+        chunksOf(stored, lengths);
+        long size = 0;
+        for (int length : lengths) {
+            size += length;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the given stored contents to a new loose object file,
+     * which is renamed into place by the next sync
+     */
+    private void writeLoose(byte type, String id, byte[] stored) {
+        looseDir(type).mkdirs();
+        File tmp = new File(looseDir(type), "tmp-" + System.nanoTime()
+                + "-" + tmpCount.incrementAndGet());
+        writeContents(tmp, stored);
+        addPending(type, id, tmp);
+    }
+
+    /**
+     * Flushes all objects written since the last sync to disk and renames
+     * them into place. The files are flushed in one parallel batch, then
+     * renamed, then every directory that gained an entry is flushed once,
+     * so a command pays for a few disk round trips however many objects it
+     * wrote. Must be called before writing anything that refers to those
+     * objects.
+     */
+    synchronized void sync() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<File, File> batch = new HashMap<>(pending);
+        DurableFiles.force(batch.values());
+
+        Set<File> dirs = new HashSet<>();
+        for (Map.Entry<File, File> object : batch.entrySet()) {
+            File folder = object.getKey().getParentFile();
+            if (folder.mkdir()) {
+                dirs.add(folder.getParentFile());
+            }
+            DurableFiles.move(object.getValue(), object.getKey());
+            dirs.add(folder);
+            pending.remove(object.getKey(), object.getValue());
+        }
+        DurableFiles.force(dirs);
+    }
+
+    /**
+     * Forgets the list of packs, so that packs written or deleted by
+     * another process are seen when objects are next read
+     */
+    synchronized void invalidate() {
+        packs = null;
+    }
+
+    // ------------ Copying Objects --------------- //
+
+    /**
+     * Copies the given objects that the receiver does not have into one
+     * new pack of the receiver, together with the delta bases and chunks
+     * they need. Objects are copied exactly as stored, so nothing is
+     * decompressed, and are written to the pack as they are read. No pack
+     * is written if the receiver has everything.
+     *
+     * @param receiver the object store to copy to
+     * @param types    types of the objects, parallel to ids
+     * @param ids      full SHA-1 ids of the objects
+     * @return number of objects copied
+     */
+    int copyTo(ObjectStore receiver, List<Byte> types, List<String> ids) {
+        Set<String> copied = new HashSet<>();
+        PackFile.Writer writer = null;
+        for (int i = 0; i < ids.size(); i++) {
+            writer = copyTo(receiver, types.get(i), ids.get(i), copied, writer);
+        }
+        if (writer == null) {
+            return 0;
+        }
+        int count = writer.size();
+        writer.finish();
+        receiver.invalidate();
+        return count;
+    }
+
+    /**
+     * Records that every object of this store has a header, so that blobs
+     * are never checked for raw contents. Called when a repository is
+     * created, and by gc once it has given every object a header.
+     */
+    synchronized void setHeaderFormat() {
+        DurableFiles.write(formatFile, String.valueOf(HEADER_FORMAT));
+        format = HEADER_FORMAT;
+    }
+
+    // ------------ Partial Clones --------------- //
+
+    /**
+     * Returns true if this is the store of a partial clone, which may
+     * lack blobs that its commits refer to
+     *
+     * @return whether missing blobs are fetched from another repository
+     */
+    boolean isPartial() {
+        return promisorFile.isFile();
+    }
+
+    /**
+     * Makes this the store of a partial clone of the given repository
+     *
+     * @param gitletDir the .gitlet directory missing blobs are fetched from
+     */
+    synchronized void setPromisor(File gitletDir) {
+        String path = gitletDir.toPath().toAbsolutePath().normalize().toString();
+        DurableFiles.write(promisorFile, path);
+        promisor = null;
+    }
+
+    /**
+     * Fetches the given blobs that this store lacks from the repository it
+     * was cloned from, all in one pack. Does nothing unless this is the
+     * store of a partial clone.
+     *
+     * @param blobIDs full SHA-1 ids of the blobs about to be read
+     */
+    synchronized void prefetch(Collection<String> blobIDs) {
+        ObjectStore source = promisor();
+        if (source == null) {
+            return;
+        }
+        List<Byte> types = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : new TreeSet<>(blobIDs)) {
+            if (!contains(BLOB, id)) {
+                types.add(BLOB);
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            source.copyTo(this, types, missing);
+        }
+    }
+
+    /**
+     * Returns a writer for a new pack in the pack directory
+     *
+     * @return the pack writer
+     */
+    PackFile.Writer newPack() {
+        packDir.mkdir();
+        return new PackFile.Writer(join(packDir, "pack-" + System.currentTimeMillis()
+                + "-" + tmpCount.incrementAndGet() + ".pack"));
+    }
+
+    // ------------ Packing --------------- //
+
+    /**
+     * Moves all loose objects and existing packs into a single new pack,
+     * then deletes the loose objects and the old packs
+     *
+     * @return number of loose objects that were packed
+     */
+    int repack() {
+        sync();
+        List<List<String>> loose = new ArrayList<>();
+        int looseCount = 0;
+        for (byte type : TYPES) {
+            loose.add(allLoose(type));
+            looseCount += loose.get(loose.size() - 1).size();
+        }
+        List<PackFile> oldPacks = packs();
+        if (looseCount == 0 && oldPacks.size() <= 1) {
+            return 0;
+        }
+
+        PackFile.Writer writer = newPack();
+        //Loose objects first, so that a loose copy replaces a packed one
+        TreeSet<String> written = new TreeSet<>();
+        for (int t = 0; t < TYPES.length; t++) {
+            for (String id : loose.get(t)) {
+                if (written.add(TYPES[t] + id)) {
+                    writer.add(id, TYPES[t], withHeader(TYPES[t], id,
+                            readContents(looseFile(TYPES[t], id))));
+                }
+            }
+        }
+        for (PackFile pack : oldPacks) {
+            for (int i = 0; i < pack.size(); i++) {
+                String id = pack.idAt(i);
+                if (written.add(pack.typeAt(i) + id)) {
+                    writer.add(id, pack.typeAt(i),
+                            withHeader(pack.typeAt(i), id, pack.read(i)));
+                }
+            }
+        }
+        writer.finish();
+
+        //The new pack is in place; the old copies can go
+        for (PackFile pack : oldPacks) {
+            pack.close();
+            PackFile.indexFileFor(pack.getPackFile()).delete();
+            pack.getPackFile().delete();
+        }
+        for (int t = 0; t < TYPES.length; t++) {
+            deleteLoose(TYPES[t], loose.get(t));
+        }
+        packs = null;
+
+        //Every packed object now has a header, so only big loose blobs can be raw
+        if (format() < HEADER_FORMAT && !hasRawLoose()) {
+            setHeaderFormat();
+        }
+        return looseCount;
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Returns the encoding of the given stored object
+     */
+    private static byte encodingOf(byte[] stored) {
+        //An unknown encoding is an error, never read as some other encoding
+        return switch (stored[1] & 0x0F) {
+            case FULL -> FULL;
+            case DELTA -> DELTA;
+            case CHUNKED -> CHUNKED;
+            default -> throw error("Unknown object encoding %d", stored[1] & 0x0F);
+        };
+    }
+
+    /**
+     * Returns the codec the given stored object was compressed with
+     */
+    private static Codec codecOf(byte[] stored) {
+        return Codec.fromID((stored[1] >> 4) & 0x0F);
+    }
+
+    /**
+     * Returns true if the given stored object starts with an object header
+     */
+    private static boolean hasHeader(byte[] stored) {
+        return stored.length >= HEADER_SIZE && stored[0] == MAGIC;
+    }
+
+    /**
+     * Returns the given stored object with a header, adding one stored in
+     * full and uncompressed to an object written before headers existed.
+     * Such a blob may start with the magic byte; it is told apart by its
+     * stored bytes hashing to its id, which is only checked in stores whose
+     * format version predates headers.
+     */
+    private byte[] withHeader(byte type, String id, byte[] stored) {
+        if (hasHeader(stored) && (type != BLOB || format() >= HEADER_FORMAT
+                || !sha1(stored).equals(id))) {
+            return stored;
+        }
+        byte[] headed = new byte[HEADER_SIZE + stored.length];
+        headed[0] = MAGIC;
+        headed[1] = (byte) (Codec.NONE.id() << 4 | FULL);
+        System.arraycopy(stored, 0, headed, HEADER_SIZE, stored.length);
+        return headed;
+    }
+
+    /**
+     * Returns true if the given big loose blob holds raw contents written
+     * before headers existed, hashing it only if it starts with the magic
+     * byte in a store whose format version predates headers
+     */
+    private boolean isRaw(File loose, String id) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        try (InputStream in = Files.newInputStream(loose.toPath())) {
+            in.readNBytes(header, 0, HEADER_SIZE);
+        }
+        if (!hasHeader(header)) {
+            return true;
+        }
+        if (format() >= HEADER_FORMAT) {
+            return false;
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("System does not support SHA-1");
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(loose.toPath()), md)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return toHex(md.digest()).equals(id);
+    }
+
+    /**
+     * Returns true if any big loose blob, which gc leaves loose, is raw
+     */
+    private boolean hasRawLoose() {
+        for (String id : allIDs(BLOB)) {
+            File loose = looseFile(BLOB, id);
+            try {
+                if (loose.length() > BIG_FILE_SIZE && isRaw(loose, id)) {
+                    return true;
+                }
+            } catch (IOException excp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the format version of the store
+     */
+    private synchronized int format() {
+        if (format == 0) {
+            format = formatFile.isFile()
+                    ? Integer.parseInt(readContentsAsString(formatFile).trim()) : 1;
+        }
+        return format;
+    }
+
+    /**
+     * Returns the uncompressed contents of a stored object that is not a delta
+     */
+    private static byte[] body(byte[] stored) {
+        return codecOf(stored).decompress(ByteBuffer.wrap(stored, HEADER_SIZE,
+                stored.length - HEADER_SIZE));
+    }
+
+    /**
+     * Returns the number of deltas that must be applied to read the given stored object
+     */
+    private static int deltaDepth(byte[] stored) {
+        if (encodingOf(stored) != DELTA) {
+            return 0;
+        }
+        return stored[HEADER_SIZE + UID_LENGTH / 2] & 0xFF;
+    }
+
+    /**
+     * Returns the size of the contents of the given stored object without
+     * rebuilding it: the length prefix of compressed data, or for a delta
+     * the target length at the start of the delta, which is decompressed
+     * but not applied
+     */
+    private static long contentSize(byte[] stored) {
+        if (encodingOf(stored) == DELTA) {
+            int start = HEADER_SIZE + UID_LENGTH / 2 + 1;
+            byte[] delta = codecOf(stored).decompress(
+                    ByteBuffer.wrap(stored, start, stored.length - start));
+            return Delta.readVarint(ByteBuffer.wrap(delta));
+        }
+        if (codecOf(stored) == Codec.NONE) {
+            return stored.length - HEADER_SIZE;
+        }
+        return Delta.readVarint(ByteBuffer.wrap(stored, HEADER_SIZE, stored.length - HEADER_SIZE));
+    }
+
+    /**
+     * Compresses the given contents and prepends the object header
+     */
+    private static byte[] encode(byte encoding, byte[] contents) {
+        Codec codec = Codec.configured();
+        byte[] compressed = codec.compress(contents);
+        //Incompressible contents are kept as they are
+        if (compressed.length >= contents.length) {
+            codec = Codec.NONE;
+            compressed = contents;
+        }
+        byte[] stored = new byte[HEADER_SIZE + compressed.length];
+        stored[0] = MAGIC;
+        stored[1] = (byte) (codec.id() << 4 | encoding);
+        System.arraycopy(compressed, 0, stored, HEADER_SIZE, compressed.length);
+        return stored;
+    }
+
+    /**
+     * Returns a stored delta object: header | base id | depth | compressed delta
+     */
+    private static byte[] encodeDelta(String baseID, int depth, byte[] delta) {
+        Codec codec = Codec.configured();
+        byte[] compressed = codec.compress(delta);
+        if (compressed.length >= delta.length) {
+            codec = Codec.NONE;
+            compressed = delta;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + UID_LENGTH / 2 + 1
+                + compressed.length);
+        buf.put(MAGIC);
+        buf.put((byte) (codec.id() << 4 | DELTA));
+        buf.put(fromHex(baseID));
+        buf.put((byte) depth);
+        buf.put(compressed);
+        return buf.array();
+    }
+
+    /**
+     * Adds one object and what it needs to the receiver's new pack,
+     * starting the pack if this is the first object copied
+     *
+     * @return the pack writer, or null if nothing was copied yet
+     */
+    private PackFile.Writer copyTo(ObjectStore receiver, byte type, String id,
+                                   Set<String> copied, PackFile.Writer writer) {
+        if (!copied.add(type + id) || receiver.contains(type, id)) {
+            return writer;
+        }
+        byte[] stored = readStored(type, id);
+        if (stored == null) {
+            throw error("Missing object %s", id);
+        }
+        if (encodingOf(stored) == DELTA) {
+            byte[] baseID = Arrays.copyOfRange(stored, HEADER_SIZE, HEADER_SIZE + UID_LENGTH / 2);
+            writer = copyTo(receiver, type, toHex(baseID), copied, writer);
+        } else if (encodingOf(stored) == CHUNKED) {
+            for (String chunkID : chunksOf(stored, new ArrayList<>())) {
+                writer = copyTo(receiver, CHUNK, chunkID, copied, writer);
+            }
+        }
+        if (writer == null) {
+            writer = receiver.newPack();
+        }
+        writer.add(id, type, stored);
+        return writer;
+    }
+
+    /**
+     * Opens the contents of a big loose blob, which is stored whole and
+     * either uncompressed or deflated
+     */
+    private InputStream openLoose(File loose, String id) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(loose.toPath())));
+        if (isRaw(loose, id)) {
+            return in;
+        }
+        byte[] header = new byte[HEADER_SIZE];
+        in.readFully(header);
+        if (encodingOf(header) == FULL && codecOf(header) == Codec.NONE) {
+            return in;
+        }
+        if (encodingOf(header) == FULL && codecOf(header) == Codec.DEFLATE) {
+            PackFile.readVarint(in);
+            return new InflaterInputStream(in);
+        }
+        in.close();
+        throw error("Cannot stream file object %s", id);
+    }
+
+    /**
+     * Returns the ids and lengths of the chunks of a chunked blob
+     *
+     * @return chunk ids, and the length of each chunk in the same order
+     */
+    private static List<String> chunksOf(byte[] stored, List<Integer> lengths) {
+        List<String> ids = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(stored,
+                HEADER_SIZE, stored.length - HEADER_SIZE))) {
+            long count = PackFile.readVarint(in);
+            byte[] id = new byte[UID_LENGTH / 2];
+            for (long i = 0; i < count; i++) {
+                in.readFully(id);
+                ids.add(toHex(id));
+                lengths.add((int) PackFile.readVarint(in));
+            }
+        } catch (IOException excp) {
+            throw error("Corrupt chunk list: %s", excp.getMessage());
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the contents of a chunked blob in one array
+     */
+    private byte[] joinChunks(byte[] stored) {
+        List<Integer> lengths = new ArrayList<>();
+        List<String> ids = chunksOf(stored, lengths);
+        long size = 0;
+        for (int length : lengths) {
+            size += length;
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw error("File of %d bytes is too big to read into memory", size);
+        }
+        byte[] contents = new byte[(int) size];
+        int offset = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] chunk = chunk(ids.get(i));
+            System.arraycopy(chunk, 0, contents, offset, lengths.get(i));
+            offset += lengths.get(i);
+        }
+        return contents;
+    }
+
+    /**
+     * Writes the contents of a chunked blob to the target file, holding
+     * one chunk in memory at a time
+     */
+    private void writeChunks(byte[] stored, File target) {
+        List<String> ids = chunksOf(stored, new ArrayList<>());
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target.toPath()))) {
+            for (String chunkID : ids) {
+                out.write(chunk(chunkID));
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write %s: %s", target, excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the contents of the given chunk
+     */
+    private byte[] chunk(String chunkID) {
+        byte[] stored = readStored(CHUNK, chunkID);
+        if (stored == null) {
+            throw error("Missing chunk %s", chunkID);
+        }
+        return body(stored);
+    }
+
+    /**
+     * Returns the store missing blobs are fetched from, opening it if needed
+     *
+     * @return the store, or null if this is not a partial clone
+     */
+    private synchronized ObjectStore promisor() {
+        if (promisor == null && promisorFile.isFile()) {
+            File gitletDir = new File(readContentsAsString(promisorFile));
+            if (!gitletDir.isDirectory()) {
+                throw error("Cannot fetch missing files: %s not found.", gitletDir);
+            }
+            promisor = new ObjectStore(gitletDir);
+        }
+        return promisor;
+    }
+
+    /**
+     * Returns the packs in the pack directory, loading them if needed
+     *
+     * @return list of packs
+     */
+    private synchronized List<PackFile> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            Map<String, PackFile> stillOpen = new HashMap<>();
+            String[] names = packDir.list((dir, name) -> name.endsWith(".idx"));
+            if (names != null) {
+                for (String name : names) {
+                    //Packs never change, so a pack already open is kept open
+                    PackFile pack = openPacks.remove(name);
+                    if (pack == null) {
+                        pack = new PackFile(join(packDir, name));
+                    }
+                    stillOpen.put(name, pack);
+                    packs.add(pack);
+                }
+            }
+            for (PackFile gone : openPacks.values()) {
+                gone.close();
+            }
+            openPacks.clear();
+            openPacks.putAll(stillOpen);
+        }
+        return packs;
+    }
+
+    /**
+     * Returns the directory holding loose objects of the given type
+     */
+    private File looseDir(byte type) {
+        return switch (type) {
+            case COMMIT -> commitDir;
+            case TREE -> treeDir;
+            case CHUNK -> chunkDir;
+            default -> fileDir;
+        };
+    }
+
+    /**
+     * Records a temporary file holding the given object until the next
+     * sync. An object saved by several threads at once is kept once.
+     */
+    private void addPending(byte type, String id, File tmp) {
+        File earlier = pending.putIfAbsent(looseFile(type, id), tmp);
+        if (earlier != null) {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Returns the file the given loose object can currently be read
+     * from: its temporary file until it is synced, otherwise its loose file
+     */
+    private File storedFile(byte type, String id) {
+        File loose = looseFile(type, id);
+        File tmp = pending.get(loose);
+        return tmp != null ? tmp : loose;
+    }
+
+    /**
+     * Returns the file a loose object with the given id is saved in
+     */
+    private File looseFile(byte type, String id) {
+        return join(looseDir(type), id.substring(0, FOLDER_CHARS),
+                id.substring(FOLDER_CHARS));
+    }
+
+    /**
+     * Adds the ids of loose objects in the given folder that start with prefix
+     */
+    private void addLooseMatches(TreeSet<String> ids, File dir, String folder, String prefix) {
+        List<String> files = plainFilenamesIn(join(dir, folder));
+        if (files == null) {
+            return;
+        }
+        for (String file : files) {
+            String id = folder + file;
+            if (id.startsWith(prefix)) {
+                ids.add(id);
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of all loose objects of the given type
+     */
+    private List<String> allLoose(byte type) {
+        TreeSet<String> ids = new TreeSet<>();
+        File dir = looseDir(type);
+        List<String> folders = plainFolderNamesIn(dir);
+        if (folders != null) {
+            for (String folder : folders) {
+                addLooseMatches(ids, dir, folder, "");
+            }
+        }
+        //Big blobs stay loose so that they can still be streamed
+        ids.removeIf(id -> looseFile(type, id).length() > BIG_FILE_SIZE);
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * Deletes the given loose objects and their folders once empty
+     */
+    private void deleteLoose(byte type, List<String> ids) {
+        for (String id : ids) {
+            File file = looseFile(type, id);
+            file.delete();
+            file.getParentFile().delete();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static gitlet.Utils.*;
+
+/**
+ * Tests of the object store, run on a store in a temporary directory
+ *
+ * @author Rishabh Choudhury
+ */
+public class ObjectStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Saves the given text as a blob and returns its id
+     */
+    private static String writeText(ObjectStore store, String text) {
+        byte[] contents = text.getBytes(StandardCharsets.UTF_8);
+        String id = sha1(contents);
+        store.writeBlob(id, contents, null);
+        return id;
+    }
+
+    /**
+     * Returns the names of the files in the pack directory of the store
+     */
+    private List<String> packFiles() {
+        List<String> names = plainFilenamesIn(join(tmp.getRoot(), "packs"));
+        return names == null ? new ArrayList<>() : names;
+    }
+
+    @Test
+    /* Checks that objects can be read back before and after they are synced */
+    public void writeReadTest() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String id = writeText(store, "This is a wug.\n");
+        assertTrue(store.contains(ObjectStore.BLOB, id));
+        assertFalse(store.contains(ObjectStore.COMMIT, id));
+        assertEquals("This is a wug.\n", new String(store.read(ObjectStore.BLOB, id),
+                StandardCharsets.UTF_8));
+
+        store.sync();
+        ObjectStore reopened = new ObjectStore(tmp.getRoot());
+        assertEquals("This is a wug.\n", new String(reopened.read(ObjectStore.BLOB, id),
+                StandardCharsets.UTF_8));
+        assertNull(reopened.read(ObjectStore.BLOB, sha1("missing")));
+    }
+
+    @Test
+    /* Checks that repacking moves every loose object into a single pack it is read from */
+    public void repackTest() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(writeText(store, "version " + i + "\n"));
+        }
+        byte[] commit = "a commit".getBytes(StandardCharsets.UTF_8);
+        String commitID = sha1(commit);
+        store.write(ObjectStore.COMMIT, commitID, commit);
+
+        assertEquals(21, store.repack());
+        assertEquals(2, packFiles().size());
+        assertTrue(plainFolderNamesIn(join(tmp.getRoot(), "files")).isEmpty());
+
+        //A store opened later reads the pack
+        ObjectStore reopened = new ObjectStore(tmp.getRoot());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals("version " + i + "\n", new String(
+                    reopened.read(ObjectStore.BLOB, ids.get(i)), StandardCharsets.UTF_8));
+        }
+        assertArrayEquals(commit, reopened.read(ObjectStore.COMMIT, commitID));
+        assertFalse(reopened.contains(ObjectStore.BLOB, commitID));
+
+        //New loose objects and the old pack are merged into one new pack
+        String later = writeText(reopened, "later\n");
+        assertEquals(1, reopened.repack());
+        assertEquals(2, packFiles().size());
+        assertEquals("later\n", new String(reopened.read(ObjectStore.BLOB, later),
+                StandardCharsets.UTF_8));
+        assertEquals("version 0\n", new String(reopened.read(ObjectStore.BLOB, ids.get(0)),
+                StandardCharsets.UTF_8));
+        assertEquals(0, reopened.repack());
+    }
+
+    @Test
+    /* Checks that new versions of a file are stored as bounded chains of deltas */
+    public void deltaChainTest() throws IOException {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("line ").append(i).append(" of a file that keeps growing\n");
+        }
+        List<String> ids = new ArrayList<>();
+        List<byte[]> versions = new ArrayList<>();
+        String baseID = null;
+        for (int v = 0; v <= ObjectStore.MAX_DELTA_DEPTH + 2; v++) {
+            text.append("appended in version ").append(v).append('\n');
+            byte[] contents = text.toString().getBytes(StandardCharsets.UTF_8);
+            String id = sha1(contents);
+            store.writeBlob(id, contents, baseID);
+            ids.add(id);
+            versions.add(contents);
+            baseID = id;
+        }
+        store.sync();
+
+        //The first version and the one after a full chain are stored in full
+        for (int v = 0; v < ids.size(); v++) {
+            File loose = join(tmp.getRoot(), "files", ids.get(v).substring(0, 6),
+                    ids.get(v).substring(6));
+            boolean full = v % (ObjectStore.MAX_DELTA_DEPTH + 1) == 0;
+            assertEquals(full, loose.length() > 1000);
+        }
+
+        //Versions are rebuilt by a store with nothing cached, loose and packed
+        ObjectStore reopened = new ObjectStore(tmp.getRoot());
+        for (int v = ids.size() - 1; v >= 0; v--) {
+            assertArrayEquals(versions.get(v), reopened.read(ObjectStore.BLOB, ids.get(v)));
+        }
+        ObjectStore copier = new ObjectStore(tmp.getRoot());
+        for (int v = 0; v < ids.size(); v++) {
+            File target = tmp.newFile();
+            copier.copyBlob(ids.get(v), target);
+            assertArrayEquals(versions.get(v), readContents(target));
+        }
+        reopened.repack();
+        reopened = new ObjectStore(tmp.getRoot());
+        for (int v = ids.size() - 1; v >= 0; v--) {
+            assertArrayEquals(versions.get(v), reopened.read(ObjectStore.BLOB, ids.get(v)));
+            assertEquals(versions.get(v).length, reopened.size(ids.get(v)));
+        }
+    }
+
+    @Test
+    /* Checks that big files are stored as chunks that edited versions share */
+    public void bigFileTest() throws IOException {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        byte[] contents = new byte[ObjectStore.BIG_FILE_SIZE + (1 << 20)];
+        new Random(61).nextBytes(contents);
+        File source = tmp.newFile("big");
+        writeContents(source, contents);
+        String id = store.writeBlob(source, null);
+        assertEquals(sha1(contents), id);
+        store.sync();
+        int chunkCount = store.allIDs(ObjectStore.CHUNK).size();
+        assertTrue(chunkCount > 1);
+
+        //An edited version only adds the chunks around the edit
+        contents[contents.length / 2] ^= 1;
+        writeContents(source, contents);
+        String editedID = store.writeBlob(source, id);
+        store.sync();
+        assertTrue(store.allIDs(ObjectStore.CHUNK).size() <= chunkCount + 2);
+
+        for (ObjectStore reader : new ObjectStore[]{store, new ObjectStore(tmp.getRoot())}) {
+            assertEquals(contents.length, reader.size(editedID));
+            File target = tmp.newFile();
+            reader.copyBlob(editedID, target);
+            assertArrayEquals(contents, readContents(target));
+            try (InputStream in = reader.open(editedID)) {
+                assertArrayEquals(contents, in.readAllBytes());
+            }
+        }
+        store.repack();
+        assertArrayEquals(contents, new ObjectStore(tmp.getRoot()).read(ObjectStore.BLOB,
+                editedID));
+    }
+
+    /**
+     * Saves the given contents as a loose blob the way gitlet did before
+     * objects had headers, and returns its id
+     */
+    private String writeRaw(byte[] contents) {
+        String id = sha1(contents);
+        File loose = join(tmp.getRoot(), "files", id.substring(0, 6), id.substring(6));
+        loose.getParentFile().mkdirs();
+        writeContents(loose, contents);
+        return id;
+    }
+
+    /**
+     * Checks that every way of reading the given blob returns the given contents
+     */
+    private void assertBlob(ObjectStore store, String id, byte[] contents) throws IOException {
+        assertArrayEquals(contents, store.read(ObjectStore.BLOB, id));
+        assertEquals(contents.length, store.size(id));
+        try (InputStream in = store.open(id)) {
+            assertArrayEquals(contents, in.readAllBytes());
+        }
+        File target = tmp.newFile();
+        store.copyBlob(id, target);
+        assertArrayEquals(contents, readContents(target));
+    }
+
+    @Test
+    /* Checks that raw blobs of old repositories that start like a header are read as they are */
+    public void legacyBlobTest() throws IOException {
+        List<byte[]> versions = new ArrayList<>();
+        //A delta, a full, a chunked and a truncated header, then a blob written with a header
+        versions.add(new byte[]{(byte) 0xC5, 1, 'w', 'u', 'g'});
+        versions.add(new byte[]{(byte) 0xC5, 0, 'w', 'u', 'g'});
+        versions.add(new byte[]{(byte) 0xC5, 2, 1});
+        versions.add(new byte[]{(byte) 0xC5});
+        versions.add(new byte[]{(byte) 0xC5, 0, 'n', 'e', 'w'});
+        List<String> ids = new ArrayList<>();
+        for (byte[] contents : versions.subList(0, versions.size() - 1)) {
+            ids.add(writeRaw(contents));
+        }
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        ids.add(sha1(versions.get(versions.size() - 1)));
+        store.writeBlob(ids.get(ids.size() - 1), versions.get(versions.size() - 1), null);
+        store.sync();
+
+        for (int v = 0; v < ids.size(); v++) {
+            assertBlob(new ObjectStore(tmp.getRoot()), ids.get(v), versions.get(v));
+        }
+
+        //gc gives them headers and records that no raw blob is left
+        store.repack();
+        assertTrue(join(tmp.getRoot(), "object-format").isFile());
+        for (int v = 0; v < ids.size(); v++) {
+            assertBlob(new ObjectStore(tmp.getRoot()), ids.get(v), versions.get(v));
+        }
+    }
+
+    @Test
+    /* Checks that big raw blobs of old repositories that start like a header are streamed */
+    public void legacyBigBlobTest() throws IOException {
+        byte[] contents = new byte[ObjectStore.BIG_FILE_SIZE + 1];
+        new Random(61).nextBytes(contents);
+        contents[0] = (byte) 0xC5;
+        contents[1] = 0;
+        String id = writeRaw(contents);
+        assertBlob(new ObjectStore(tmp.getRoot()), id, contents);
+
+        //gc leaves the blob loose, so the store keeps checking blobs for raw contents
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        writeText(store, "This is a wug.\n");
+        store.repack();
+        assertFalse(join(tmp.getRoot(), "object-format").exists());
+        assertBlob(new ObjectStore(tmp.getRoot()), id, contents);
+    }
+
+    @Test
+    /* Checks that abbreviated ids match pending, loose and packed objects of their type only */
+    public void resolveTest() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ids.add(writeText(store, "packed " + i + "\n"));
+        }
+        store.repack();
+        for (int i = 0; i < 40; i++) {
+            ids.add(writeText(store, "loose " + i + "\n"));
+        }
+        store.sync();
+        for (int i = 0; i < 40; i++) {
+            ids.add(writeText(store, "pending " + i + "\n"));
+        }
+
+        for (String id : ids) {
+            for (int length : new int[]{4, 6, 7, 12, UID_LENGTH}) {
+                String prefix = id.substring(0, length);
+                List<String> matches = store.resolve(ObjectStore.BLOB, prefix);
+                assertTrue(matches.contains(id));
+                for (String match : matches) {
+                    assertTrue(match.startsWith(prefix));
+                }
+                assertEquals(ids.stream().filter(other -> other.startsWith(prefix)).count(),
+                        matches.size());
+            }
+            assertTrue(store.resolve(ObjectStore.COMMIT, id.substring(0, 7)).isEmpty());
+        }
+        assertEquals(ids.size(), store.allIDs(ObjectStore.BLOB).size());
+        assertTrue(store.resolve(ObjectStore.BLOB, "xyz").isEmpty());
+        assertTrue(store.resolve(ObjectStore.BLOB, ids.get(0) + "0").isEmpty());
+    }
+}
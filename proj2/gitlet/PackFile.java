@@ -0,0 +1,535 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/**
+ * A pack of gitlet objects: an append-only data file holding many objects
+ * back to back, plus a sorted index mapping each object's SHA-1 id to its
+ * offset in the data file. <br><br>
+ * <p>
+ * Pack (.pack) layout: <br>
+ * "GPAK" | entry* <br>
+ * entry = type (1 byte) | length (varint) | contents <br><br>
+ * <p>
+ * Index (.idx) layout: <br>
+ * "GIDX" | version (int) | count (int) | fan-out (256 ints) | record* <br>
+ * record = id (20 bytes) | type (1 byte) | offset (long), sorted by id <br><br>
+ * <p>
+ * Entry b of the fan-out table is the number of records whose id starts
+ * with a byte less than or equal to b, so a lookup only binary searches
+ * the records sharing the id's first byte. The index is memory-mapped
+ * rather than read, so opening a pack costs no more than its header.
+ * The data file is opened once, when the pack is, and objects are read
+ * from it with positional reads, so reading an object costs no open,
+ * seek or close.
+ * Version 1 indexes (without fan-out) are still readable.
+ *
+ * @author Rishabh Choudhury
+ */
+class PackFile {
+    /**
+     * Magic bytes at the start of every pack data file
+     */
+    static final byte[] PACK_MAGIC = {'G', 'P', 'A', 'K'};
+    /**
+     * Magic bytes at the start of every pack index file
+     */
+    static final byte[] INDEX_MAGIC = {'G', 'I', 'D', 'X'};
+    /**
+     * Current index format version
+     */
+    static final int INDEX_VERSION = 2;
+    /**
+     * Size of the index header (magic, version, count)
+     */
+    private static final int HEADER_SIZE = 12;
+    /**
+     * Size of the fan-out table
+     */
+    private static final int FANOUT_SIZE = 256 * 4;
+    /**
+     * Size of a single index record (id, type, offset)
+     */
+    private static final int RECORD_SIZE = 29;
+    /**
+     * Length of a raw SHA-1 id in bytes
+     */
+    private static final int ID_BYTES = 20;
+
+    /**
+     * The pack data file
+     */
+    private final File packFile;
+    /**
+     * The pack data file, open for reading while the pack is
+     */
+    private final FileChannel data;
+    /**
+     * The memory-mapped pack index file
+     */
+    private final ByteBuffer index;
+    /**
+     * Number of objects in this pack
+     */
+    private final int count;
+    /**
+     * Position of the first record in the index
+     */
+    private final int recordStart;
+    /**
+     * Whether the index has a fan-out table
+     */
+    private final boolean hasFanout;
+
+    /**
+     * Opens the pack whose index is the given file
+     *
+     * @param indexFile the .idx file of the pack
+     */
+    PackFile(File indexFile) {
+        String name = indexFile.getName();
+        packFile = new File(indexFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+        index = map(indexFile);
+        byte[] magic = new byte[INDEX_MAGIC.length];
+        index.get(0, magic);
+        int version = index.getInt(4);
+        if (!Arrays.equals(magic, INDEX_MAGIC) || version < 1 || version > INDEX_VERSION) {
+            throw error("Corrupt pack index %s", indexFile);
+        }
+        count = index.getInt(8);
+        hasFanout = version >= 2;
+        recordStart = hasFanout ? HEADER_SIZE + FANOUT_SIZE : HEADER_SIZE;
+        try {
+            data = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+        } catch (IOException excp) {
+            throw error("Cannot read pack %s: %s", packFile, excp.getMessage());
+        }
+    }
+
+    /**
+     * Closes the pack data file. The pack cannot be read afterwards.
+     */
+    void close() {
+        try {
+            data.close();
+        } catch (IOException excp) {
+            throw error("Cannot close pack %s: %s", packFile, excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of objects in this pack
+     *
+     * @return object count
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns the pack data file
+     *
+     * @return pack data file
+     */
+    File getPackFile() {
+        return packFile;
+    }
+
+    /**
+     * Returns the id of the object at the given index position
+     *
+     * @param position position of the record in the sorted index
+     * @return hex SHA-1 id
+     */
+    String idAt(int position) {
+        byte[] id = new byte[ID_BYTES];
+        index.get(recordStart + position * RECORD_SIZE, id);
+        return toHex(id);
+    }
+
+    /**
+     * Returns the object type of the object at the given index position
+     *
+     * @param position position of the record in the sorted index
+     * @return object type
+     */
+    byte typeAt(int position) {
+        return index.get(recordStart + position * RECORD_SIZE + ID_BYTES);
+    }
+
+    /**
+     * Returns the offset in the pack of the object at the given index position
+     *
+     * @param position position of the record in the sorted index
+     * @return offset of the object entry
+     */
+    long offsetAt(int position) {
+        return index.getLong(recordStart + position * RECORD_SIZE + ID_BYTES + 1);
+    }
+
+    /**
+     * Returns the position of the given object in the index
+     *
+     * @param id the hex SHA-1 id of the object
+     * @return the record position or -1 if the object is not in this pack
+     */
+    int find(String id) {
+        byte[] key = fromHex(id);
+        int lo = fanoutStart(key[0]);
+        int hi = fanoutEnd(key[0]) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareAt(mid, key, ID_BYTES);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the ids of all objects of the given type whose
+     * id starts with the given prefix
+     *
+     * @param type   the object type to look for
+     * @param prefix hex id prefix (of even or odd length)
+     * @return matching ids in sorted order
+     */
+    List<String> idsWithPrefix(byte type, String prefix) {
+        List<String> ids = new ArrayList<>();
+        //Binary search for the first record >= the prefix padded with zeros
+        byte[] key = fromHex(padRight(prefix, ID_BYTES * 2));
+        int lo = 0;
+        int hi = count;
+        if (prefix.length() >= 2) {
+            lo = fanoutStart(key[0]);
+            hi = fanoutEnd(key[0]);
+        } else if (prefix.length() == 1) {
+            lo = fanoutStart(key[0]);
+            hi = fanoutEnd((byte) (key[0] | 0x0F));
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareAt(mid, key, ID_BYTES) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < count; i++) {
+            String id = idAt(i);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            if (typeAt(i) == type) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Reads the contents of the object at the given index position
+     *
+     * @param position position of the record in the sorted index
+     * @return the stored contents of the object
+     */
+    byte[] read(int position) {
+        try {
+            //The length varint is at most 10 bytes, read along with the type
+            long offset = offsetAt(position) + 1;
+            ByteBuffer header = ByteBuffer.allocate(10);
+            readFully(offset, header);
+            header.flip();
+            long length = Delta.readVarint(header);
+            ByteBuffer contents = ByteBuffer.allocate((int) length);
+            readFully(offset + header.position(), contents);
+            if (contents.hasRemaining()) {
+                throw new EOFException("object cut short");
+            }
+            return contents.array();
+        } catch (IOException excp) {
+            throw error("Cannot read pack %s: %s", packFile, excp.getMessage());
+        }
+    }
+
+    // ------------ Writing Packs --------------- //
+
+    /**
+     * Streams objects into a new pack and writes its sorted index once finished
+     */
+    static class Writer {
+        /**
+         * The pack data file being written
+         */
+        private final File packFile;
+        /**
+         * Output stream of the pack data file
+         */
+        private final DataOutputStream out;
+        /**
+         * Hex ids of the objects written so far
+         */
+        private final List<String> ids = new ArrayList<>();
+        /**
+         * Types of the objects written so far
+         */
+        private final List<Byte> types = new ArrayList<>();
+        /**
+         * Offsets of the objects written so far
+         */
+        private final List<Long> offsets = new ArrayList<>();
+        /**
+         * Number of bytes written to the pack data file so far
+         */
+        private long written;
+
+        /**
+         * Creates a new, empty pack data file
+         *
+         * @param packFile the pack data file to create
+         */
+        Writer(File packFile) {
+            this.packFile = packFile;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(packFile.toPath())));
+                out.write(PACK_MAGIC);
+                written = PACK_MAGIC.length;
+            } catch (IOException excp) {
+                throw error("Cannot write pack %s: %s", packFile, excp.getMessage());
+            }
+        }
+
+        /**
+         * Appends an object to the pack
+         *
+         * @param id       hex SHA-1 id of the object
+         * @param type     object type
+         * @param contents stored contents of the object
+         */
+        void add(String id, byte type, byte[] contents) {
+            try {
+                ids.add(id);
+                types.add(type);
+                offsets.add(written);
+                out.writeByte(type);
+                written += 1 + writeVarint(out, contents.length);
+                out.write(contents);
+                written += contents.length;
+            } catch (IOException excp) {
+                throw error("Cannot write pack %s: %s", packFile, excp.getMessage());
+            }
+        }
+
+        /**
+         * Returns the number of objects added so far
+         *
+         * @return object count
+         */
+        int size() {
+            return ids.size();
+        }
+
+        /**
+         * Closes the pack data file and writes the pack index,
+         * which makes the pack visible to readers
+         */
+        void finish() {
+            try {
+                out.close();
+            } catch (IOException excp) {
+                throw error("Cannot write pack %s: %s", packFile, excp.getMessage());
+            }
+            //The index makes the pack visible, so the pack must be on disk first
+            DurableFiles.force(packFile);
+            writeIndex(indexFileFor(packFile), ids, types, offsets);
+        }
+    }
+
+    /**
+     * Writes a sorted index for the given pack entries. The index is first
+     * written to a temporary file, flushed and then renamed into place.
+     *
+     * @param indexFile the index file to create
+     * @param ids       hex ids of the objects
+     * @param types     object types, parallel to ids
+     * @param offsets   object offsets in the pack, parallel to ids
+     */
+    private static void writeIndex(File indexFile, List<String> ids, List<Byte> types,
+                                   List<Long> offsets) {
+        Integer[] order = new Integer[ids.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> ids.get(a).compareTo(ids.get(b)));
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + FANOUT_SIZE
+                + order.length * RECORD_SIZE);
+        buf.put(INDEX_MAGIC);
+        buf.putInt(INDEX_VERSION);
+        buf.putInt(order.length);
+
+        //Fan-out: number of ids whose first byte is <= b
+        int[] fanout = new int[256];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)]++;
+        }
+        int total = 0;
+        for (int b = 0; b < 256; b++) {
+            total += fanout[b];
+            buf.putInt(total);
+        }
+
+        for (int i : order) {
+            buf.put(fromHex(ids.get(i)));
+            buf.put(types.get(i));
+            buf.putLong(offsets.get(i));
+        }
+        DurableFiles.write(indexFile, buf.array());
+    }
+
+    /**
+     * Returns the index file belonging to the given pack data file
+     *
+     * @param packFile the pack data file
+     * @return the matching .idx file
+     */
+    static File indexFileFor(File packFile) {
+        String name = packFile.getName();
+        return new File(packFile.getParentFile(),
+                name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Compares the id of the record at the given position with the key
+     *
+     * @param position position of the record
+     * @param key      raw id bytes to compare against
+     * @param length   number of leading bytes to compare
+     * @return negative, zero or positive as the record is less than,
+     * equal to or greater than the key
+     */
+    private int compareAt(int position, byte[] key, int length) {
+        int base = recordStart + position * RECORD_SIZE;
+        for (int i = 0; i < length; i++) {
+            int cmp = Integer.compare(index.get(base + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the position of the first record whose id starts with the given byte
+     * or a greater one
+     */
+    private int fanoutStart(byte first) {
+        int b = first & 0xff;
+        if (!hasFanout || b == 0) {
+            return 0;
+        }
+        return index.getInt(HEADER_SIZE + (b - 1) * 4);
+    }
+
+    /**
+     * Returns the position after the last record whose id starts with the given byte
+     * or a smaller one
+     */
+    private int fanoutEnd(byte first) {
+        if (!hasFanout) {
+            return count;
+        }
+        return index.getInt(HEADER_SIZE + (first & 0xff) * 4);
+    }
+
+    /**
+     * Reads from the data file at the given offset until buf is full or
+     * the file ends. Positional reads leave the channel's position alone,
+     * so threads can share it.
+     */
+    private void readFully(long offset, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = data.read(buf, offset);
+            if (n < 0) {
+                return;
+            }
+            offset += n;
+        }
+    }
+
+    /**
+     * Memory-maps the given file read-only
+     */
+    private static ByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw error("Cannot read pack index %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /**
+     * Pads the given string on the right with '0' up to the given length
+     */
+    private static String padRight(String s, int length) {
+        StringBuilder sb = new StringBuilder(s);
+        while (sb.length() < length) {
+            sb.append('0');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a non-negative value as an unsigned LEB128 varint
+     *
+     * @return the number of bytes written
+     */
+    static int writeVarint(DataOutputStream out, long value) throws IOException {
+        int n = 1;
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+            n++;
+        }
+        out.writeByte((int) value);
+        return n;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint
+     */
+    static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
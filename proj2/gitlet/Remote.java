@@ -0,0 +1,348 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/**
+ * Another gitlet repository on this machine, which commits can be pushed
+ * to and fetched from. <br><br>
+ * <p>
+ * Remotes are saved by name in .gitlet/remotes, one file per remote
+ * holding the path of its .gitlet directory. <br><br>
+ * <p>
+ * Transfers negotiate what to send: the sender walks its history back
+ * from the commit being sent and stops at every commit the receiver
+ * already has, so only new commits are visited. The trees of those
+ * commits are walked the same way, skipping any subtree the receiver
+ * already has, since having a tree means having everything under it. The
+ * objects found are copied as stored into a single new pack of the
+ * receiver (see {@link ObjectStore#copyTo}), and the new commits are
+ * added to the receiver's commit graph and search index. The work done
+ * is proportional to the history being sent, not to either repository. <br><br>
+ * <p>
+ * A fetch may be limited to the last commits of a history (shallow) and
+ * may leave out file blobs (partial). The commits whose parents were not
+ * sent are recorded as shallow in the receiver (see {@link Shallow}), and
+ * a partial receiver fetches the blobs it lacks when it first reads them
+ * (see {@link ObjectStore#prefetch}).
+ *
+ * @author Rishabh Choudhury
+ */
+class Remote {
+    /**
+     * The .gitlet directory of the remote repository
+     */
+    private final File gitletDir;
+    /**
+     * The object store of the remote repository
+     */
+    private final ObjectStore store;
+
+    /**
+     * Opens the repository with the given .gitlet directory
+     *
+     * @param gitletDir the .gitlet directory of the repository
+     */
+    Remote(File gitletDir) {
+        if (!join(gitletDir, REF_DIR.getName()).isDirectory()) {
+            throw error("Remote directory not found.");
+        }
+        this.gitletDir = gitletDir;
+        store = new ObjectStore(gitletDir);
+    }
+
+    // ------------ Saved Remotes --------------- //
+
+    /**
+     * Saves a remote under the given name
+     *
+     * @param name the name of the remote
+     * @param path path of the remote's .gitlet directory, with '/' separators
+     */
+    static void add(String name, String path) {
+        File remoteFile = join(REMOTE_DIR, name);
+        if (remoteFile.exists()) {
+            throw error("A remote with that name already exists.");
+        }
+        REMOTE_DIR.mkdir();
+        DurableFiles.write(remoteFile, path.replace("/", File.separator));
+    }
+
+    /**
+     * Forgets the remote with the given name. Its fetched branches are kept.
+     *
+     * @param name the name of the remote
+     */
+    static void remove(String name) {
+        File remoteFile = join(REMOTE_DIR, name);
+        if (!remoteFile.isFile()) {
+            throw error("A remote with that name does not exist.");
+        }
+        remoteFile.delete();
+    }
+
+    /**
+     * Opens the remote saved under the given name
+     *
+     * @param name the name of the remote
+     * @return the remote repository
+     */
+    static Remote named(String name) {
+        File remoteFile = join(REMOTE_DIR, name);
+        if (!remoteFile.isFile()) {
+            throw error("A remote with that name does not exist.");
+        }
+        File path = new File(readContentsAsString(remoteFile));
+        return new Remote(path.isAbsolute() ? path : join(CWD, path.getPath()));
+    }
+
+    /**
+     * Returns the .gitlet directory of the remote
+     *
+     * @return the directory
+     */
+    File gitletDir() {
+        return gitletDir;
+    }
+
+    // ------------ Remote Refs --------------- //
+
+    /**
+     * Returns the head commit id of the given branch of the remote
+     *
+     * @param branch the branch
+     * @return full SHA-1 id, or null if the remote has no such branch
+     */
+    String branchHead(String branch) {
+        File branchFile = join(gitletDir, REF_DIR.getName(), BRANCH_DIR.getName(), branch);
+        return branchFile.isFile() ? readContentsAsString(branchFile) : null;
+    }
+
+    /**
+     * Returns the branch checked out in the remote
+     *
+     * @return the branch name
+     */
+    String currentBranch() {
+        return readContentsAsString(join(gitletDir, REF_DIR.getName(), "current branch"));
+    }
+
+    /**
+     * Moves a branch of the remote with compare and swap semantics (see
+     * {@link Helper#updateBranch(File, String, String, String)})
+     *
+     * @param branch     the branch to update
+     * @param expectedID the commit the branch must point to, or null if it must not exist
+     * @param commitID   the commit to point the branch to
+     */
+    void updateBranch(String branch, String expectedID, String commitID) {
+        Helper.updateBranch(gitletDir, branch, expectedID, commitID);
+    }
+
+    /**
+     * Returns the files tracked by the given commit of the remote
+     *
+     * @param commitID full SHA-1 id of the commit
+     * @return map of file names to blob ids
+     */
+    Map<String, String> trackedFiles(String commitID) {
+        Commit commit = readCommit(store, commitID);
+        if (commit.getTreeID() != null) {
+            return Tree.flatten(store, commit.getTreeID());
+        }
+        return commit.getTrackedFiles();
+    }
+
+    // ------------ Transfers --------------- //
+
+    /**
+     * Copies the commits of this repository reachable from the given commit
+     * that the local repository does not have, with everything they need.
+     * A partial local repository is sent no file blobs.
+     *
+     * @param commitID full SHA-1 id of the commit to fetch
+     * @param depth    number of commits to fetch along each line of history,
+     *                 or 0 for the whole history
+     * @return the new commits, parents before children
+     */
+    List<Commit> fetch(String commitID, int depth) {
+        List<Commit> commits = transfer(store, gitletDir, Helper.OBJECTS, GITLET_DIR,
+                commitID, depth, !Helper.OBJECTS.isPartial());
+        CommitGraph.invalidate();
+        return commits;
+    }
+
+    /**
+     * Copies the local commits reachable from the given commit that this
+     * repository does not have, with everything they need
+     *
+     * @param commitID full SHA-1 id of the commit to push
+     * @return the new commits, parents before children
+     */
+    List<Commit> push(String commitID) {
+        return transfer(Helper.OBJECTS, GITLET_DIR, store, gitletDir, commitID, 0, true);
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Copies the history of the given commit that the receiver does not
+     * have from one repository to another
+     */
+    private static List<Commit> transfer(ObjectStore sender, File senderDir,
+                                         ObjectStore receiver, File receiverDir,
+                                         String commitID, int depth, boolean blobs) {
+        Map<String, Commit> loaded = new HashMap<>();
+        //The sender's own shallow commits stay shallow in the receiver
+        Set<String> shallow = Shallow.read(senderDir);
+        if (depth > 0) {
+            shallow.addAll(depthBoundary(sender, receiver, commitID, depth, shallow, loaded));
+        }
+        List<Commit> commits = missingCommits(sender, receiver, commitID, shallow, loaded);
+        List<Byte> types = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        Set<String> trees = new HashSet<>();
+        List<String> newShallow = new ArrayList<>();
+        for (Commit commit : commits) {
+            types.add(ObjectStore.COMMIT);
+            ids.add(commit.getID());
+            if (shallow.contains(commit.getID())) {
+                newShallow.add(commit.getID());
+            }
+            if (commit.getTreeID() != null) {
+                addTree(sender, receiver, commit.getTreeID(), blobs, trees, types, ids);
+            } else if (blobs) {
+                //Commits made before trees existed list their files themselves
+                for (String fileID : commit.getTrackedFiles().values()) {
+                    types.add(ObjectStore.BLOB);
+                    ids.add(fileID);
+                }
+            }
+        }
+        sender.copyTo(receiver, types, ids);
+        //Recorded before the graph, which must not look for their parents
+        Shallow.add(receiverDir, newShallow);
+        CommitGraph.addTo(receiverDir, commits);
+        SearchIndex.addTo(receiverDir, commits);
+        return commits;
+    }
+
+    /**
+     * Returns the commits that are exactly depth commits away from the
+     * given commit along their shortest line of history and have parents.
+     * Their parents are not sent, so they become shallow in the receiver.
+     */
+    private static Set<String> depthBoundary(ObjectStore sender, ObjectStore receiver,
+                                             String commitID, int depth, Set<String> shallow,
+                                             Map<String, Commit> loaded) {
+        Set<String> boundary = new HashSet<>();
+        Set<String> seen = new HashSet<>();
+        seen.add(commitID);
+        List<String> level = List.of(commitID);
+        for (int distance = 1; !level.isEmpty(); distance++) {
+            List<String> next = new ArrayList<>();
+            for (String id : level) {
+                if (shallow.contains(id) || receiver.contains(ObjectStore.COMMIT, id)) {
+                    continue;
+                }
+                Commit commit = loaded.computeIfAbsent(id, key -> readCommit(sender, key));
+                if (distance == depth) {
+                    if (!commit.getParentIDs().isEmpty()) {
+                        boundary.add(id);
+                    }
+                    continue;
+                }
+                for (String parentID : commit.getParentIDs()) {
+                    if (seen.add(parentID)) {
+                        next.add(parentID);
+                    }
+                }
+            }
+            level = next;
+        }
+        return boundary;
+    }
+
+    /**
+     * Returns the commits reachable from the given commit that the receiver
+     * does not have, parents before children. The walk stops at commits the
+     * receiver has, since it has all their ancestors too, and does not look
+     * past shallow commits.
+     */
+    private static List<Commit> missingCommits(ObjectStore sender, ObjectStore receiver,
+                                               String commitID, Set<String> shallow,
+                                               Map<String, Commit> loaded) {
+        List<Commit> commits = new ArrayList<>();
+        Set<String> done = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(commitID);
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (done.contains(id) || receiver.contains(ObjectStore.COMMIT, id)) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = loaded.computeIfAbsent(id, key -> readCommit(sender, key));
+            boolean parentsDone = true;
+            List<String> parentIDs = shallow.contains(id)
+                    ? Collections.emptyList() : commit.getParentIDs();
+            for (String parentID : parentIDs) {
+                if (!done.contains(parentID) && !receiver.contains(ObjectStore.COMMIT, parentID)) {
+                    stack.push(parentID);
+                    parentsDone = false;
+                }
+            }
+            if (parentsDone) {
+                stack.pop();
+                done.add(id);
+                commits.add(commit);
+            }
+        }
+        return commits;
+    }
+
+    /**
+     * Adds the given tree and the subtrees and files under it that the
+     * receiver does not have to the objects to copy. Files are left out
+     * unless blobs is set.
+     */
+    private static void addTree(ObjectStore sender, ObjectStore receiver, String treeID,
+                                boolean blobs, Set<String> trees, List<Byte> types,
+                                List<String> ids) {
+        if (!trees.add(treeID) || receiver.contains(ObjectStore.TREE, treeID)) {
+            return;
+        }
+        types.add(ObjectStore.TREE);
+        ids.add(treeID);
+        for (Tree.Entry entry : Tree.read(sender, treeID).entries().values()) {
+            if (entry.type == Tree.DIR) {
+                addTree(sender, receiver, entry.id, blobs, trees, types, ids);
+            } else if (blobs) {
+                types.add(ObjectStore.BLOB);
+                ids.add(entry.id);
+            }
+        }
+    }
+
+    /**
+     * Loads a commit from the given object store
+     */
+    private static Commit readCommit(ObjectStore store, String commitID) {
+        byte[] contents = store.read(ObjectStore.COMMIT, commitID);
+        if (contents == null) {
+            throw error("Missing commit %s", commitID);
+        }
+        return CommitCodec.decode(commitID, contents);
+    }
+}
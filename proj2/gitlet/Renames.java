@@ -0,0 +1,258 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static gitlet.Helper.OBJECTS;
+import static gitlet.Utils.error;
+
+/**
+ * Pairs deleted files with added files that hold the same or nearly the
+ * same contents, so that a moved file is treated as a rename rather than
+ * a deletion and an unrelated addition. <br><br>
+ * <p>
+ * Files with equal SHA-1 ids are paired first, without reading them. The
+ * rest are split into chunks (lines, cut every {@code CHUNK} bytes) and
+ * summarised by a MinHash signature of their chunk hashes, whose share of
+ * equal values estimates how many chunks two files have in common.
+ * Signatures are bucketed by bands (locality sensitive hashing), so only
+ * files sharing a band are compared and the work stays close to linear in
+ * the number of files rather than quadratic. Candidate pairs at least
+ * {@code MIN_SIMILARITY} similar are then paired greedily, most similar
+ * first.
+ *
+ * @author Rishabh Choudhury
+ */
+class Renames {
+    /**
+     * Longest chunk a file is split into, in bytes
+     */
+    private static final int CHUNK = 64;
+    /**
+     * Number of bands the signature is split into for bucketing
+     */
+    private static final int BANDS = 16;
+    /**
+     * Number of signature values in each band
+     */
+    private static final int ROWS = 4;
+    /**
+     * Number of values in a MinHash signature
+     */
+    private static final int SIGNATURE = BANDS * ROWS;
+    /**
+     * Lowest estimated similarity of a renamed file to its original
+     */
+    private static final double MIN_SIMILARITY = 0.5;
+    /**
+     * FNV-1a offset basis, the hash of an empty chunk
+     */
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    /**
+     * FNV-1a prime, multiplied in after each byte of a chunk
+     */
+    private static final long FNV_PRIME = 0x100000001B3L;
+    /**
+     * Seeds of the signature's hash functions
+     */
+    private static final long[] SEEDS = new long[SIGNATURE];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SIGNATURE; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    /**
+     * Returns the deleted files that were renamed to added files
+     *
+     * @param deleted map of deleted file names to their last ids
+     * @param added   map of added file names to their ids
+     * @return map of old file names to new file names
+     */
+    static SortedMap<String, String> detect(Map<String, String> deleted, Map<String, String> added) {
+        SortedMap<String, String> renames = new TreeMap<>();
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+
+        //Exact renames
+        Map<String, Deque<String>> addedByID = new HashMap<>();
+        for (Map.Entry<String, String> file : new TreeMap<>(added).entrySet()) {
+            addedByID.computeIfAbsent(file.getValue(), id -> new ArrayDeque<>()).add(file.getKey());
+        }
+        List<String> unpairedDeleted = new ArrayList<>();
+        for (Map.Entry<String, String> file : new TreeMap<>(deleted).entrySet()) {
+            Deque<String> sameID = addedByID.get(file.getValue());
+            if (sameID != null && !sameID.isEmpty()) {
+                renames.put(file.getKey(), sameID.poll());
+            } else {
+                unpairedDeleted.add(file.getKey());
+            }
+        }
+        List<String> unpairedAdded = new ArrayList<>();
+        for (Deque<String> names : addedByID.values()) {
+            unpairedAdded.addAll(names);
+        }
+        if (unpairedDeleted.isEmpty() || unpairedAdded.isEmpty()) {
+            return renames;
+        }
+
+        //Bucket added files by each band of their signature
+        Map<String, int[]> signatures = new HashMap<>();
+        Map<Long, List<String>> buckets = new HashMap<>();
+        for (String name : unpairedAdded) {
+            int[] signature = signature(added.get(name));
+            if (signature != null) {
+                signatures.put(name, signature);
+                for (int band = 0; band < BANDS; band++) {
+                    buckets.computeIfAbsent(bandKey(signature, band), k -> new ArrayList<>()).add(name);
+                }
+            }
+        }
+
+        //Compare each deleted file with the added files sharing a band with it
+        List<Candidate> candidates = new ArrayList<>();
+        for (String name : unpairedDeleted) {
+            int[] signature = signature(deleted.get(name));
+            if (signature == null) {
+                continue;
+            }
+            Set<String> compared = new HashSet<>();
+            for (int band = 0; band < BANDS; band++) {
+                for (String other : buckets.getOrDefault(bandKey(signature, band), List.of())) {
+                    if (compared.add(other)) {
+                        double similarity = similarity(signature, signatures.get(other));
+                        if (similarity >= MIN_SIMILARITY) {
+                            candidates.add(new Candidate(name, other, similarity));
+                        }
+                    }
+                }
+            }
+        }
+
+        //Most similar pairs first, each file in at most one pair
+        candidates.sort((a, b) -> a.similarity != b.similarity
+                ? Double.compare(b.similarity, a.similarity)
+                : (a.from + a.to).compareTo(b.from + b.to));
+        Set<String> paired = new HashSet<>();
+        for (Candidate candidate : candidates) {
+            if (!renames.containsKey(candidate.from) && paired.add(candidate.to)) {
+                renames.put(candidate.from, candidate.to);
+            }
+        }
+        return renames;
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * A possible rename and its estimated similarity
+     */
+    private static class Candidate {
+        final String from;
+        final String to;
+        final double similarity;
+
+        Candidate(String from, String to, double similarity) {
+            this.from = from;
+            this.to = to;
+            this.similarity = similarity;
+        }
+    }
+
+    /**
+     * Returns the MinHash signature of the chunks of the given file blob,
+     * or null for an empty file or one too big to be worth comparing.
+     * The blob is streamed, so it is never held in memory whole.
+     */
+    private static int[] signature(String fileID) {
+        long size = OBJECTS.size(fileID);
+        if (size == 0 || size > ObjectStore.BIG_FILE_SIZE) {
+            return null;
+        }
+        int[] signature = new int[SIGNATURE];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        byte[] buf = new byte[8192];
+        //A chunk ends after a newline or after CHUNK bytes
+        long hash = FNV_OFFSET;
+        int length = 0;
+        try (InputStream in = OBJECTS.open(fileID)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    hash = (hash ^ (buf[i] & 0xFF)) * FNV_PRIME;
+                    if (buf[i] == '\n' || ++length == CHUNK) {
+                        addChunk(signature, hash);
+                        hash = FNV_OFFSET;
+                        length = 0;
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot read file object %s: %s", fileID, excp.getMessage());
+        }
+        if (length > 0) {
+            addChunk(signature, hash);
+        }
+        return signature;
+    }
+
+    /**
+     * Adds the hash of one chunk to the given signature
+     */
+    private static void addChunk(int[] signature, long hash) {
+        for (int i = 0; i < SIGNATURE; i++) {
+            int value = (int) (mix(hash ^ SEEDS[i]) >>> 33);
+            if (value < signature[i]) {
+                signature[i] = value;
+            }
+        }
+    }
+
+    /**
+     * Returns the share of equal values in two signatures
+     */
+    private static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIGNATURE;
+    }
+
+    /**
+     * Returns the bucket key of one band of a signature
+     */
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            key = mix(key * 31 + signature[i]);
+        }
+        return key;
+    }
+
+    /**
+     * Scrambles the bits of a 64-bit value (the SplitMix64 finalizer)
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
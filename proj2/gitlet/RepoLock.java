@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Repository.LOCK_DIR;
+import static gitlet.Utils.*;
+
+/**
+ * An exclusive lock on one part of the repository, shared by all gitlet
+ * processes working on it. <br><br>
+ * <p>
+ * Each part has its own lock file under .gitlet/locks, locked with an
+ * operating system file lock, so the lock is released when its holder
+ * exits, even if it crashes. Locks are fine grained: <br>
+ * STAGING - held for the whole of a command that changes the staging area
+ * or the working directory <br>
+ * GC - held while gc repacks objects <br>
+ * COMMIT_GRAPH - held while the commit graph files are written <br>
+ * SEARCH_INDEX - held while the search index files are written <br>
+ * refs/BRANCH - held while a branch ref is compared and swapped (see
+ * {@link Helper#updateBranch}) <br>
+ * Commands that only read (log, find, status, diff) take no locks: every
+ * file they read is replaced by a rename or only appended to, so they see
+ * either the old or the new state.
+ *
+ * @author Rishabh Choudhury
+ */
+class RepoLock implements AutoCloseable {
+    /**
+     * Lock of the staging area and the working directory
+     */
+    static final String STAGING = "staging";
+    /**
+     * Lock of packing objects
+     */
+    static final String GC = "gc";
+    /**
+     * Lock of the commit graph and its tail
+     */
+    static final String COMMIT_GRAPH = "commit-graph";
+    /**
+     * Lock of the search index buckets
+     */
+    static final String SEARCH_INDEX = "search-index";
+
+    /**
+     * Channel of the lock file
+     */
+    private final FileChannel channel;
+    /**
+     * The file lock held on the channel
+     */
+    private final FileLock lock;
+
+    private RepoLock(FileChannel channel, FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Waits until the given lock is free and takes it
+     *
+     * @param name the lock, one of the constants or refs/BRANCH
+     * @return the held lock, released by close
+     */
+    static RepoLock acquire(String name) {
+        return acquire(GITLET_DIR, name);
+    }
+
+    /**
+     * Waits until the given lock of another repository on this machine
+     * is free and takes it
+     *
+     * @param gitletDir the .gitlet directory of the repository
+     * @param name      the lock, one of the constants or refs/BRANCH
+     * @return the held lock, released by close
+     */
+    static RepoLock acquire(File gitletDir, String name) {
+        File lockFile = join(gitletDir, LOCK_DIR.getName(), name);
+        lockFile.getParentFile().mkdirs();
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            return new RepoLock(channel, channel.lock());
+        } catch (IOException excp) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    //Closing also drops any lock
+                }
+            }
+            throw error("Cannot lock %s: %s", name, excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the lock guarding the given branch ref
+     *
+     * @param branch the branch
+     * @return the lock name
+     */
+    static String ref(String branch) {
+        return "refs/" + branch;
+    }
+
+    /**
+     * Releases the lock
+     */
+    @Override
+    public void close() {
+        try {
+            lock.release();
+            channel.close();
+        } catch (IOException excp) {
+            throw error("Cannot unlock: %s", excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package gitlet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of gitlet commands run by several processes at once on one repository
+ *
+ * @author Rishabh Choudhury
+ */
+public class RepoLockTest {
+    /**
+     * Number of commands started at once
+     */
+    private static final int CLIENTS = 8;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * The repository under test
+     */
+    private ScratchRepo repo;
+
+    @Before
+    public void setUp() {
+        repo = new ScratchRepo(tmp.getRoot());
+        repo.run("init");
+    }
+
+    /**
+     * Starts CLIENTS copies of a command, the i-th with "%d" in its
+     * operands replaced by i, and returns what each printed
+     */
+    private List<String> runAtOnce(String... args) {
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            String[] command = new String[args.length];
+            for (int a = 0; a < args.length; a++) {
+                command[a] = args[a].replace("%d", Integer.toString(i));
+            }
+            processes.add(repo.start(command));
+        }
+        List<String> outputs = new ArrayList<>();
+        for (Process process : processes) {
+            outputs.add(ScratchRepo.output(process));
+        }
+        return outputs;
+    }
+
+    @Test
+    /* Checks that exactly one of several processes creating the same branch succeeds */
+    public void sameBranchTest() {
+        List<String> outputs = runAtOnce("branch", "same");
+        int created = 0;
+        for (String output : outputs) {
+            if (output.isEmpty()) {
+                created++;
+            } else {
+                assertEquals("A branch with that name already exists.\n", output);
+            }
+        }
+        assertEquals(1, created);
+    }
+
+    @Test
+    /* Checks that files added by processes running at once are all staged */
+    public void parallelAddTest() {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < CLIENTS; i++) {
+            repo.write("f" + i + ".txt", "file " + i + "\n");
+            expected.append("f").append(i).append(".txt\n");
+        }
+        for (String output : runAtOnce("add", "f%d.txt")) {
+            assertEquals("", output);
+        }
+        assertTrue(repo.run("status").contains("=== Staged Files ===\n" + expected + "\n"));
+    }
+
+    @Test
+    /* Checks that one of several processes committing the same staged file at once commits it */
+    public void parallelCommitTest() {
+        repo.write("a.txt", "a\n");
+        repo.run("add", "a.txt");
+        int committed = 0;
+        for (String output : runAtOnce("commit", "commit %d")) {
+            if (output.isEmpty()) {
+                committed++;
+            } else {
+                assertEquals("No changes added to the commit\n", output);
+            }
+        }
+        assertEquals(1, committed);
+        //The branch holds the initial commit and the one commit that was made
+        assertEquals(2, repo.run("log").split("===\n", -1).length - 1);
+        assertEquals("", repo.run("status").split("=== Staged Files ===\n")[1]
+                .split("\n")[0]);
+    }
+
+    @Test
+    /* Checks that listing branches while others are being written never shows temporary files */
+    public void listWhileWritingTest() {
+        List<Process> writers = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            writers.add(repo.start("branch", "b" + i));
+        }
+        StringBuilder expected = new StringBuilder("=== Branches ===\n");
+        for (int i = 0; i < CLIENTS; i++) {
+            expected.append("b").append(i).append("\n");
+        }
+        expected.append("*master\n");
+        //Every listing holds master and some of the new branches, and nothing else
+        for (String output : runAtOnce("status")) {
+            for (String line : output.split("\n\n")[0].split("\n")) {
+                assertTrue(line, line.equals("=== Branches ===") || line.equals("*master")
+                        || line.matches("b\\d+"));
+            }
+        }
+        for (Process writer : writers) {
+            assertEquals("", ScratchRepo.output(writer));
+        }
+        assertEquals(expected.toString(), repo.run("status").split("\n\n")[0] + "\n");
+        assertEquals(CLIENTS + 1, Utils.plainFilenamesIn(repo.file(".gitlet/refs/branches"))
+                .size());
+    }
+}
@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import static gitlet.LatestCommonAncestor.findLCA;
@@ -31,6 +32,10 @@ public class Repository {
      * The files directory
      */
     static final File FILE_DIR = join(GITLET_DIR, "files");
+    /**
+     * The trees directory
+     */
+    static final File TREE_DIR = join(GITLET_DIR, "trees");
     /**
      * The Staging Area Directory
      */
@@ -45,6 +50,46 @@ public class Repository {
      * The Branch Directory
      */
     static final File BRANCH_DIR = join(REF_DIR, "branches");
+    /**
+     * The packs directory
+     */
+    static final File PACK_DIR = join(GITLET_DIR, "packs");
+    /**
+     * The index file caching working directory file ids by their stat
+     */
+    static final File INDEX_FILE = join(GITLET_DIR, "index");
+    /**
+     * The search index directory
+     */
+    static final File SEARCH_DIR = join(GITLET_DIR, "search");
+    /**
+     * The commit graph file written by gc
+     */
+    static final File GRAPH_FILE = join(GITLET_DIR, "commit-graph");
+    /**
+     * The commit graph records of commits made since the last gc
+     */
+    static final File GRAPH_TAIL_FILE = join(GITLET_DIR, "commit-graph-tail");
+    /**
+     * Temporary files written by checkout before they are moved into place
+     */
+    static final File TMP_DIR = join(GITLET_DIR, "tmp");
+    /**
+     * The socket a running gitlet daemon listens on
+     */
+    static final File DAEMON_SOCKET = join(GITLET_DIR, "daemon.sock");
+    /**
+     * Lock files shared by gitlet processes (see {@link RepoLock})
+     */
+    static final File LOCK_DIR = join(GITLET_DIR, "locks");
+    /**
+     * Saved remotes, one file per remote (see {@link Remote})
+     */
+    static final File REMOTE_DIR = join(GITLET_DIR, "remotes");
+    /**
+     * Commits of a shallow clone whose parents were not copied (see {@link Shallow})
+     */
+    static final File SHALLOW_FILE = join(GITLET_DIR, "shallow");
     /**
      * Tracks the current branch
      */
@@ -59,9 +104,8 @@ public class Repository {
         //Create gitlet directory and all required subdirectories
         File gitletDir = new File(GITLET_DIR.toString());
         if (gitletDir.exists()) {
-            message("A Gitlet version-control system already "
+            throw error("A Gitlet version-control system already "
                     + "exists in the current directory.");
-            System.exit(0);
         }
         setupPersistence();
 
@@ -73,40 +117,74 @@ public class Repository {
     // ------------------------------ ADD ------------------------------ //
 
     /**
-     * Add given file to the staging area <br><br>
+     * Add given files to the staging area <br><br>
      * <p>
-     * Function adds given file to the staging area if it has been modified as
-     * compared to its existing repo version <br>
+     * Function adds each file named by the given paths to the staging area if it
+     * has been modified as compared to its existing repo version. A path may name
+     * a file, a directory (all files under it, "." for the whole working
+     * directory) or a glob pattern such as "*.txt" <br>
      * <p>
      * Condition 1: Add file if it is newly created <br>
      * Condition 2: Add file if it already exists in repo and has been modified <br>
      * Condition 3: Remove file from staging area if
      * it has been reset to match its existing repo version
      *
-     * @param fileName the name of the file to be added
+     * @param paths the files, directories or glob patterns to be added
      */
-    public void add(String fileName) {
+    public void add(String... paths) {
 
-        File file = new File(join(CWD, fileName).toString());
-        if (!file.exists()) {
-            message("File does not exist.");
-            System.exit(0);
+        SortedSet<String> fileNames = new TreeSet<>();
+        for (String path : paths) {
+            List<String> matches = WorkingFiles.expand(path);
+            if (matches.isEmpty()) {
+                throw error("File does not exist.");
+            }
+            fileNames.addAll(matches);
         }
 
-        //Calculate given file ID
-        String fileContent = readContentsAsString(file);
-        String fileID = sha1(fileContent);
-
-        //HEAD commit file ID
+        //HEAD commit file IDs
         Commit headCommit = loadCurrentHead();
-        String commitFileID = headCommit.getFileID(fileName);
 
-        //File has been modified / is new
-        if (!fileID.equals(commitFileID)) {
-            stageFileForAddition(fileName, fileID);
-        } else { //Remove file from the staging area (Condition 3)
-            removeFromStagingArea(fileName);
+        //Files whose stat is unchanged since they were last hashed are not read again
+        Map<String, String> fileIDs = new HashMap<>();
+        List<String> changedFiles = new ArrayList<>();
+        for (String fileName : fileNames) {
+            String fileID = FileIndex.cachedID(fileName);
+            if (fileID == null || !OBJECTS.contains(ObjectStore.BLOB, fileID)) {
+                changedFiles.add(fileName);
+            } else {
+                fileIDs.put(fileName, fileID);
+            }
         }
+
+        //Stat the other files before they are read, so that a write landing
+        //while they are hashed is noticed next time
+        Map<String, FileIndex.Entry> stats = new HashMap<>();
+        for (String fileName : changedFiles) {
+            stats.put(fileName, FileIndex.stat(fileName));
+        }
+
+        //Stream them into the object store in parallel,
+        //calculating their IDs on the way
+        Map<String, String> savedIDs = saveWorkingFiles(changedFiles, headCommit);
+        for (String fileName : changedFiles) {
+            String fileID = savedIDs.get(fileName);
+            FileIndex.update(fileName, fileID, stats.get(fileName));
+            fileIDs.put(fileName, fileID);
+        }
+        FileIndex.save();
+
+        Map<String, String> modifiedFiles = new TreeMap<>();
+        for (String fileName : fileNames) {
+            String fileID = fileIDs.get(fileName);
+            //File has been modified / is new
+            if (!fileID.equals(headCommit.getFileID(fileName))) {
+                modifiedFiles.put(fileName, fileID);
+            } else { //Remove file from the staging area (Condition 3)
+                removeFromStagingArea(fileName);
+            }
+        }
+        stageFilesForAddition(modifiedFiles);
     }
 
     // ------------------------------- COMMIT ------------------------------ //
@@ -120,15 +198,13 @@ public class Repository {
 
         //if message is empty abort
         if (message.equals("")) {
-            message("Please enter a commit message.");
-            System.exit(0);
+            throw error("Please enter a commit message.");
         }
 
         //no files staged
         if (getFilesStagedForAddition().size() == 0
                 && getFilesStagedForRemoval().size() == 0) {
-            message("No changes added to the commit");
-            System.exit(0);
+            throw error("No changes added to the commit");
         }
 
         LinkedList<Commit> parents = new LinkedList<>();
@@ -145,15 +221,17 @@ public class Repository {
      */
     private void commit(String message, LinkedList<Commit> parents) {
 
+        //Save staged files to the repository, before any ref can point to them
+        saveFiles(getFilesStagedForAddition(), parents.getFirst());
+
         //Create and save commit
         Commit newCommit = new Commit(message, new Date());
         newCommit.trackParent(parents);
-        newCommit.trackStagedFiles(getFilesStagedForAddition());
-        newCommit.untrackRemovedFiles(getFilesStagedForRemoval());
+        newCommit.trackStagedFiles(getFilesStagedForAddition(), getFilesStagedForRemoval());
         saveCommit(newCommit);
 
-        //Save staged files to the repository
-        saveFiles(getFilesStagedForAddition());
+        //Clear staging area
+        clearStagingArea();
     }
 
     // ---------------------------------- CHECKOUT ------------------------------ //
@@ -199,17 +277,13 @@ public class Repository {
 
         //File doesn't exist
         if (fileID == null) {
-            message("File does not exist in that commit.");
-            System.exit(0);
+            throw error("File does not exist in that commit.");
         }
 
-        //Load file data into string from disk
-        File file = new File(join(FILE_DIR, fileID.substring(0, 6),
-                fileID.substring(6)).toString());
-        String fileContents = readContentsAsString(file);
-
         //Replace CWD with checked out file contents / create new
-        writeContents(join(CWD, fileName), fileContents);
+        WorkingFiles.write(Collections.singletonMap(fileName, fileID));
+        FileIndex.update(fileName, fileID);
+        FileIndex.save();
     }
 
     /**
@@ -220,17 +294,15 @@ public class Repository {
     private void checkoutBranch(String branch) {
 
         //Check Branch exists
-        List<String> branchList = plainFilenamesIn(BRANCH_DIR);
+        List<String> branchList = branchNames();
         if (!branchList.contains(branch)) {
-            message("No such branch exists.");
-            System.exit(0);
+            throw error("No such branch exists.");
         }
 
         //Check if branch is different from current branch
         loadCurrentBranchVar();
         if (currentBranch.equals(branch)) {
-            message("No need to checkout the current branch.");
-            System.exit(0);
+            throw error("No need to checkout the current branch.");
         }
 
         Commit currentHead = loadCurrentHead();
@@ -249,29 +321,54 @@ public class Repository {
     }
 
     /**
-     * Check out all files in the given commit
+     * Check out all files in the given commit. Only files that differ
+     * between the two commits are written, so the cost follows the size
+     * of the change rather than of the tree; the writes run in parallel.
+     * <br><br>
+     * <p>
+     * Files tracked by both commits are left as they are in the working
+     * directory, as git does. With -Dgitlet.checkoutVerify=true every such
+     * file is checked against the index as well, and rewritten if it was
+     * changed or deleted, which restores them all to the given commit at
+     * the cost of a stat per tracked file.
      *
      * @param currentHead the current head commit
      * @param givenCommit the commit to check out
      */
     private void checkoutCommit(Commit currentHead, Commit givenCommit) {
-        //Replace files in the CWD with versions tracked
-        // by the checked out branch
-        for (String fileName : givenCommit.trackedFiles.keySet()) {
-            checkoutFileInCommit(givenCommit, fileName);
-        }
+        SortedMap<String, String> changes = currentHead.changesTo(givenCommit);
 
         //Delete files from the CWD tracked by the current branch
         //but not tracked by the checked out branch
-        for (String fileName : currentHead.trackedFiles.keySet()) {
-            if (!givenCommit.trackedFiles.containsKey(fileName)) {
-                File file = new File(CWD, fileName);
-                if (file.exists()) {
-                    file.delete();
+        Map<String, String> writes = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                WorkingFiles.delete(change.getKey());
+                FileIndex.remove(change.getKey());
+            } else {
+                writes.put(change.getKey(), change.getValue());
+            }
+        }
+
+        //Files tracked by both commits are rewritten only if asked to,
+        //and then only if their working copy was changed or deleted
+        if (Boolean.getBoolean("gitlet.checkoutVerify")) {
+            for (Map.Entry<String, String> file : givenCommit.getTrackedFiles().entrySet()) {
+                if (!changes.containsKey(file.getKey())
+                        && !file.getValue().equals(FileIndex.cachedID(file.getKey()))) {
+                    writes.put(file.getKey(), file.getValue());
                 }
             }
         }
 
+        //Replace files in the CWD with versions tracked
+        // by the checked out branch
+        WorkingFiles.write(writes);
+        for (Map.Entry<String, String> file : writes.entrySet()) {
+            FileIndex.update(file.getKey(), file.getValue());
+        }
+        FileIndex.save();
+
         //Clear staging area
         clearStagingArea();
     }
@@ -279,23 +376,31 @@ public class Repository {
     // ------------------------------- FIND ------------------------------ //
 
     /**
-     * Finds all commits in repository containing the given message
+     * Finds all commits in repository with the given message,
+     * looking them up in the search index <br><br>
+     * <p>
+     * find [message] - commits whose message is exactly the given one <br>
+     * find --words [words] - commits whose message contains all the given words <br>
+     * find --substring [text] - commits whose message contains the given text
+     *
+     * @param args <br>1. (message)</br>
+     *             <br>2. (option, query)</br>
      */
-    public void find(String message) {
-        boolean foundCommit = false;
-        List<String> commitFolders = plainFolderNamesIn(COMMIT_DIR);
-        for (String commitFolder : commitFolders) {
-            List<String> commitFile = plainFilenamesIn(join(COMMIT_DIR, commitFolder));
-            Commit commit = loadCommitWithID(commitFolder + commitFile);
-            if (message.equals(commit.getMessage())) {
-                foundCommit = true;
-                System.out.println(commit.getID());
-            }
+    public void find(String... args) {
+        SortedSet<String> commitIDs;
+        if (args.length == 1) {
+            commitIDs = SearchIndex.findExact(args[0]);
+        } else if (args[0].equals("--words")) {
+            commitIDs = SearchIndex.findWords(args[1]);
+        } else {
+            commitIDs = SearchIndex.findSubstring(args[1]);
         }
 
-        if (!foundCommit) {
-            message("Found no commit with that message.");
-            System.exit(0);
+        if (commitIDs.isEmpty()) {
+            throw error("Found no commit with that message.");
+        }
+        for (String commitID : commitIDs) {
+            System.out.println(commitID);
         }
     }
 
@@ -310,11 +415,10 @@ public class Repository {
     public void rm(String fileName) {
 
         boolean fileStaged = getFilesStagedForAddition().containsKey(fileName);
-        boolean fileTracked = loadCurrentHead().trackedFiles.containsKey(fileName);
+        boolean fileTracked = loadCurrentHead().getTrackedFiles().containsKey(fileName);
         //File is neither staged nor tracked in the head commit
         if (!fileStaged && !fileTracked) {
-            message("No reason to remove the file.");
-            System.exit(0);
+            throw error("No reason to remove the file.");
         }
 
         //Unstage file if it has been staged for addition
@@ -326,10 +430,9 @@ public class Repository {
         if (fileTracked) {
             stageFileForRemoval(fileName);
             //Remove file from CWD if not removed by user already
-            File file = new File(join(CWD, fileName).toString());
-            if (file.exists()) {
-                file.delete();
-            }
+            WorkingFiles.delete(fileName);
+            FileIndex.remove(fileName);
+            FileIndex.save();
         }
     }
 
@@ -348,8 +451,9 @@ public class Repository {
         checkUntrackedFiles(currentHead, givenCommit);
         checkoutCommit(currentHead, givenCommit);
 
-        loadCurrentHead();
-        saveBranch(currentBranch, commitID);
+        //Save the full id even if an abbreviated one was given
+        loadCurrentBranchVar();
+        updateBranch(currentBranch, currentHead.getID(), givenCommit.getID());
     }
 
     // ------------------------------- BRANCH ------------------------------ //
@@ -361,14 +465,13 @@ public class Repository {
      */
     public void branch(String branch) {
         //Branch with given name already exists
-        List<String> branches = plainFilenamesIn(BRANCH_DIR);
+        List<String> branches = branchNames();
         if (branches.contains(branch)) {
-            message("A branch with that name already exists.");
-            System.exit(0);
+            throw error("A branch with that name already exists.");
         }
 
         Commit headCommit = loadCurrentHead();
-        saveBranch(branch, headCommit.getID());
+        updateBranch(branch, null, headCommit.getID());
     }
 
     // ------------------------------- RM BRANCH ------------------------------ //
@@ -381,78 +484,79 @@ public class Repository {
      * @param branch the name of the branch to be removed
      */
     public void removeBranch(String branch) {
-        List<String> branches = plainFilenamesIn(BRANCH_DIR);
+        List<String> branches = branchNames();
         if (!branches.contains(branch)) {
-            message("A branch with that name does not exist.");
-            System.exit(0);
+            throw error("A branch with that name does not exist.");
         }
 
         loadCurrentBranchVar();
         if (branch.equals(currentBranch)) {
-            message("Cannot remove the current branch.");
-            System.exit(0);
+            throw error("Cannot remove the current branch.");
         }
 
         //Delete branch from branch dir
         File file = new File(join(BRANCH_DIR, branch).toString());
-        file.delete();
+        updateBranch(branch, readContentsAsString(file), null);
     }
 
     // ------------------------------- MERGE ------------------------------ //
 
     /**
-     * Merges given branch with the current branch
+     * Merges given branch with the current branch. Files changed in both
+     * branches are merged line by line against the split point.
      *
      * @param mergeBranch branch that needs to be merged with current branch
+     * @param diff3       whether conflicts also show the split point's lines
      */
-    public void merge(String mergeBranch) {
+    public void merge(String mergeBranch, boolean diff3) {
 
         //Failure 1: Uncommited changes
         if (getFilesStagedForAddition().size() != 0
                 || getFilesStagedForRemoval().size() != 0) {
-            message("You have uncommited changes.");
-            System.exit(0);
+            throw error("You have uncommited changes.");
         }
 
         //Failure 2: Branch doesn't exist
-        List<String> branches = plainFilenamesIn(BRANCH_DIR);
+        List<String> branches = branchNames();
         if (!branches.contains(mergeBranch)) {
-            message("A branch with that name does not exist.");
-            System.exit(0);
+            throw error("A branch with that name does not exist.");
         }
 
         //Failure 3: Merge branch is the same as current branch
         loadCurrentBranchVar();
         if (currentBranch.equals(mergeBranch)) {
-            message("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw error("Cannot merge a branch with itself.");
         }
 
         //Find the latest common ancestor (split point)
         Commit currentHead = loadCurrentHead();
         Commit mergeHead = loadBranchHead(mergeBranch);
         Commit split = findLCA(currentHead, mergeHead);
+        if (split == null) {
+            throw error("Cannot merge: history is shallow, fetch more commits.");
+        }
 
         //Failure 4: Untracked files
         checkUntrackedFiles(currentHead, mergeHead);
 
         //Failure 5: Split point is the same as merge branch
         if (split.getID().equals(mergeHead.getID())) {
-            message("Given branch is ancestor of the current branch.");
-            System.exit(0);
+            throw error("Given branch is ancestor of the current branch.");
         }
 
         // Split point is the same as current branch
         if (split.getID().equals(currentHead.getID())) {
             checkoutBranch(mergeBranch);
             message("Current branch fast-forwarded.");
-            System.exit(0);
+            return;
         }
 
         //Do Merge
+        Set<String> renamedFiles = new HashSet<>();
         int conflictCount = 0;
-        conflictCount += cmpSplitFiles(currentHead, mergeHead, split);
-        conflictCount += cmpMergeFiles(currentHead, mergeHead);
+        conflictCount += mergeRenamedFiles(currentHead, mergeHead, split, diff3, renamedFiles);
+        conflictCount += cmpSplitFiles(currentHead, mergeHead, split, diff3, renamedFiles);
+        conflictCount += cmpMergeFiles(currentHead, mergeHead, split, diff3, renamedFiles);
         if (conflictCount > 0) {
             System.out.println("Encountered a merge conflict.");
         }
@@ -464,29 +568,128 @@ public class Repository {
         commit("Merged " + mergeBranch + " into " + currentBranch + ".", parents);
     }
 
+    /**
+     * Merges the files that either branch renamed since the split point,
+     * so that changes made to a file on one branch follow it to the name
+     * the other branch gave it. Files that both branches renamed to
+     * different names are left to the other comparisons.
+     *
+     * @param currentHead the current head commit
+     * @param mergeHead   the merge head commit
+     * @param split       the split commit
+     * @param diff3       whether conflicts also show the split point's lines
+     * @param merged      receives the old and new names of the merged files
+     * @return total number of conflicted files
+     */
+    private int mergeRenamedFiles(Commit currentHead, Commit mergeHead, Commit split,
+                                  boolean diff3, Set<String> merged) {
+        Map<String, String> ourRenames = renamesSince(split, currentHead);
+        Map<String, String> theirRenames = renamesSince(split, mergeHead);
+
+        int conflictCount = 0;
+        for (Map.Entry<String, String> rename : ourRenames.entrySet()) {
+            String oldName = rename.getKey();
+            String newName = rename.getValue();
+            String theirName = theirRenames.getOrDefault(oldName, oldName);
+            if (!theirName.equals(oldName) && !theirName.equals(newName)) {
+                continue;
+            }
+            String splitID = split.getFileID(oldName);
+            String currID = currentHead.getFileID(newName);
+            String mergeID = mergeHead.getFileID(theirName);
+            merged.add(oldName);
+            merged.add(newName);
+
+            //Unchanged in the given branch: the renamed file is already right
+            if (splitID.equals(mergeID)) {
+                continue;
+            }
+            //Deleted in the given branch and only moved in the current one
+            if (mergeID == null && splitID.equals(currID)) {
+                rm(newName);
+                continue;
+            }
+            if (processConflictedFile(newName, splitID, currID, mergeID, diff3)) {
+                ++conflictCount;
+            }
+        }
+
+        for (Map.Entry<String, String> rename : theirRenames.entrySet()) {
+            String oldName = rename.getKey();
+            String newName = rename.getValue();
+            if (ourRenames.containsKey(oldName)) {
+                continue;
+            }
+            String splitID = split.getFileID(oldName);
+            String currID = currentHead.getFileID(oldName);
+            String mergeID = mergeHead.getFileID(newName);
+            merged.add(oldName);
+            merged.add(newName);
+
+            //Deleted in the current branch and only moved in the given one
+            if (currID == null && splitID.equals(mergeID)) {
+                continue;
+            }
+            if (currID != null) {
+                rm(oldName);
+            }
+            if (processConflictedFile(newName, splitID, currID, mergeID, diff3)) {
+                ++conflictCount;
+            }
+        }
+        return conflictCount;
+    }
+
+    /**
+     * Returns the files renamed between the given commits
+     *
+     * @param from the older commit
+     * @param to   the newer commit
+     * @return map of old file names to new file names
+     */
+    private Map<String, String> renamesSince(Commit from, Commit to) {
+        Map<String, String> deleted = new HashMap<>();
+        Map<String, String> added = new HashMap<>();
+        for (Map.Entry<String, String> change : from.changesTo(to).entrySet()) {
+            if (change.getValue() == null) {
+                deleted.put(change.getKey(), from.getFileID(change.getKey()));
+            } else if (from.getFileID(change.getKey()) == null) {
+                added.put(change.getKey(), change.getValue());
+            }
+        }
+        return Renames.detect(deleted, added);
+    }
+
     /**
      * Compares files in split commit with that of the current head and merge head commits
      *
      * @param currentHead the current head commit
      * @param mergeHead   the merge head commit
      * @param split       the split commit
+     * @param diff3       whether conflicts also show the split point's lines
+     * @param skipped     files already merged as renames
      * @return total number of conflicted files
      */
-    private int cmpSplitFiles(Commit currentHead, Commit mergeHead, Commit split) {
+    private int cmpSplitFiles(Commit currentHead, Commit mergeHead, Commit split,
+                              boolean diff3, Set<String> skipped) {
 
         int conflictCount = 0;
-        for (String file : split.trackedFiles.keySet()) {
-            String splitID = split.trackedFiles.get(file);
-            String currID = currentHead.trackedFiles.get(file);
-            String mergeID = mergeHead.trackedFiles.get(file);
+        for (String file : split.getTrackedFiles().keySet()) {
+            if (skipped.contains(file)) {
+                continue;
+            }
+            String splitID = split.getTrackedFiles().get(file);
+            String currID = currentHead.getTrackedFiles().get(file);
+            String mergeID = mergeHead.getTrackedFiles().get(file);
 
             switch (mergeFileStates(splitID, currID, mergeID)) {
                 case 1:
                     rm(file);
                     break;
                 case 2:
-                    ++conflictCount;
-                    processConflictedFile(file, currID, mergeID, currentHead, mergeHead);
+                    if (processConflictedFile(file, splitID, currID, mergeID, diff3)) {
+                        ++conflictCount;
+                    }
                     break;
                 case 3:
                     checkoutFileInCommit(mergeHead, file);
@@ -495,7 +698,6 @@ public class Repository {
                 default:
                     break;
             }
-            mergeHead.trackedFiles.remove(file);
         }
         return conflictCount;
 
@@ -507,19 +709,28 @@ public class Repository {
      *
      * @param currentHead the current head commit
      * @param mergeHead   the merge head commit
+     * @param split       the split commit
+     * @param diff3       whether conflicts also show the split point's lines
+     * @param skipped     files already merged as renames
      * @return total number of conflicted files
      */
-    private int cmpMergeFiles(Commit currentHead, Commit mergeHead) {
+    private int cmpMergeFiles(Commit currentHead, Commit mergeHead, Commit split,
+                              boolean diff3, Set<String> skipped) {
 
         int conflictCount = 0;
-        for (String file : mergeHead.trackedFiles.keySet()) {
-            String currID = currentHead.trackedFiles.get(file);
-            String mergeID = mergeHead.trackedFiles.get(file);
+        for (String file : mergeHead.getTrackedFiles().keySet()) {
+            //Files in the split commit were compared already
+            if (split.getTrackedFiles().containsKey(file) || skipped.contains(file)) {
+                continue;
+            }
+            String currID = currentHead.getTrackedFiles().get(file);
+            String mergeID = mergeHead.getTrackedFiles().get(file);
 
             switch (mergeFileStates(null, currID, mergeID)) {
                 case 2:
-                    ++conflictCount;
-                    processConflictedFile(file, currID, mergeID, currentHead, mergeHead);
+                    if (processConflictedFile(file, null, currID, mergeID, diff3)) {
+                        ++conflictCount;
+                    }
                     break;
                 case 4:
                     checkoutFileInCommit(mergeHead, file);
@@ -607,89 +818,332 @@ public class Repository {
     }
 
     /**
-     * Processes a conflicted file encountered during a merge operation
+     * Processes a file changed in both branches during a merge operation,
+     * merging the changes line by line and writing conflict markers around
+     * the regions both branches changed differently. The versions are read
+     * straight from the object store.
      *
-     * @param fileName    the conflicted file
-     * @param currID      the id of the conflicted file in the current head
-     * @param mergeID     the id of the conflicted file in the merge head
-     * @param currentHead the current head commit
-     * @param mergeHead   the merge head commit
+     * @param fileName the file changed in both branches
+     * @param splitID  the id of the file in the split commit, or null
+     * @param currID   the id of the file in the current head, or null
+     * @param mergeID  the id of the file in the merge head, or null
+     * @param diff3    whether conflicts also show the split point's lines
+     * @return whether the merged file has conflicts
      */
-    private void processConflictedFile(String fileName, String currID, String mergeID,
-                                       Commit currentHead, Commit mergeHead) {
-        String currentFileContents = "";
-        String mergeFileContents = "";
+    private boolean processConflictedFile(String fileName, String splitID, String currID,
+                                          String mergeID, boolean diff3) {
+        LineMerge.Result merged = LineMerge.merge(
+                splitID == null ? null : loadFile(splitID),
+                currID == null ? null : loadFile(currID),
+                mergeID == null ? null : loadFile(mergeID), diff3);
+
+        WorkingFiles.makeParentDirs(fileName);
+        writeContents(join(CWD, fileName), merged.contents);
+        add(fileName);
+        return merged.conflict;
+    }
+
+    // ------------------------------- LOG ------------------------------ //
 
-        if (currID != null) {
-            checkoutFileInCommit(currentHead, fileName);
-            File cwdFile = new File(CWD, fileName);
-            currentFileContents = readContentsAsString(cwdFile);
+    /**
+     * Displays commit history of the currently active branch,
+     * following first parents from the head commit. Dates are read
+     * from the commit graph, so only the commits shown are loaded,
+     * and the walk stops at the first commit older than --since.
+     *
+     * @param options log options (see {@link LogPrinter})
+     */
+    public void log(String... options) {
+        LogPrinter printer = LogPrinter.withOptions(Arrays.asList(options));
+        Commit headCommit = loadCurrentHead();
+        CommitWalker walker = new CommitWalker(true).push(headCommit.getID());
+        while (walker.hasNext() && !printer.isFull()) {
+            int position = walker.nextPosition();
+            long date = CommitGraph.dateOf(position);
+            if (printer.isTooOld(date)) {
+                break;
+            }
+            if (printer.inRange(date)) {
+                //Display commit info
+                printer.print(loadCommitWithID(CommitGraph.idAt(position)));
+            }
         }
-        if (mergeID != null) {
-            checkoutFileInCommit(mergeHead, fileName);
-            File cwdFile = new File(CWD, fileName);
-            mergeFileContents = readContentsAsString(cwdFile);
+        printer.flush();
+    }
+
+    // ------------------------------- GLOBAL LOG ------------------------------ //
+
+    /**
+     * Displays commit history of the entire repository across all branches
+     * in no particular order
+     *
+     * @param options log options (see {@link LogPrinter})
+     */
+    public void globalLog(String... options) {
+        LogPrinter printer = LogPrinter.withOptions(Arrays.asList(options));
+        for (String commitID : OBJECTS.allIDs(ObjectStore.COMMIT)) {
+            if (printer.isFull()) {
+                break;
+            }
+            if (printer.inRange(CommitGraph.dateOf(CommitGraph.lookup(commitID)))) {
+                printer.print(loadCommitWithID(commitID));
+            }
         }
+        printer.flush();
+    }
 
-        File file = join(CWD, fileName);
-        String output = "<<<<<<< HEAD\n" + currentFileContents + "=======\n"
-                + mergeFileContents + ">>>>>>>\n";
-        writeContents(file, output);
-        add(fileName);
+    // ------------------------------- DIFF ------------------------------ //
+
+    /**
+     * Shows the line changes between two snapshots as unified diffs: <br>
+     * diff - from the head commit to the working directory <br>
+     * diff [commit] - from the given commit to the working directory <br>
+     * diff [commit] [commit] - from the first commit to the second <br>
+     * Any of these followed by "-- [path]" only compares the given file, or
+     * the files under the given directory. <br><br>
+     * <p>
+     * Files are first compared by their SHA-1 ids, taken from the trees of
+     * commits and from the index for working files, so unchanged files are
+     * never read. The working directory side covers the files tracked by
+     * the old commit and the files staged for addition.
+     *
+     * @param args <br>1. ([commit] [commit]) ([--] [path])</br>
+     */
+    public void diff(String... args) {
+        int separator = Arrays.asList(args).indexOf("--");
+        int commitCount = separator < 0 ? args.length : separator;
+        String path = separator < 0 ? null : args[separator + 1];
+        if (path != null) {
+            path = path.replace(File.separatorChar, '/');
+            while (path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+        }
+
+        Commit oldCommit = commitCount == 0 ? loadCurrentHead() : loadCommitWithID(args[0]);
+        SortedMap<String, String> changes;
+        boolean working = commitCount < 2;
+        if (working) {
+            changes = workingChanges(oldCommit, path);
+        } else {
+            changes = oldCommit.changesTo(loadCommitWithID(args[1]));
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String fileName = change.getKey();
+            if (!inPath(fileName, path)) {
+                continue;
+            }
+            String oldID = oldCommit.getFileID(fileName);
+            byte[] newContents = null;
+            if (change.getValue() != null) {
+                newContents = working ? readContents(join(CWD, fileName))
+                        : loadFile(change.getValue());
+            }
+            Diff.unified(out, fileName, oldID == null ? null : loadFile(oldID), newContents);
+            byte[] bytes = out.toString().getBytes(StandardCharsets.ISO_8859_1);
+            System.out.write(bytes, 0, bytes.length);
+            out.setLength(0);
+        }
+        System.out.flush();
     }
 
-    // ------------------------------- LOG ------------------------------ //
+    // ------------------------------- ADD-REMOTE ------------------------------ //
 
     /**
-     * Displays commit history of the currently active branch
+     * Saves the given repository on this machine as a remote, so that
+     * commits can be pushed to it and fetched from it by name
+     *
+     * @param remoteName the name of the remote
+     * @param path       path of the remote's .gitlet directory, with '/' separators
      */
-    public void log() {
-        Commit headCommit = loadCurrentHead();
-        log(headCommit);
+    public void addRemote(String remoteName, String path) {
+        Remote.add(remoteName, path);
     }
 
+    // ------------------------------- RM-REMOTE ------------------------------ //
+
     /**
-     * Recursively iterate through all commits and print relevant info
+     * Forgets the remote with the given name
+     *
+     * @param remoteName the name of the remote
      */
-    private void log(Commit commit) {
-        if (commit == null) {
-            return;
+    public void removeRemote(String remoteName) {
+        Remote.remove(remoteName);
+    }
+
+    // ------------------------------- PUSH ------------------------------ //
+
+    /**
+     * Appends the commits of the current branch to the given branch of the
+     * remote, creating the branch if the remote does not have it. The
+     * remote branch must be in the history of the current head, so that it
+     * only moves forward.
+     *
+     * @param remoteName   the name of the remote
+     * @param remoteBranch the branch of the remote to push to
+     */
+    public void push(String remoteName, String remoteBranch) {
+        Remote remote = Remote.named(remoteName);
+        Commit currentHead = loadCurrentHead();
+        String remoteHead = remote.branchHead(remoteBranch);
+        if (remoteHead != null && (!OBJECTS.contains(ObjectStore.COMMIT, remoteHead)
+                || !CommitWalker.isAncestor(CommitGraph.lookup(remoteHead),
+                        CommitGraph.lookup(currentHead.getID())))) {
+            throw error("Please pull down remote changes before pushing.");
         }
 
-        //Display commit info
-        commit.printCommitInfo();
-        if (!commit.getParentIDs().isEmpty()) {
-            String commitID = commit.getParentIDs().get(0);
-            //Load first parent commit file from disk
-            File commitFile = new File(join(COMMIT_DIR, commitID.substring(0, 6),
-                    commitID.substring(6)).toString());
-            log(readObject(commitFile, Commit.class));
+        remote.push(currentHead.getID());
+        remote.updateBranch(remoteBranch, remoteHead, currentHead.getID());
+    }
+
+    // ------------------------------- FETCH ------------------------------ //
+
+    /**
+     * Copies the commits of the given branch of the remote that this
+     * repository does not have, and points the branch REMOTE/BRANCH at
+     * the remote branch's head
+     *
+     * @param remoteName   the name of the remote
+     * @param remoteBranch the branch of the remote to fetch
+     */
+    public void fetch(String remoteName, String remoteBranch) {
+        Remote remote = Remote.named(remoteName);
+        String remoteHead = remote.branchHead(remoteBranch);
+        if (remoteHead == null) {
+            throw error("That remote does not have that branch.");
         }
+
+        remote.fetch(remoteHead, 0);
+        String branch = remoteName + "/" + remoteBranch;
+        File branchFile = join(BRANCH_DIR, branch);
+        updateBranch(branch, branchFile.isFile() ? readContentsAsString(branchFile) : null,
+                remoteHead);
     }
 
-    // ------------------------------- GLOBAL LOG ------------------------------ //
+    // ------------------------------- PULL ------------------------------ //
 
     /**
-     * Displays commit history of the entire repository across all branches
-     * in no particular order
+     * Fetches the given branch of the remote and merges it into the
+     * current branch
+     *
+     * @param remoteName   the name of the remote
+     * @param remoteBranch the branch of the remote to pull
      */
-    public void globalLog() {
-        List<String> commitFolders = plainFolderNamesIn(COMMIT_DIR);
-        for (String commitFolder : commitFolders) {
-            List<String> commitFile = plainFilenamesIn(join(COMMIT_DIR, commitFolder));
-            Commit commit = loadCommitWithID(commitFolder + commitFile);
-            commit.printCommitInfo();
+    public void pull(String remoteName, String remoteBranch) {
+        fetch(remoteName, remoteBranch);
+        merge(remoteName + "/" + remoteBranch, false);
+    }
+
+    // ------------------------------- CLONE ------------------------------ //
+
+    /**
+     * Creates a repository in the current directory holding the current
+     * branch of the given repository, saved as the remote "origin". The
+     * branch is checked out under its own name and also kept as
+     * origin/BRANCH. <br><br>
+     * <p>
+     * With --depth N only the last N commits of each line of history are
+     * copied (a shallow clone). With --filter=blob:none no file blobs are
+     * copied (a partial clone); those of the checked out commit are fetched
+     * in one batch, and any other is fetched from the cloned repository the
+     * first time it is needed.
+     *
+     * @param args [--depth N] [--filter=blob:none] and the path of the .gitlet
+     *             directory to clone, with '/' separators
+     */
+    public void clone(String... args) {
+        List<String> options = Arrays.asList(args);
+        String path = args[args.length - 1];
+        int depthIndex = options.indexOf("--depth");
+        int depth = depthIndex < 0 ? 0 : Integer.parseInt(args[depthIndex + 1]);
+        boolean partial = options.contains("--filter=blob:none");
+        if (GITLET_DIR.exists()) {
+            throw error("A Gitlet version-control system already "
+                    + "exists in the current directory.");
         }
+        File remoteDir = new File(path.replace("/", File.separator));
+        Remote remote = new Remote(remoteDir.isAbsolute() ? remoteDir : join(CWD, remoteDir.getPath()));
+        String branch = remote.currentBranch();
+        String headID = remote.branchHead(branch);
+        Map<String, String> files = remote.trackedFiles(headID);
+        for (String fileName : files.keySet()) {
+            if (join(CWD, fileName).exists()) {
+                throw error("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+            }
+        }
+
+        currentBranch = branch;
+        setupPersistence();
+        Remote.add("origin", path);
+        if (partial) {
+            OBJECTS.setPromisor(remote.gitletDir());
+        }
+        remote.fetch(headID, depth);
+        updateBranch("origin/" + branch, null, headID);
+        updateBranch(branch, null, headID);
+
+        WorkingFiles.write(files);
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            FileIndex.update(file.getKey(), file.getValue());
+        }
+        FileIndex.save();
+    }
+
+    // ------------------------------- GC ------------------------------ //
+
+    /**
+     * Packs all loose objects into a single pack file so that later
+     * commands read them through the pack index, and folds commits made
+     * since the last gc into the commit graph file
+     */
+    public void gc() {
+        RepoLock lock = RepoLock.acquire(RepoLock.GC);
+        try {
+            OBJECTS.repack();
+        } finally {
+            lock.close();
+        }
+        CommitGraph.write();
+    }
+
+    // ------------------------------- MIGRATE ------------------------------ //
+
+    /**
+     * Rewrites commits saved with Java serialization by earlier versions of
+     * gitlet in the binary commit format, building trees for commits that
+     * track a flat map of files. Commits keep their ids, so branches and
+     * parent links stay valid. The repository is repacked afterwards.
+     */
+    public void migrate() {
+        int migrated = 0;
+        for (String commitID : OBJECTS.allIDs(ObjectStore.COMMIT)) {
+            byte[] contents = OBJECTS.read(ObjectStore.COMMIT, commitID);
+            if (CommitCodec.isEncoded(contents)) {
+                continue;
+            }
+            Commit commit = CommitCodec.decode(commitID, contents).withTree();
+            OBJECTS.replace(ObjectStore.COMMIT, commitID, CommitCodec.encode(commit));
+            ++migrated;
+        }
+        gc();
+        message("Migrated %d commits.", migrated);
     }
 
     // ------------------------------- STATUS ------------------------------ //
 
     /**
      * Display the current status of the git repository
+     *
+     * @param renames whether files staged for removal and files newly staged
+     *                for addition with the same or similar contents are
+     *                shown as renames
      */
-    public void status() {
+    public void status(boolean renames) {
         System.out.println("=== Branches ===");
-        List<String> branches = plainFilenamesIn(BRANCH_DIR);
+        List<String> branches = branchNames();
         loadCurrentBranchVar();
         for (String branch : branches) {
             if (branch.equals(currentBranch)) {
@@ -699,8 +1153,17 @@ public class Repository {
         }
         System.out.println();
 
+        Map<String, String> renamedFiles = new HashMap<>();
+        if (renames) {
+            renamedFiles = stagedRenames();
+        }
+
         System.out.println("=== Staged Files ===");
         List<String> sortedFiles = new ArrayList<>(getFilesStagedForAddition().keySet());
+        sortedFiles.removeAll(renamedFiles.values());
+        for (Map.Entry<String, String> rename : renamedFiles.entrySet()) {
+            sortedFiles.add(rename.getKey() + " -> " + rename.getValue());
+        }
         Collections.sort(sortedFiles);
         for (String file : sortedFiles) {
             System.out.println(file);
@@ -709,6 +1172,7 @@ public class Repository {
 
         System.out.println("=== Removed Files ===");
         sortedFiles = new ArrayList<>(getFilesStagedForRemoval());
+        sortedFiles.removeAll(renamedFiles.keySet());
         Collections.sort(sortedFiles);
         for (String file : sortedFiles) {
             System.out.println(file);
@@ -716,48 +1180,42 @@ public class Repository {
         System.out.println();
 
         System.out.println("=== Modifications Not Staged For Commit ===");
+        //Files are compared through the index, so only files whose stat
+        //changed since they were last hashed are read
         SortedSet<String> modifiedFiles = new TreeSet<>();
         Map<String, String> stagedFiles = getFilesStagedForAddition();
+        List<String> removedFiles = getFilesStagedForRemoval();
         Commit headCommit = loadCurrentHead();
-        for (String file : headCommit.trackedFiles.keySet()) {
-            File cwdFile = new File(CWD, file);
-            if (cwdFile.exists()) {
-                String fileContent = readContentsAsString(cwdFile);
-                String fileID = sha1(fileContent);
-                //File tracked by current commit, modified in CWD and not staged
-                if (!fileID.equals(headCommit.trackedFiles.get(file))
-                        && !stagedFiles.containsKey(file)) {
-                    modifiedFiles.add(file + " (modified)");
-                }
-                //File tracked by current commit, removed from CWD and not staged for removal
-            } else if (!getFilesStagedForRemoval().contains(file)) {
-                modifiedFiles.add(file + " (deleted)");
-            }
-        }
-        for (String file : stagedFiles.keySet()) {
+        SortedSet<String> knownFiles = new TreeSet<>(headCommit.getTrackedFiles().keySet());
+        knownFiles.addAll(stagedFiles.keySet());
+        for (String file : knownFiles) {
+            //Staged version takes precedence over the head commit version
+            String expectedID = stagedFiles.containsKey(file)
+                    ? stagedFiles.get(file) : headCommit.getFileID(file);
             File cwdFile = new File(CWD, file);
             if (cwdFile.exists()) {
-                String fileContent = readContentsAsString(cwdFile);
-                String fileID = sha1(fileContent);
-                //File staged and then modified differently in CWD
-                if (!fileID.equals(stagedFiles.get(file))) {
+                //Tracked or staged, then modified differently in CWD
+                if (!FileIndex.fileID(file).equals(expectedID)) {
                     modifiedFiles.add(file + " (modified)");
                 }
-                //File staged and then removed from CWD
-            } else {
+                //Staged, or tracked and not staged for removal, then removed from CWD
+            } else if (stagedFiles.containsKey(file) || !removedFiles.contains(file)) {
                 modifiedFiles.add(file + " (deleted)");
             }
         }
+        FileIndex.save();
         for (String file : modifiedFiles) {
             System.out.println(file);
         }
         System.out.println();
 
         System.out.println("=== Untracked Files ===");
-        List<String> cwdFiles = plainFilenamesIn(CWD);
+        List<String> cwdFiles = WorkingFiles.list();
         if (cwdFiles != null) {
             for (String file : cwdFiles) {
-                if (!headCommit.trackedFiles.containsKey(file) && !stagedFiles.containsKey(file)) {
+                //Neither staged nor tracked, or staged for removal and then re-created
+                if ((!headCommit.getTrackedFiles().containsKey(file) && !stagedFiles.containsKey(file))
+                        || removedFiles.contains(file)) {
                     System.out.println(file);
                 }
             }
@@ -765,6 +1223,23 @@ public class Repository {
         System.out.println();
     }
 
+    /**
+     * Returns the files staged for removal that were renamed to
+     * files staged for addition and not tracked by the head commit
+     *
+     * @return map of old file names to new file names
+     */
+    private Map<String, String> stagedRenames() {
+        Commit headCommit = loadCurrentHead();
+        Map<String, String> deleted = new HashMap<>();
+        for (String file : getFilesStagedForRemoval()) {
+            deleted.put(file, headCommit.getFileID(file));
+        }
+        Map<String, String> added = new HashMap<>(getFilesStagedForAddition());
+        added.keySet().removeAll(headCommit.getTrackedFiles().keySet());
+        return Renames.detect(deleted, added);
+    }
+
     /**
      * Checks for any untracked files in current head commit
      * that can potentially be overwritten or removed by
@@ -774,19 +1249,65 @@ public class Repository {
      * @param givenHead   the commit to check with
      */
     private void checkUntrackedFiles(Commit currentHead, Commit givenHead) {
-        List<String> cwdFiles = plainFilenamesIn(CWD);
+        List<String> cwdFiles = WorkingFiles.list();
         if (cwdFiles != null) {
             for (String file : cwdFiles) {
-                if (!currentHead.trackedFiles.containsKey(file)
-                        && givenHead.trackedFiles.containsKey(file)) {
-                    message("There is an untracked file in the way; delete it, "
+                if (!currentHead.getTrackedFiles().containsKey(file)
+                        && givenHead.getTrackedFiles().containsKey(file)) {
+                    throw error("There is an untracked file in the way; delete it, "
                             + "or add and commit it first.");
-                    System.exit(0);
                 }
             }
         }
     }
 
+    /**
+     * Returns the working files that differ from the given commit, with
+     * their current ids, or null ids for files deleted from the working
+     * directory. Only files whose stat changed since they were indexed are
+     * hashed.
+     *
+     * @param commit the commit to compare with
+     * @param path   only files at or under this path are compared, or null for all
+     * @return map of changed file names to their working ids
+     */
+    private SortedMap<String, String> workingChanges(Commit commit, String path) {
+        SortedSet<String> fileNames = new TreeSet<>(commit.getTrackedFiles().keySet());
+        fileNames.addAll(getFilesStagedForAddition().keySet());
+
+        SortedMap<String, String> changes = new TreeMap<>();
+        for (String fileName : fileNames) {
+            if (!inPath(fileName, path)) {
+                continue;
+            }
+            String oldID = commit.getFileID(fileName);
+            if (!join(CWD, fileName).isFile()) {
+                if (oldID != null) {
+                    changes.put(fileName, null);
+                }
+                continue;
+            }
+            String id = FileIndex.fileID(fileName);
+            if (!id.equals(oldID)) {
+                changes.put(fileName, id);
+            }
+        }
+        FileIndex.save();
+        return changes;
+    }
+
+    /**
+     * Returns true if the given file is the given path or under it
+     *
+     * @param fileName the file
+     * @param path     a file or directory, or null to match every file
+     * @return whether the file is at or under the path
+     */
+    private boolean inPath(String fileName, String path) {
+        return path == null || path.isEmpty() || path.equals(".") || fileName.equals(path)
+                || fileName.startsWith(path + "/");
+    }
+
     /**
      * Checks if a gitlet repository has been made
      * and informs the user to make one first if it doesn't exist
@@ -795,8 +1316,7 @@ public class Repository {
         File gitletDir = new File(GITLET_DIR.toString());
         //Check repo exists
         if (!gitletDir.exists()) {
-            message("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw error("Not in an initialized Gitlet directory.");
         }
     }
 }
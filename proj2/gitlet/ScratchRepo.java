@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/**
+ * A repository in a temporary directory for tests. Each gitlet command is
+ * run in a process of its own, as a user would run it, so tests can look
+ * at, damage or race on the files the commands leave behind.
+ *
+ * @author Rishabh Choudhury
+ */
+class ScratchRepo {
+    /**
+     * The java launcher of the running JVM
+     */
+    private static final String JAVA = Paths.get(System.getProperty("java.home"),
+            "bin", "java").toString();
+
+    /**
+     * The working directory of the repository
+     */
+    private final File dir;
+    /**
+     * System properties every command runs with, as -Dname=value options
+     */
+    private final List<String> options = new ArrayList<>();
+
+    /**
+     * Creates a repository helper for the given directory
+     *
+     * @param dir an empty directory, which becomes the working directory
+     */
+    ScratchRepo(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Runs every later command with the given system property set
+     *
+     * @param name  the property
+     * @param value its value
+     */
+    void property(String name, String value) {
+        options.add("-D" + name + "=" + value);
+    }
+
+    /**
+     * Starts a gitlet command without waiting for it
+     *
+     * @param args the command and its operands
+     * @return the running process, with standard error merged into its output
+     */
+    Process start(String... args) {
+        List<String> command = new ArrayList<>(List.of(JAVA, "-cp",
+                System.getProperty("java.class.path")));
+        command.addAll(options);
+        command.add("gitlet.Main");
+        command.addAll(Arrays.asList(args));
+        try {
+            return new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /**
+     * Runs a gitlet command and returns what it printed
+     *
+     * @param args the command and its operands
+     * @return standard output and error of the command
+     */
+    String run(String... args) {
+        return output(start(args));
+    }
+
+    /**
+     * Waits for a started command and returns what it printed
+     *
+     * @param process the process of the command
+     * @return standard output and error of the command
+     */
+    static String output(Process process) {
+        try {
+            String out = new String(process.getInputStream().readAllBytes(),
+                    StandardCharsets.UTF_8);
+            process.waitFor();
+            return out;
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /**
+     * Returns a file of the repository
+     *
+     * @param name path relative to the working directory, such as ".gitlet/index"
+     * @return the file
+     */
+    File file(String name) {
+        return join(dir, name);
+    }
+
+    /**
+     * Writes a working file
+     *
+     * @param name     path relative to the working directory
+     * @param contents the text to write
+     */
+    void write(String name, String contents) {
+        File file = file(name);
+        file.getParentFile().mkdirs();
+        writeContents(file, contents);
+    }
+}
@@ -0,0 +1,535 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Helper.OBJECTS;
+import static gitlet.Helper.loadCommitWithID;
+import static gitlet.Repository.SEARCH_DIR;
+import static gitlet.Utils.*;
+
+/**
+ * An on-disk inverted index of commit messages, so that find reads the
+ * postings of the words it looks for instead of every commit. <br><br>
+ * <p>
+ * Every commit is indexed under three kinds of keys: <br>
+ * "m:" + SHA-1 of the whole message - for exact queries <br>
+ * "t:" + each lower case word of the message - for word queries <br>
+ * "g:" + each lower case trigram of the message - for substring queries,
+ * whose candidates are then checked against the message itself <br><br>
+ * <p>
+ * Keys are spread over {@code BUCKETS} buckets by their hash. Each bucket
+ * has a postings file, which lists its keys sorted with an offset table so
+ * that a lookup binary searches it, and an append-only log of the records
+ * added since, to which indexing a commit appends one batch per bucket it
+ * touches. A log that grows past {@code MAX_LOG} bytes is merged into the
+ * postings file, so a lookup never reads more than that of unsorted
+ * records. <br><br>
+ * <p>
+ * Postings file layout ("xx.keys"): <br>
+ * "GSIP" | version (int) | key count (int) | key offset (int)* | entry* <br>
+ * entry = key length (short) | key (UTF-8) | id count (int) | commit id (20 bytes)* <br>
+ * where keys are sorted and offsets count from the start of the file <br><br>
+ * <p>
+ * Log layout ("xx"): <br>
+ * "GSIX" | version (int) | record* <br>
+ * record = key (UTF) | commit id (20 bytes) <br><br>
+ * <p>
+ * Logs are appended to and merged under the SEARCH_INDEX lock. A record
+ * cut short by a crash is ignored by lookups and cut off by the next
+ * append, as for the staging journal and the commit graph tail. <br><br>
+ * <p>
+ * New repositories are indexed from their first commit. Repositories made
+ * before the index existed are indexed in full the first time they are
+ * searched.
+ *
+ * @author Rishabh Choudhury
+ */
+class SearchIndex {
+    /**
+     * Magic bytes at the start of every bucket file
+     */
+    private static final byte[] MAGIC = {'G', 'S', 'I', 'X'};
+    /**
+     * Magic bytes at the start of every postings file
+     */
+    private static final byte[] POSTINGS_MAGIC = {'G', 'S', 'I', 'P'};
+    /**
+     * Current bucket format version
+     */
+    private static final int VERSION = 1;
+    /**
+     * Size of the magic bytes, version and count at the start of a file
+     */
+    private static final int HEADER_SIZE = 12;
+    /**
+     * Longest a bucket log grows, in bytes, before it is merged into the
+     * postings file. It is set with the system property {@code gitlet.searchLog}.
+     */
+    private static final int MAX_LOG = Integer.getInteger("gitlet.searchLog", 64 * 1024);
+    /**
+     * Number of bucket files
+     */
+    private static final int BUCKETS = 256;
+    /**
+     * Length of a raw SHA-1 id in bytes
+     */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    /**
+     * Length of the grams used for substring queries
+     */
+    private static final int GRAM = 3;
+    /**
+     * Longest word that is indexed
+     */
+    private static final int MAX_WORD = 1000;
+
+    /**
+     * Adds a newly saved commit to the index, if the repository has one
+     *
+     * @param commit the commit, with its id set
+     */
+    static void add(Commit commit) {
+        if (SEARCH_DIR.isDirectory()) {
+            Map<Integer, ByteArrayOutputStream> records = new TreeMap<>();
+            addRecords(records, commit);
+            append(records);
+        }
+    }
+
+    /**
+     * Adds commits copied into a repository to that repository's index,
+     * if it has one
+     *
+     * @param gitletDir the .gitlet directory of the repository
+     * @param commits   the copied commits
+     */
+    static void addTo(File gitletDir, List<Commit> commits) {
+        File dir = join(gitletDir, SEARCH_DIR.getName());
+        if (dir.isDirectory()) {
+            Map<Integer, ByteArrayOutputStream> records = new TreeMap<>();
+            for (Commit commit : commits) {
+                addRecords(records, commit);
+            }
+            append(records, dir);
+        }
+    }
+
+    /**
+     * Returns the commits whose message is exactly the given one
+     *
+     * @param message the message to look for
+     * @return sorted ids of matching commits
+     */
+    static SortedSet<String> findExact(String message) {
+        return lookup("m:" + sha1(message));
+    }
+
+    /**
+     * Returns the commits whose message contains every word of the query,
+     * ignoring case
+     *
+     * @param query one or more words
+     * @return sorted ids of matching commits
+     */
+    static SortedSet<String> findWords(String query) {
+        SortedSet<String> matches = null;
+        for (String word : words(query)) {
+            matches = intersect(matches, lookup("t:" + word));
+        }
+        return matches == null ? new TreeSet<>() : matches;
+    }
+
+    /**
+     * Returns the commits whose message contains the given text
+     *
+     * @param text the text to look for
+     * @return sorted ids of matching commits
+     */
+    static SortedSet<String> findSubstring(String text) {
+        SortedSet<String> candidates = null;
+        for (String gram : grams(text)) {
+            candidates = intersect(candidates, lookup("g:" + gram));
+        }
+        //Text too short to have grams matches any commit
+        if (candidates == null) {
+            ensureBuilt();
+            candidates = new TreeSet<>(OBJECTS.allIDs(ObjectStore.COMMIT));
+        }
+        candidates.removeIf(id -> !loadCommitWithID(id).getMessage().contains(text));
+        return candidates;
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Returns the ids recorded under the given key
+     */
+    private static SortedSet<String> lookup(String key) {
+        ensureBuilt();
+        int bucket = bucketOf(key);
+        Map<String, SortedSet<String>> postings = new TreeMap<>();
+        //The log is read before the postings: a merge writes the postings
+        //before it empties the log, so records are seen in one or the other
+        readLog(logFile(SEARCH_DIR, bucket), key, postings);
+        readPostings(postingsFile(SEARCH_DIR, bucket), key, postings);
+        return postings.getOrDefault(key, new TreeSet<>());
+    }
+
+    /**
+     * Adds the ids the given postings file lists under the given key, or
+     * under every key if key is null, to postings
+     */
+    private static void readPostings(File file, String key,
+                                     Map<String, SortedSet<String>> postings) {
+        if (!file.isFile()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[POSTINGS_MAGIC.length];
+            buf.get(0, magic);
+            if (!Arrays.equals(magic, POSTINGS_MAGIC) || buf.getInt(4) != VERSION) {
+                throw error("Corrupt search index %s", file);
+            }
+            int count = buf.getInt(8);
+            if (key == null) {
+                for (int i = 0; i < count; i++) {
+                    readEntry(buf, buf.getInt(HEADER_SIZE + i * 4), postings);
+                }
+                return;
+            }
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int offset = buf.getInt(HEADER_SIZE + mid * 4);
+                int cmp = keyAt(buf, offset).compareTo(key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    readEntry(buf, offset, postings);
+                    return;
+                }
+            }
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw error("Cannot read search index %s", file);
+        }
+    }
+
+    /**
+     * Returns the key of the postings entry at the given offset
+     */
+    private static String keyAt(ByteBuffer buf, int offset) {
+        byte[] key = new byte[buf.getShort(offset) & 0xFFFF];
+        buf.get(offset + 2, key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds the key and ids of the postings entry at the given offset to postings
+     */
+    private static void readEntry(ByteBuffer buf, int offset,
+                                  Map<String, SortedSet<String>> postings) {
+        String key = keyAt(buf, offset);
+        SortedSet<String> ids = postings.computeIfAbsent(key, k -> new TreeSet<>());
+        int position = offset + 2 + (buf.getShort(offset) & 0xFFFF);
+        int count = buf.getInt(position);
+        byte[] id = new byte[ID_BYTES];
+        for (int i = 0; i < count; i++) {
+            buf.get(position + 4 + i * ID_BYTES, id);
+            ids.add(toHex(id));
+        }
+    }
+
+    /**
+     * Adds the ids the complete records of the given log list under the
+     * given key, or under every key if key is null, to postings, unless
+     * postings is null
+     *
+     * @return length of the log up to the end of its last complete record,
+     * or 0 if not even its header is complete
+     */
+    private static long readLog(File log, String key, Map<String, SortedSet<String>> postings) {
+        if (!log.isFile()) {
+            return 0;
+        }
+        byte[] bytes = readContents(log);
+        ByteArrayInputStream buf = new ByteArrayInputStream(bytes);
+        long complete = 0;
+        try (DataInputStream in = new DataInputStream(buf)) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                throw error("Corrupt search index %s", log);
+            }
+            complete = bytes.length - buf.available();
+            byte[] id = new byte[ID_BYTES];
+            while (true) {
+                String recordKey = in.readUTF();
+                in.readFully(id);
+                if (postings != null && (key == null || recordKey.equals(key))) {
+                    postings.computeIfAbsent(recordKey, k -> new TreeSet<>()).add(toHex(id));
+                }
+                complete = bytes.length - buf.available();
+            }
+        } catch (EOFException excp) {
+            //End of the log, or a record cut short by a crash
+        } catch (IOException excp) {
+            throw error("Cannot read search index: %s", excp.getMessage());
+        }
+        return complete;
+    }
+
+    /**
+     * Indexes every commit in the repository if it has no index yet
+     */
+    private static void ensureBuilt() {
+        if (SEARCH_DIR.isDirectory()) {
+            return;
+        }
+        //Built without a lock by commands that only read, so the name is per process
+        File tmp = new File(SEARCH_DIR.getParentFile(), SEARCH_DIR.getName() + ".tmp-"
+                + ProcessHandle.current().pid());
+        if (tmp.isDirectory()) {
+            for (File file : tmp.listFiles()) {
+                file.delete();
+            }
+        }
+        tmp.mkdir();
+
+        //Build into a temporary directory that only becomes the index once complete
+        Map<Integer, Map<String, SortedSet<String>>> buckets = new TreeMap<>();
+        for (String commitID : OBJECTS.allIDs(ObjectStore.COMMIT)) {
+            for (String key : keys(loadCommitWithID(commitID).getMessage())) {
+                buckets.computeIfAbsent(bucketOf(key), b -> new TreeMap<>())
+                        .computeIfAbsent(key, k -> new TreeSet<>()).add(commitID);
+            }
+        }
+        for (Map.Entry<Integer, Map<String, SortedSet<String>>> bucket : buckets.entrySet()) {
+            File file = postingsFile(tmp, bucket.getKey());
+            try {
+                Files.write(file.toPath(), encodePostings(bucket.getValue()));
+            } catch (IOException excp) {
+                throw error("Cannot write search index: %s", excp.getMessage());
+            }
+        }
+        if (!tmp.renameTo(SEARCH_DIR)) {
+            //Another process built the index first
+            for (File file : tmp.listFiles()) {
+                file.delete();
+            }
+            tmp.delete();
+            if (!SEARCH_DIR.isDirectory()) {
+                throw error("Cannot write search index");
+            }
+        }
+    }
+
+    /**
+     * Adds the index records of the given commit to the per bucket batches
+     */
+    private static void addRecords(Map<Integer, ByteArrayOutputStream> records, Commit commit) {
+        byte[] id = fromHex(commit.getID());
+        for (String key : keys(commit.getMessage())) {
+            ByteArrayOutputStream bucket = records.computeIfAbsent(bucketOf(key),
+                    b -> new ByteArrayOutputStream());
+            try (DataOutputStream out = new DataOutputStream(bucket)) {
+                out.writeUTF(key);
+                out.write(id);
+            } catch (IOException excp) {
+                throw error("Cannot write search index: %s", excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Appends the batched records to the bucket files of the index
+     */
+    private static void append(Map<Integer, ByteArrayOutputStream> records) {
+        append(records, SEARCH_DIR);
+    }
+
+    /**
+     * Appends the batched records to the bucket logs in the given directory,
+     * merging logs that grow too long into their postings files
+     */
+    private static void append(Map<Integer, ByteArrayOutputStream> records, File dir) {
+        RepoLock lock = RepoLock.acquire(dir.getParentFile(), RepoLock.SEARCH_INDEX);
+        try {
+            for (Map.Entry<Integer, ByteArrayOutputStream> batch : records.entrySet()) {
+                File log = logFile(dir, batch.getKey());
+                //Records go after the last complete record, over any torn one
+                long end = readLog(log, null, null);
+                try (FileChannel channel = FileChannel.open(log.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (DataOutputStream out = new DataOutputStream(bytes)) {
+                        if (end == 0) {
+                            out.write(MAGIC);
+                            out.writeInt(VERSION);
+                        }
+                        batch.getValue().writeTo(out);
+                    }
+                    ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+                    while (buf.hasRemaining()) {
+                        end += channel.write(buf, end);
+                    }
+                } catch (IOException excp) {
+                    throw error("Cannot write search index: %s", excp.getMessage());
+                }
+                if (end > MAX_LOG) {
+                    merge(dir, batch.getKey());
+                }
+            }
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Merges the log of the given bucket into its postings file and empties
+     * the log. A crash in between leaves records in both, which lookups
+     * return once and the next merge drops.
+     */
+    private static void merge(File dir, int bucket) {
+        File log = logFile(dir, bucket);
+        File file = postingsFile(dir, bucket);
+        Map<String, SortedSet<String>> postings = new TreeMap<>();
+        readPostings(file, null, postings);
+        readLog(log, null, postings);
+        DurableFiles.write(file, encodePostings(postings));
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(header)) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+        } catch (IOException excp) {
+            throw error("Cannot write search index: %s", excp.getMessage());
+        }
+        DurableFiles.write(log, header.toByteArray());
+    }
+
+    /**
+     * Returns the contents of a postings file listing the given postings
+     *
+     * @param postings ids keyed by key, in key order
+     */
+    private static byte[] encodePostings(Map<String, SortedSet<String>> postings) {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int start = HEADER_SIZE + postings.size() * 4;
+        try (DataOutputStream out = new DataOutputStream(bytes);
+             DataOutputStream entryOut = new DataOutputStream(entries)) {
+            out.write(POSTINGS_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(postings.size());
+            for (Map.Entry<String, SortedSet<String>> entry : postings.entrySet()) {
+                out.writeInt(start + entryOut.size());
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                entryOut.writeShort(key.length);
+                entryOut.write(key);
+                entryOut.writeInt(entry.getValue().size());
+                for (String id : entry.getValue()) {
+                    entryOut.write(fromHex(id));
+                }
+            }
+            entryOut.flush();
+            entries.writeTo(out);
+        } catch (IOException excp) {
+            throw error("Cannot write search index: %s", excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the keys a commit with the given message is indexed under
+     */
+    private static SortedSet<String> keys(String message) {
+        SortedSet<String> keys = new TreeSet<>();
+        keys.add("m:" + sha1(message));
+        for (String word : words(message)) {
+            keys.add("t:" + word);
+        }
+        for (String gram : grams(message)) {
+            keys.add("g:" + gram);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the distinct lower case words of the given text
+     */
+    private static SortedSet<String> words(String text) {
+        SortedSet<String> words = new TreeSet<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && word.length() <= MAX_WORD) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Returns the distinct lower case trigrams of the given text
+     */
+    private static SortedSet<String> grams(String text) {
+        String lower = text.toLowerCase();
+        SortedSet<String> grams = new TreeSet<>();
+        for (int i = 0; i + GRAM <= lower.length(); i++) {
+            grams.add(lower.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    /**
+     * Returns the ids in both sets, or the second set if the first is null
+     */
+    private static SortedSet<String> intersect(SortedSet<String> a, SortedSet<String> b) {
+        if (a == null) {
+            return b;
+        }
+        a.retainAll(b);
+        return a;
+    }
+
+    /**
+     * Returns the bucket holding the given key
+     */
+    private static int bucketOf(String key) {
+        return Math.floorMod(key.hashCode(), BUCKETS);
+    }
+
+    /**
+     * Returns the log of the given bucket in the given index directory
+     */
+    private static File logFile(File dir, int bucket) {
+        return join(dir, String.format("%02x", bucket));
+    }
+
+    /**
+     * Returns the postings file of the given bucket in the given index directory
+     */
+    private static File postingsFile(File dir, int bucket) {
+        return join(dir, String.format("%02x.keys", bucket));
+    }
+}
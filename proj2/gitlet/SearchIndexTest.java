@@ -0,0 +1,136 @@
+package gitlet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+import static gitlet.Utils.*;
+
+/**
+ * Tests of the search index used by find, run on repositories in temporary directories
+ *
+ * @author Rishabh Choudhury
+ */
+public class SearchIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * The repository under test
+     */
+    private ScratchRepo repo;
+    /**
+     * Number of commits made by commit
+     */
+    private int commits;
+
+    @Before
+    public void setUp() {
+        repo = new ScratchRepo(tmp.getRoot());
+        repo.run("init");
+    }
+
+    /**
+     * Commits a new file with the given message and returns the id of the commit
+     */
+    private String commit(String message) {
+        commits++;
+        repo.write("f" + commits + ".txt", commits + "\n");
+        repo.run("add", "f" + commits + ".txt");
+        assertEquals("", repo.run("commit", message));
+        return repo.run("log").split("\n")[1].substring("commit ".length());
+    }
+
+    /**
+     * Returns the commits find prints for the given query, sorted
+     */
+    private List<String> find(String... query) {
+        List<String> args = new ArrayList<>(List.of("find"));
+        args.addAll(Arrays.asList(query));
+        String output = repo.run(args.toArray(new String[0]));
+        if (output.equals("Found no commit with that message.\n")) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(new TreeSet<>(Arrays.asList(output.split("\n"))));
+    }
+
+    /**
+     * Returns the given ids, sorted
+     */
+    private static List<String> sorted(String... ids) {
+        return new ArrayList<>(new TreeSet<>(Arrays.asList(ids)));
+    }
+
+    /**
+     * Checks the results of find on the commits made by messagesTest
+     */
+    private void checkFind(String[] parser, String[] docs) {
+        assertEquals(sorted(parser), find("--words", "PARSER fix"));
+        assertEquals(sorted(docs[0], docs[2]), find("update docs for release 0"));
+        assertEquals(sorted(docs), find("--substring", "ocs for rel"));
+        assertEquals(sorted(parser[1]), find("--words", "parser 1"));
+        assertTrue(find("--words", "parser docs").isEmpty());
+    }
+
+    @Test
+    /* Checks that queries see postings merged from logs, still in logs and rebuilt from scratch */
+    public void mergeTest() {
+        //Logs this short are merged into the postings files every few commits
+        repo.property("gitlet.searchLog", "100");
+        String[] parser = new String[4];
+        String[] docs = new String[3];
+        for (int i = 0; i < 4; i++) {
+            parser[i] = commit("fix parser bug " + i);
+            if (i < 3) {
+                docs[i] = commit("update docs for release " + (i % 2));
+            }
+        }
+        File search = repo.file(".gitlet/search");
+        assertTrue(plainFilenamesIn(search).stream().anyMatch(name -> name.endsWith(".keys")));
+        checkFind(parser, docs);
+
+        //An index built in full holds postings files only
+        for (File file : search.listFiles()) {
+            assertTrue(file.delete());
+        }
+        assertTrue(search.delete());
+        checkFind(parser, docs);
+        assertTrue(plainFilenamesIn(search).stream().allMatch(name -> name.endsWith(".keys")));
+        String later = commit("fix parser bug 4");
+        assertEquals(5, find("--words", "parser").size());
+        assertEquals(sorted(later), find("fix parser bug 4"));
+    }
+
+    @Test
+    /* Checks that a log record cut short by a crash is cut off by the next append */
+    public void tornLogTest() throws IOException {
+        commit("fix parser bug");
+        File largest = null;
+        for (File file : repo.file(".gitlet/search").listFiles()) {
+            if (largest == null || file.length() > largest.length()) {
+                largest = file;
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(largest, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        String again = commit("fix parser bug");
+        String other = commit("fix parser bug too");
+        List<String> found = find("--words", "parser bug");
+        assertTrue(found.contains(again));
+        assertTrue(found.contains(other));
+        assertTrue(find("fix parser bug").contains(again));
+        assertEquals(sorted(other), find("fix parser bug too"));
+    }
+}
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Repository.SHALLOW_FILE;
+import static gitlet.Utils.*;
+
+/**
+ * The commits of a shallow clone whose parents were not copied. <br><br>
+ * <p>
+ * A commit keeps the ids of its parents, since they are part of its own
+ * id, so the commits at the edge of a shallow history still name parents
+ * that the repository does not have. Their ids are listed in
+ * .gitlet/shallow, one per line, and history walks treat them as root
+ * commits: the commit graph records them without parents, and transfers
+ * never look past them.
+ *
+ * @author Rishabh Choudhury
+ */
+class Shallow {
+    /**
+     * Shallow commits of this repository, loaded on first use
+     */
+    private static Set<String> commits;
+
+    /**
+     * Returns true if the given commit of this repository has no parents
+     * in the repository
+     *
+     * @param commitID full SHA-1 id of the commit
+     * @return whether the commit is shallow
+     */
+    static boolean contains(String commitID) {
+        if (commits == null) {
+            commits = read(SHALLOW_FILE.getParentFile());
+        }
+        return commits.contains(commitID);
+    }
+
+    /**
+     * Returns the parents of the given commit of this repository that
+     * history walks should follow
+     *
+     * @param commit the commit
+     * @return parent ids, empty for a shallow commit
+     */
+    static List<String> parentIDs(Commit commit) {
+        return contains(commit.getID()) ? Collections.emptyList() : commit.getParentIDs();
+    }
+
+    /**
+     * Returns the shallow commits of the given repository
+     *
+     * @param gitletDir the .gitlet directory of the repository
+     * @return ids of the shallow commits
+     */
+    static Set<String> read(File gitletDir) {
+        Set<String> ids = new TreeSet<>();
+        File shallowFile = join(gitletDir, SHALLOW_FILE.getName());
+        if (shallowFile.isFile()) {
+            for (String line : readContentsAsString(shallowFile).split("\n")) {
+                if (!line.isEmpty()) {
+                    ids.add(line);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Marks commits of the given repository as shallow
+     *
+     * @param gitletDir the .gitlet directory of the repository
+     * @param commitIDs full SHA-1 ids of the commits
+     */
+    static void add(File gitletDir, Collection<String> commitIDs) {
+        if (commitIDs.isEmpty()) {
+            return;
+        }
+        Set<String> ids = read(gitletDir);
+        ids.addAll(commitIDs);
+        StringBuilder contents = new StringBuilder();
+        for (String id : ids) {
+            contents.append(id).append('\n');
+        }
+        DurableFiles.write(join(gitletDir, SHALLOW_FILE.getName()), contents.toString());
+        invalidate();
+    }
+
+    /**
+     * Forgets the loaded shallow commits, so that the file is read again
+     * when next used
+     */
+    static void invalidate() {
+        commits = null;
+    }
+}
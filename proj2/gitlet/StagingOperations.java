@@ -1,35 +1,114 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.HashMap;
 import java.util.Map;
 
-import static gitlet.Repository.CWD;
 import static gitlet.Repository.STAGING_DIR;
 import static gitlet.Utils.*;
 
 /**
- * Performs all gitlet file staging operations
+ * Performs all gitlet file staging operations <br><br>
+ * <p>
+ * The staging area is kept in an append-only binary journal. Every staging
+ * operation appends a single record instead of rewriting the whole staging
+ * area, and the journal is replayed once per command into an in-process copy
+ * that all later queries are answered from. Clearing the staging area, or
+ * replaying a journal that has grown much longer than the staging area it
+ * describes, rewrites the journal as a snapshot. <br><br>
+ * <p>
+ * Journal layout: <br>
+ * "GSTG" | version (int) | record* <br>
+ * record = ADD name (UTF) id (20 bytes) | REMOVE name (UTF) | UNSTAGE name (UTF)
  *
  * @author Rishabh Choudhury
  */
 
 public class StagingOperations implements Serializable, Dumpable {
     /**
-     * File stores references to files marked for tracking / removal
+     * Serialization version, fixed so that staging files written by
+     * earlier versions of this class can still be read
+     */
+    private static final long serialVersionUID = -2044705042546381556L;
+
+    /**
+     * File that stored references to files marked for tracking / removal
+     * as a serialized object before the staging journal existed.
+     * Only read to migrate staging areas of earlier versions of gitlet.
      */
     static final File STAGED_FILES = new File(join(STAGING_DIR,
             "staged_files").toString());
 
     /**
-     * Copy directory for storing copies of CWD files
+     * Journal of staging operations
+     */
+    static final File STAGED_LOG = new File(join(STAGING_DIR,
+            "staged_log").toString());
+
+    /**
+     * Copy directory that held copies of staged CWD files before staged
+     * files were saved straight to the object store. Only read to commit
+     * files staged by earlier versions of gitlet.
      */
     static final File STAGED_COPY_DIR = new File(join(STAGING_DIR,
             "File Copies").toString());
 
+    /**
+     * Magic bytes at the start of the journal
+     */
+    private static final byte[] MAGIC = {'G', 'S', 'T', 'G'};
+    /**
+     * Current journal format version
+     */
+    private static final int VERSION = 1;
+    /**
+     * Record staging a file for addition
+     */
+    private static final byte ADD = 1;
+    /**
+     * Record staging a file for removal
+     */
+    private static final byte REMOVE = 2;
+    /**
+     * Record removing a file from the staging area
+     */
+    private static final byte UNSTAGE = 3;
+
+    /**
+     * The staging area of the repository, loaded once per command
+     */
+    private static StagingOperations staged;
+    /**
+     * Number of records in the journal
+     */
+    private static int journalRecords;
+    /**
+     * Length of the journal up to the end of its last complete record, or
+     * -1 if the journal ends with a complete record
+     */
+    private static long tornAt = -1;
+    /**
+     * Whether the journal must be rewritten in full before anything is
+     * appended: it is missing, is a legacy staging file, has a torn header or
+     * is due for compaction. Loading never writes, as read-only commands load
+     * the staging area without holding the STAGING lock.
+     */
+    private static boolean rewriteNeeded;
+
     /**
      * References files that should be tracked next commit
      * onwards
@@ -46,29 +125,43 @@ public class StagingOperations implements Serializable, Dumpable {
      * Creates a new staging file
      */
     static void createStagingArea() {
-        //Create staging_file
-        StagingOperations sa = new StagingOperations();
-        saveStagedFile(sa);
-
-        //Create directory for storing copies of CWD files
-        STAGED_COPY_DIR.mkdir();
+        staged = new StagingOperations();
+        writeSnapshot();
     }
 
     /**
-     * Copies given file to the staging area and marks
-     * it for tracking
+     * Marks given file for tracking. The file contents
+     * must already have been saved to the object store.
      *
      * @param fileName the file that should be staged for addition
      * @param fileID   sha-id corresponding to the given file
      */
     static void stageFileForAddition(String fileName, String fileID) {
-        StagingOperations stageOps = loadStagedFile();
-        stageOps.addFiles.put(fileName, fileID);
-        saveStagedFile(stageOps);
+        loadStagedFile().addFiles.put(fileName, fileID);
+        appendRecord(ADD, fileName, fileID);
+    }
 
-        //Copy CWD file to Staged Files Directory
-        String fileContents = readContentsAsString(join(CWD, fileName));
-        writeContents(new File(STAGED_COPY_DIR, fileName), fileContents);
+    /**
+     * Marks all given files for tracking with a single write to the journal.
+     * The file contents must already have been saved to the object store.
+     *
+     * @param files map of file names to the sha-ids of their contents
+     */
+    static void stageFilesForAddition(Map<String, String> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        StagingOperations stageOps = loadStagedFile();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                stageOps.addFiles.put(entry.getKey(), entry.getValue());
+                writeRecord(out, ADD, entry.getKey(), entry.getValue());
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write staging area: %s", excp.getMessage());
+        }
+        appendRecords(bytes.toByteArray(), files.size());
     }
 
     /**
@@ -78,8 +171,10 @@ public class StagingOperations implements Serializable, Dumpable {
      */
     static void stageFileForRemoval(String fileName) {
         StagingOperations stageOps = loadStagedFile();
-        stageOps.removeFiles.add(fileName);
-        saveStagedFile(stageOps);
+        if (!stageOps.removeFiles.contains(fileName)) {
+            stageOps.removeFiles.add(fileName);
+            appendRecord(REMOVE, fileName, null);
+        }
     }
 
     /**
@@ -90,9 +185,11 @@ public class StagingOperations implements Serializable, Dumpable {
      */
     static void removeFromStagingArea(String fileName) {
         StagingOperations stageOps = loadStagedFile();
-        stageOps.addFiles.remove(fileName);
-        stageOps.removeFiles.remove(fileName);
-        saveStagedFile(stageOps);
+        boolean added = stageOps.addFiles.remove(fileName) != null;
+        boolean removed = stageOps.removeFiles.remove(fileName);
+        if (added || removed) {
+            appendRecord(UNSTAGE, fileName, null);
+        }
         File file = new File(STAGED_COPY_DIR, fileName);
         file.delete();
     }
@@ -103,8 +200,7 @@ public class StagingOperations implements Serializable, Dumpable {
      * @return files staged for addition
      */
     static Map<String, String> getFilesStagedForAddition() {
-        StagingOperations stageOps = loadStagedFile();
-        return stageOps.addFiles;
+        return Collections.unmodifiableMap(loadStagedFile().addFiles);
     }
 
     /**
@@ -113,8 +209,15 @@ public class StagingOperations implements Serializable, Dumpable {
      * @return files staged for removal
      */
     static List<String> getFilesStagedForRemoval() {
-        StagingOperations stageOps = loadStagedFile();
-        return stageOps.removeFiles;
+        return Collections.unmodifiableList(loadStagedFile().removeFiles);
+    }
+
+    /**
+     * Forgets the cached staging area, so that it is read again
+     * from disk when next used
+     */
+    static void invalidate() {
+        staged = null;
     }
 
     /**
@@ -125,11 +228,11 @@ public class StagingOperations implements Serializable, Dumpable {
         StagingOperations stageOps = loadStagedFile();
         stageOps.addFiles.clear();
         stageOps.removeFiles.clear();
-        saveStagedFile(stageOps);
+        writeSnapshot();
 
         //Delete Files in staging area
         List<String> filesInStagingArea = plainFilenamesIn(STAGED_COPY_DIR);
-        if (filesInStagingArea.size() > 0) {
+        if (filesInStagingArea != null) {
             for (String fileName : filesInStagingArea) {
                 File file = new File(STAGED_COPY_DIR, fileName);
                 file.delete();
@@ -140,21 +243,161 @@ public class StagingOperations implements Serializable, Dumpable {
     // ==================================== HELPER FUNCTIONS =================================== //
 
     /**
-     * Loads staged files from disk
+     * Loads the staging area on first use by replaying the journal,
+     * or by migrating the serialized staging file of earlier versions
      *
      * @return Object containing map of all staged files
      */
     private static StagingOperations loadStagedFile() {
-        return readObject(STAGED_FILES, StagingOperations.class);
+        if (staged != null) {
+            return staged;
+        }
+        rewriteNeeded = false;
+        tornAt = -1;
+        if (!STAGED_LOG.exists() && STAGED_FILES.exists()) {
+            //Migrated by the first command that changes the staging area
+            staged = readObject(STAGED_FILES, StagingOperations.class);
+            rewriteNeeded = true;
+            return staged;
+        }
+
+        staged = new StagingOperations();
+        journalRecords = 0;
+        if (!STAGED_LOG.exists()) {
+            rewriteNeeded = true;
+            return staged;
+        }
+        long complete = 0;
+        byte[] journal = readContents(STAGED_LOG);
+        ByteArrayInputStream bytes = new ByteArrayInputStream(journal);
+        try (DataInputStream in = new DataInputStream(bytes)) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                throw error("Corrupt staging area");
+            }
+            byte[] id = new byte[UID_LENGTH / 2];
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    break;
+                }
+                String fileName = in.readUTF();
+                switch (op) {
+                    case ADD -> {
+                        in.readFully(id);
+                        staged.addFiles.put(fileName, toHex(id));
+                    }
+                    case REMOVE -> staged.removeFiles.add(fileName);
+                    case UNSTAGE -> {
+                        staged.addFiles.remove(fileName);
+                        staged.removeFiles.remove(fileName);
+                    }
+                    default -> throw error("Corrupt staging area");
+                }
+                journalRecords++;
+                complete = journal.length - bytes.available();
+            }
+        } catch (EOFException excp) {
+            //A record cut short by a crash; everything before it is intact, and
+            //the torn bytes are cut off before anything is appended after them
+            tornAt = complete;
+            rewriteNeeded = tornAt < MAGIC.length + 4;
+        } catch (IOException excp) {
+            throw error("Cannot read staging area: %s", excp.getMessage());
+        }
+
+        //Compact a journal that mostly holds superseded records when next written
+        int live = staged.addFiles.size() + staged.removeFiles.size();
+        if (journalRecords > 2 * live + 64) {
+            rewriteNeeded = true;
+        }
+        return staged;
     }
 
     /**
-     * Saves staged files to disk
+     * Appends a single record to the journal
      *
-     * @param stageOps Staging operations object that should be saved
+     * @param op       the record type
+     * @param fileName the file the record is about
+     * @param fileID   id of the staged file for ADD records, otherwise null
      */
-    private static void saveStagedFile(StagingOperations stageOps) {
-        writeObject(STAGED_FILES, stageOps);
+    private static void appendRecord(byte op, String fileName, String fileID) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeRecord(out, op, fileName, fileID);
+        } catch (IOException excp) {
+            throw error("Cannot write staging area: %s", excp.getMessage());
+        }
+        appendRecords(bytes.toByteArray(), 1);
+    }
+
+    /**
+     * Appends encoded records to the journal, or rewrites the whole journal
+     * if it needs it, as the records are already applied to the staging area
+     *
+     * @param records the encoded records
+     * @param count   number of records
+     */
+    private static void appendRecords(byte[] records, int count) {
+        if (rewriteNeeded) {
+            writeSnapshot();
+            return;
+        }
+        //Staged files must be on disk before the records naming them
+        Helper.OBJECTS.sync();
+        try (FileChannel channel = FileChannel.open(STAGED_LOG.toPath(),
+                StandardOpenOption.WRITE)) {
+            if (tornAt >= 0) {
+                channel.truncate(tornAt);
+                tornAt = -1;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(records);
+            long position = channel.size();
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write staging area: %s", excp.getMessage());
+        }
+        journalRecords += count;
+    }
+
+    /**
+     * Rewrites the journal so that it holds exactly the current staging area
+     */
+    private static void writeSnapshot() {
+        Helper.OBJECTS.sync();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, String> entry : staged.addFiles.entrySet()) {
+                writeRecord(out, ADD, entry.getKey(), entry.getValue());
+            }
+            for (String fileName : staged.removeFiles) {
+                writeRecord(out, REMOVE, fileName, null);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write staging area: %s", excp.getMessage());
+        }
+        DurableFiles.write(STAGED_LOG, bytes.toByteArray());
+        STAGED_FILES.delete();
+        rewriteNeeded = false;
+        tornAt = -1;
+        journalRecords = staged.addFiles.size() + staged.removeFiles.size();
+    }
+
+    /**
+     * Writes a single journal record
+     */
+    private static void writeRecord(DataOutputStream out, byte op, String fileName,
+                                    String fileID) throws IOException {
+        out.writeByte(op);
+        out.writeUTF(fileName);
+        if (op == ADD) {
+            out.write(fromHex(fileID));
+        }
     }
 
     @Override
@@ -0,0 +1,176 @@
+package gitlet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the staging journal, run on repositories in temporary directories
+ *
+ * @author Rishabh Choudhury
+ */
+public class StagingOperationsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * The repository under test
+     */
+    private ScratchRepo repo;
+
+    /**
+     * Serialized staging area written by gitlet before the staging journal
+     * existed, after a.txt ("a\n") was committed, b.txt ("b\n") was added
+     * and a.txt was removed
+     */
+    private static final String LEGACY_STAGED_FILES =
+            "aced0005737200186769746c65742e53746167696e674f7065726174696f6e73e39fbf98"
+            + "dc92ad0c0200024c000861646446696c657374000f4c6a6176612f7574696c2f4d61703b"
+            + "4c000b72656d6f766546696c65737400104c6a6176612f7574696c2f4c6973743b787073"
+            + "7200116a6176612e7574696c2e486173684d61700507dac1c31660d103000246000a6c6f"
+            + "6164466163746f724900097468726573686f6c6478703f4000000000000c770800000010"
+            + "00000001740005622e747874740028383965366339386439323838373931336361646630"
+            + "3662326164623937663236636465343834396278737200146a6176612e7574696c2e4c69"
+            + "6e6b65644c6973740c29535d4a6088220300007870770400000001740005612e74787478";
+
+    @Before
+    public void setUp() {
+        repo = new ScratchRepo(tmp.getRoot());
+        assertEquals("", repo.run("init"));
+        repo.write("a.txt", "a\n");
+        repo.write("b.txt", "b\n");
+        repo.write("c.txt", "c\n");
+    }
+
+    /**
+     * Cuts the given number of bytes off the end of the staging journal
+     */
+    private void tearJournal(int bytes) throws IOException {
+        File journal = repo.file(".gitlet/staging/staged_log");
+        try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+            file.setLength(file.length() - bytes);
+        }
+    }
+
+    /**
+     * Returns the files listed as staged for addition by status
+     */
+    private String stagedFiles() {
+        String status = repo.run("status");
+        int start = status.indexOf("=== Staged Files ===\n") + "=== Staged Files ===\n".length();
+        return status.substring(start, status.indexOf("\n=== Removed Files ==="));
+    }
+
+    /**
+     * Returns the files listed as staged for removal by status
+     */
+    private String removedFiles() {
+        String status = repo.run("status");
+        int start = status.indexOf("=== Removed Files ===\n") + "=== Removed Files ===\n".length();
+        return status.substring(start, status.indexOf("\n=== Modifications"));
+    }
+
+    @Test
+    /* Checks that a record cut short by a crash is dropped and later records are kept */
+    public void tornRecordTest() throws IOException {
+        repo.run("add", "a.txt");
+        repo.run("add", "b.txt");
+        tearJournal(5);
+        long tornLength = repo.file(".gitlet/staging/staged_log").length();
+        assertEquals("a.txt\n", stagedFiles());
+        //Reading the journal leaves it as it is
+        assertEquals(tornLength, repo.file(".gitlet/staging/staged_log").length());
+
+        repo.run("add", "c.txt");
+        assertEquals("a.txt\nc.txt\n", stagedFiles());
+        repo.run("add", "b.txt");
+        assertEquals("a.txt\nb.txt\nc.txt\n", stagedFiles());
+        assertEquals("", repo.run("commit", "three files"));
+        assertEquals("", stagedFiles());
+    }
+
+    @Test
+    /* Checks that a journal whose header was cut short is rewritten when next changed */
+    public void tornHeaderTest() throws IOException {
+        File journal = repo.file(".gitlet/staging/staged_log");
+        tearJournal((int) journal.length() - 3);
+        assertEquals("", stagedFiles());
+
+        repo.run("add", "a.txt");
+        assertEquals("a.txt\n", stagedFiles());
+        repo.run("add", "b.txt");
+        assertEquals("a.txt\nb.txt\n", stagedFiles());
+        assertEquals("", repo.run("commit", "two files"));
+    }
+
+    @Test
+    /* Checks that a serialized staging area of earlier versions is read, then migrated */
+    public void legacyStagingTest() {
+        repo.run("add", "a.txt");
+        assertEquals("", repo.run("commit", "one"));
+
+        //Stage b.txt and remove a.txt the way earlier versions did
+        File staged = repo.file(".gitlet/staging/staged_files");
+        File journal = repo.file(".gitlet/staging/staged_log");
+        journal.delete();
+        Utils.writeContents(staged, (Object) Utils.fromHex(LEGACY_STAGED_FILES));
+        repo.write(".gitlet/staging/File Copies/b.txt", "b\n");
+        repo.file("a.txt").delete();
+
+        //Commands that only read the staging area leave it as it is
+        assertEquals("b.txt\n", stagedFiles());
+        assertEquals("a.txt\n", removedFiles());
+        assertTrue(staged.isFile());
+        assertFalse(journal.exists());
+
+        repo.run("add", "c.txt");
+        assertFalse(staged.exists());
+        assertTrue(journal.isFile());
+        assertEquals("b.txt\nc.txt\n", stagedFiles());
+        assertEquals("a.txt\n", removedFiles());
+
+        //The staged copy of b.txt is committed
+        assertEquals("", repo.run("commit", "two"));
+        repo.file("b.txt").delete();
+        repo.run("checkout", "--", "b.txt");
+        assertEquals("b\n", Utils.readContentsAsString(repo.file("b.txt")));
+        assertTrue(repo.run("checkout", "--", "a.txt").contains("File does not exist"));
+    }
+
+    @Test
+    /* Checks that a journal due for compaction is only compacted by a command that changes it */
+    public void compactTest() {
+        for (int i = 0; i < 70; i++) {
+            repo.write("dir/" + i + ".txt", i + "\n");
+        }
+        repo.run("add", "dir");
+        assertEquals("", repo.run("commit", "many files"));
+        for (int i = 0; i < 70; i++) {
+            repo.write("dir/" + i + ".txt", "changed " + i + "\n");
+        }
+        repo.run("add", "dir");
+        //Restoring the committed versions unstages every file again
+        for (int i = 0; i < 70; i++) {
+            repo.write("dir/" + i + ".txt", i + "\n");
+        }
+        repo.run("add", "dir");
+
+        File journal = repo.file(".gitlet/staging/staged_log");
+        byte[] before = Utils.readContents(journal);
+        assertEquals("", stagedFiles());
+        repo.run("log");
+        assertArrayEquals(before, Utils.readContents(journal));
+
+        repo.run("add", "a.txt");
+        assertTrue(journal.length() < before.length / 10);
+        assertEquals("a.txt\n", stagedFiles());
+    }
+}
@@ -0,0 +1,261 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/**
+ * A directory snapshot: one tree object per directory, listing the files
+ * and subdirectories directly inside it by name. <br><br>
+ * <p>
+ * Trees are content addressed, so a commit names its whole snapshot by the
+ * id of its root tree and a directory that did not change between commits
+ * is stored once and shared. Updating a snapshot only writes the trees on
+ * the paths from the changed files up to the root. <br><br>
+ * <p>
+ * Tree layout: <br>
+ * entry* sorted by name <br>
+ * entry = type (FILE or DIR) | name (UTF) | id (20 bytes)
+ *
+ * @author Rishabh Choudhury
+ */
+class Tree {
+    /**
+     * Entry type of a file blob
+     */
+    static final byte FILE = 1;
+    /**
+     * Entry type of a subdirectory tree
+     */
+    static final byte DIR = 2;
+
+    /**
+     * A single file or subdirectory of a tree
+     */
+    static class Entry {
+        /**
+         * FILE or DIR
+         */
+        final byte type;
+        /**
+         * SHA-1 id of the blob or subtree
+         */
+        final String id;
+
+        Entry(byte type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Entries of this tree keyed by name
+     */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Returns the entries of this tree keyed by name
+     *
+     * @return unmodifiable sorted map of entries
+     */
+    SortedMap<String, Entry> entries() {
+        return Collections.unmodifiableSortedMap(entries);
+    }
+
+    /**
+     * Loads the tree with the given id
+     *
+     * @param store  the object store holding the tree
+     * @param treeID the SHA-1 id of the tree
+     * @return the tree
+     */
+    static Tree read(ObjectStore store, String treeID) {
+        byte[] contents = store.read(ObjectStore.TREE, treeID);
+        if (contents == null) {
+            throw error("Missing tree object %s", treeID);
+        }
+        Tree tree = new Tree();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+            byte[] id = new byte[UID_LENGTH / 2];
+            while (in.available() > 0) {
+                byte type = in.readByte();
+                String name = in.readUTF();
+                in.readFully(id);
+                tree.entries.put(name, new Entry(type, toHex(id)));
+            }
+        } catch (IOException excp) {
+            throw error("Corrupt tree object %s", treeID);
+        }
+        return tree;
+    }
+
+    /**
+     * Applies the given file changes to a snapshot and saves every tree
+     * that changed. Subtrees without changes keep their ids.
+     *
+     * @param store   the object store to save trees to
+     * @param treeID  id of the root tree of the snapshot, or null for an empty one
+     * @param changes map of '/'-separated file names to their new blob ids,
+     *                where a null id removes the file
+     * @return id of the new root tree, or null if the snapshot is empty
+     */
+    static String update(ObjectStore store, String treeID, SortedMap<String, String> changes) {
+        Tree tree = treeID == null ? new Tree() : read(store, treeID);
+        boolean changed = false;
+
+        //Apply changes to files in this directory and group the rest by subdirectory
+        SortedMap<String, SortedMap<String, String>> subChanges = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String name = change.getKey();
+            int slash = name.indexOf('/');
+            if (slash >= 0) {
+                subChanges.computeIfAbsent(name.substring(0, slash), k -> new TreeMap<>())
+                        .put(name.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                changed |= tree.entries.remove(name) != null;
+            } else {
+                Entry old = tree.entries.get(name);
+                if (old == null || old.type != FILE || !old.id.equals(change.getValue())) {
+                    tree.entries.put(name, new Entry(FILE, change.getValue()));
+                    changed = true;
+                }
+            }
+        }
+
+        for (Map.Entry<String, SortedMap<String, String>> sub : subChanges.entrySet()) {
+            Entry old = tree.entries.get(sub.getKey());
+            String oldID = old != null && old.type == DIR ? old.id : null;
+            String newID = update(store, oldID, sub.getValue());
+            if (newID == null) {
+                //Directory emptied
+                if (oldID != null) {
+                    tree.entries.remove(sub.getKey());
+                    changed = true;
+                }
+            } else if (!newID.equals(oldID)) {
+                tree.entries.put(sub.getKey(), new Entry(DIR, newID));
+                changed = true;
+            }
+        }
+
+        if (tree.entries.isEmpty()) {
+            return null;
+        }
+        return changed ? tree.write(store) : treeID;
+    }
+
+    /**
+     * Lists every file of a snapshot
+     *
+     * @param store  the object store holding the trees
+     * @param treeID id of the root tree, or null for an empty snapshot
+     * @return map of '/'-separated file names to blob ids
+     */
+    static Map<String, String> flatten(ObjectStore store, String treeID) {
+        Map<String, String> files = new TreeMap<>();
+        if (treeID != null) {
+            flatten(store, treeID, "", files);
+        }
+        return files;
+    }
+
+    /**
+     * Lists the files that differ between two snapshots. Subtrees with the
+     * same id in both snapshots are skipped without being read.
+     *
+     * @param store     the object store holding the trees
+     * @param oldTreeID id of the root tree of the old snapshot, or null for an empty one
+     * @param newTreeID id of the root tree of the new snapshot, or null for an empty one
+     * @return map of '/'-separated file names to their blob ids in the new
+     * snapshot, where a null id means the file is not in the new snapshot
+     */
+    static SortedMap<String, String> diff(ObjectStore store, String oldTreeID, String newTreeID) {
+        SortedMap<String, String> changes = new TreeMap<>();
+        diff(store, oldTreeID, newTreeID, "", changes);
+        return changes;
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Adds every file under the given tree to files, prefixing names with prefix
+     */
+    private static void flatten(ObjectStore store, String treeID, String prefix,
+                                Map<String, String> files) {
+        for (Map.Entry<String, Entry> e : read(store, treeID).entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry.type == DIR) {
+                flatten(store, entry.id, prefix + e.getKey() + "/", files);
+            } else {
+                files.put(prefix + e.getKey(), entry.id);
+            }
+        }
+    }
+
+    /**
+     * Adds the files that differ between the given trees to changes,
+     * prefixing names with prefix
+     */
+    private static void diff(ObjectStore store, String oldTreeID, String newTreeID,
+                             String prefix, SortedMap<String, String> changes) {
+        if (Objects.equals(oldTreeID, newTreeID)) {
+            return;
+        }
+        SortedMap<String, Entry> oldEntries = oldTreeID == null
+                ? Collections.emptySortedMap() : read(store, oldTreeID).entries;
+        SortedMap<String, Entry> newEntries = newTreeID == null
+                ? Collections.emptySortedMap() : read(store, newTreeID).entries;
+
+        SortedSet<String> names = new TreeSet<>(oldEntries.keySet());
+        names.addAll(newEntries.keySet());
+        for (String name : names) {
+            Entry oldEntry = oldEntries.get(name);
+            Entry newEntry = newEntries.get(name);
+            boolean wasFile = oldEntry != null && oldEntry.type == FILE;
+            boolean wasDir = oldEntry != null && oldEntry.type == DIR;
+            boolean isFile = newEntry != null && newEntry.type == FILE;
+            boolean isDir = newEntry != null && newEntry.type == DIR;
+
+            if (wasDir || isDir) {
+                diff(store, wasDir ? oldEntry.id : null, isDir ? newEntry.id : null,
+                        prefix + name + "/", changes);
+            }
+            if (isFile && !(wasFile && oldEntry.id.equals(newEntry.id))) {
+                changes.put(prefix + name, newEntry.id);
+            } else if (wasFile && !isFile) {
+                changes.put(prefix + name, null);
+            }
+        }
+    }
+
+    /**
+     * Saves this tree and returns its id
+     */
+    private String write(ObjectStore store) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.writeByte(e.getValue().type);
+                out.writeUTF(e.getKey());
+                out.write(fromHex(e.getValue().id));
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write tree: %s", excp.getMessage());
+        }
+        byte[] contents = bytes.toByteArray();
+        String treeID = sha1("tree ", contents);
+        store.write(ObjectStore.TREE, treeID, contents);
+        return treeID;
+    }
+}
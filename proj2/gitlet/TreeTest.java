@@ -0,0 +1,96 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+import static gitlet.Utils.*;
+
+/**
+ * Tests of directory snapshots stored as trees
+ *
+ * @author Rishabh Choudhury
+ */
+public class TreeTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Returns a sorted map of the given file names and blob ids, given in pairs
+     */
+    private static SortedMap<String, String> files(String... namesAndIDs) {
+        SortedMap<String, String> files = new TreeMap<>();
+        for (int i = 0; i < namesAndIDs.length; i += 2) {
+            files.put(namesAndIDs[i], namesAndIDs[i + 1]);
+        }
+        return files;
+    }
+
+    @Test
+    /* Checks that a snapshot lists back the files it was built from */
+    public void updateFlattenTest() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        SortedMap<String, String> snapshot = files("a.txt", sha1("a"), "dir/b.txt", sha1("b"),
+                "dir/sub/c.txt", sha1("c"), "e/f.txt", sha1("f"));
+        String root = Tree.update(store, null, snapshot);
+        assertEquals(snapshot, Tree.flatten(store, root));
+        assertEquals(3, Tree.read(store, root).entries().size());
+
+        //Equal snapshots have equal ids, however they were built
+        String other = Tree.update(store, null, files("e/f.txt", sha1("f"), "a.txt", sha1("a")));
+        other = Tree.update(store, other, files("dir/sub/c.txt", sha1("c"), "dir/b.txt", sha1("b")));
+        assertEquals(root, other);
+        assertEquals(root, Tree.update(store, root, files("a.txt", sha1("a"))));
+        assertNull(Tree.flatten(store, null).get("a.txt"));
+    }
+
+    @Test
+    /* Checks that only the trees on the path to a changed file get new ids */
+    public void sharedSubtreesTest() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String root = Tree.update(store, null, files("a.txt", sha1("a"), "dir/b.txt", sha1("b"),
+                "dir/sub/c.txt", sha1("c"), "e/f.txt", sha1("f")));
+        String changed = Tree.update(store, root, files("dir/sub/c.txt", sha1("c2")));
+        assertNotEquals(root, changed);
+
+        Map<String, Tree.Entry> before = Tree.read(store, root).entries();
+        Map<String, Tree.Entry> after = Tree.read(store, changed).entries();
+        assertEquals(before.get("e").id, after.get("e").id);
+        assertEquals(before.get("a.txt").id, after.get("a.txt").id);
+        assertNotEquals(before.get("dir").id, after.get("dir").id);
+    }
+
+    @Test
+    /* Checks that removing files drops emptied directories and an empty snapshot has no tree */
+    public void removeTest() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String root = Tree.update(store, null, files("a.txt", sha1("a"), "dir/b.txt", sha1("b"),
+                "dir/sub/c.txt", sha1("c")));
+        String removed = Tree.update(store, root, files("dir/b.txt", null, "dir/sub/c.txt", null));
+        assertEquals(files("a.txt", sha1("a")), Tree.flatten(store, removed));
+        assertFalse(Tree.read(store, removed).entries().containsKey("dir"));
+        assertNull(Tree.update(store, removed, files("a.txt", null)));
+    }
+
+    @Test
+    /* Checks that diff lists added, changed and removed files, including whole directories */
+    public void diffTest() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String oldRoot = Tree.update(store, null, files("a.txt", sha1("a"), "dir/b.txt", sha1("b"),
+                "dir/sub/c.txt", sha1("c"), "e/f.txt", sha1("f")));
+        String newRoot = Tree.update(store, oldRoot, files("a.txt", sha1("a2"), "dir/sub/c.txt",
+                null, "e/f.txt", null, "g/h.txt", sha1("h")));
+
+        SortedMap<String, String> expected = files("a.txt", sha1("a2"), "dir/sub/c.txt", null,
+                "e/f.txt", null, "g/h.txt", sha1("h"));
+        assertEquals(expected, Tree.diff(store, oldRoot, newRoot));
+        assertTrue(Tree.diff(store, oldRoot, oldRoot).isEmpty());
+        assertEquals(Tree.flatten(store, newRoot), Tree.diff(store, null, newRoot));
+    }
+}
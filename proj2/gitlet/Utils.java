@@ -1,11 +1,13 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -34,6 +36,11 @@ class Utils {
      */
     static final int UID_LENGTH = 40;
 
+    /**
+     * Size of the buffer used when streaming file contents.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
     /* SHA-1 HASH VALUES. */
 
     /**
@@ -70,6 +77,51 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /**
+     * Returns the SHA-1 hash of the contents of FILE, read through a
+     * fixed-size buffer so that the file is never held in memory.
+     * Throws IllegalArgumentException in case of problems.
+     */
+    static String sha1Contents(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+            }
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /**
+     * Returns the lowercase hexadecimal numeral for the bytes in ID.
+     */
+    static String toHex(byte[] id) {
+        char[] digits = new char[id.length * 2];
+        for (int i = 0; i < id.length; i++) {
+            digits[2 * i] = Character.forDigit((id[i] >> 4) & 0xF, 16);
+            digits[2 * i + 1] = Character.forDigit(id[i] & 0xF, 16);
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Returns the bytes denoted by the hexadecimal numeral HEX, which must
+     * have an even number of digits.
+     */
+    static byte[] fromHex(String hex) {
+        byte[] id = new byte[hex.length() / 2];
+        for (int i = 0; i < id.length; i++) {
+            id[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return id;
+    }
+
     /* FILE DELETION */
 
     /**
@@ -276,6 +328,24 @@ class Utils {
 
 
 
+    /**
+     * Return an object of type T deserialized from BYTES, casting it to
+     * EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems.
+     */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                    new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /* MESSAGES AND ERROR REPORTING */
 
     /**
@@ -0,0 +1,260 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static gitlet.Helper.OBJECTS;
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Repository.TMP_DIR;
+import static gitlet.Utils.*;
+
+/**
+ * Lists and matches files in the working directory. <br><br>
+ * <p>
+ * Working files are named by their path relative to the working directory,
+ * with '/' as the separator on every platform, so that "dir/a.txt" names
+ * the same file in every commit. The .gitlet directory is never listed.
+ *
+ * @author Rishabh Choudhury
+ */
+class WorkingFiles {
+    /**
+     * Most threads used to write working files
+     */
+    private static final int MAX_WRITERS = 8;
+    /**
+     * Counter keeping the names of temporary files unique
+     */
+    private static final AtomicLong tmpCount = new AtomicLong();
+
+    /**
+     * Returns all files in the working directory and its subdirectories
+     *
+     * @return sorted relative file names
+     */
+    static List<String> list() {
+        return listUnder(CWD);
+    }
+
+    /**
+     * Returns the working files named by the given path or pattern: <br>
+     * "." - every working file <br>
+     * a directory - every file under that directory <br>
+     * a glob such as "*.txt" or "src/**.java" - every working file whose
+     * relative name matches it <br>
+     * a file - that file
+     *
+     * @param pattern path or glob relative to the working directory
+     * @return sorted relative file names, empty if nothing matches
+     */
+    static List<String> expand(String pattern) {
+        String name = normalize(pattern);
+        if (name.equals(".gitlet") || name.startsWith(".gitlet/")) {
+            return Collections.emptyList();
+        }
+        File file = name.isEmpty() ? CWD : join(CWD, name);
+        if (file.isFile()) {
+            return Collections.singletonList(name);
+        }
+        if (file.isDirectory()) {
+            return listUnder(file);
+        }
+        if (!isGlob(name)) {
+            return Collections.emptyList();
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + name);
+        List<String> matches = new ArrayList<>();
+        for (String fileName : list()) {
+            if (matcher.matches(Paths.get(fileName))) {
+                matches.add(fileName);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Deletes the given working file if it exists, along with any
+     * directories the deletion leaves empty
+     *
+     * @param fileName relative name of the file
+     */
+    static void delete(String fileName) {
+        File file = join(CWD, fileName);
+        if (!file.delete()) {
+            return;
+        }
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /**
+     * Creates the directories the given working file should be written to
+     *
+     * @param fileName relative name of the file
+     */
+    static void makeParentDirs(String fileName) {
+        File dir = join(CWD, fileName).getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw error("Cannot create directory %s", dir);
+        }
+    }
+
+    /**
+     * Writes the given file blobs to the working directory in parallel.
+     * Each file is written to a temporary file in the .gitlet directory
+     * and then renamed over the working file, so a working file is either
+     * its old or its new version, never half written.
+     *
+     * @param files map of relative file names to the SHA-1 ids of their blobs
+     */
+    static void write(Map<String, String> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        if (!TMP_DIR.isDirectory() && !TMP_DIR.mkdirs()) {
+            throw error("Cannot create directory %s", TMP_DIR);
+        }
+        //Directories are made up front, so that threads never race to create them
+        for (String fileName : files.keySet()) {
+            makeParentDirs(fileName);
+        }
+        //A partial clone fetches the blobs it lacks in one batch, not one by one
+        OBJECTS.prefetch(files.values());
+        if (files.size() == 1) {
+            Map.Entry<String, String> file = files.entrySet().iterator().next();
+            write(file.getKey(), file.getValue());
+            return;
+        }
+
+        int threads = Math.min(files.size(), Math.min(MAX_WRITERS,
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> writes = new ArrayList<>(files.size());
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                writes.add(writers.submit(() -> write(file.getKey(), file.getValue())));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("Cannot write working files: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("Interrupted while writing working files");
+        } finally {
+            writers.shutdownNow();
+        }
+    }
+
+    // ==================================== HELPER FUNCTIONS =================================== //
+
+    /**
+     * Writes a single blob to a temporary file and moves it over the working file
+     */
+    private static void write(String fileName, String fileID) {
+        File tmp = join(TMP_DIR, "checkout-" + System.nanoTime() + "-" + tmpCount.incrementAndGet());
+        Path target = join(CWD, fileName).toPath();
+        try {
+            OBJECTS.copyBlob(fileID, tmp);
+            try {
+                Files.move(tmp.toPath(), target, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Files.move(tmp.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write %s: %s", fileName, excp.getMessage());
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Returns all files under the given directory, skipping the .gitlet directory
+     */
+    private static List<String> listUnder(File dir) {
+        List<String> files = new ArrayList<>();
+        Path root = CWD.toPath();
+        Path gitletDir = GITLET_DIR.toPath();
+        try {
+            Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
+                    return path.equals(gitletDir)
+                            ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        files.add(normalize(root.relativize(path).toString()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException excp) {
+                    //Unreadable entries are not working files
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw error("Cannot list %s: %s", dir, excp.getMessage());
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Converts a path as typed by the user into a relative working file name
+     */
+    private static String normalize(String path) {
+        String name = path.replace(File.separatorChar, '/');
+        while (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+        while (name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        return name.equals(".") ? "" : name;
+    }
+
+    /**
+     * Returns true if the given name contains glob special characters
+     */
+    private static boolean isGlob(String name) {
+        for (char c : name.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+}